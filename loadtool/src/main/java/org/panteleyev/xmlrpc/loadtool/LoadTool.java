@@ -0,0 +1,411 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc.loadtool;
+
+import org.panteleyev.xmlrpc.XMLRPCException;
+import org.panteleyev.xmlrpc.XMLRPCServer;
+import org.panteleyev.xmlrpc.XMLRPCService;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures behaviour of {@link XMLRPCService} under load without a real backend.
+ * <ul>
+ *     <li>{@code stub} - starts local {@link XMLRPCServer} that answers {@code load.call} with a string of the
+ *     specified size after latency taken from the distribution, a share of calls is answered with faults.
+ *     Distribution is {@code fixed:ms}, {@code uniform:min:max} or {@code exp:mean}.</li>
+ *     <li>{@code drive} - calls {@code load.call} by the real client with fixed rate or by fixed number of
+ *     callers for the specified time, then reports throughput, latency percentiles, allocations and GC.</li>
+ * </ul>
+ * <p>With fixed rate latency is measured from the planned start of each call. Without rate each caller sends
+ * calls back to back, and every call that took longer than the expected interval adds the samples that a caller
+ * would have produced while it was stalled. Expected interval is the mean latency of the warm-up run. Both
+ * corrections remove coordinated omission, service time histogram shows latency without correction.</p>
+ * <pre>
+ * mvn install -Dgpg.skip -DskipTests
+ * mvn -f loadtool package
+ * java -jar loadtool/target/xmlrpc-loadtool.jar \
+ *     stub [port] [--size bytes] [--latency fixed:2] [--faults ratio] [--workers n]
+ * java -jar loadtool/target/xmlrpc-loadtool.jar \
+ *     drive url [--rate calls/s] [--concurrency n] [--duration s] [--warmup s] [--timeout ms]
+ * </pre>
+ */
+public final class LoadTool {
+    static final String METHOD = "load.call";
+    static final int FAULT_CODE = 500;
+
+    private LoadTool() {
+    }
+
+    /**
+     * Configuration of the stub server.
+     *
+     * @param size    size of the response string in bytes
+     * @param latency latency distribution in nanoseconds
+     * @param faults  share of calls answered with fault
+     * @param workers number of worker threads
+     */
+    record StubOptions(int size, LongSupplier latency, double faults, int workers) {
+    }
+
+    /**
+     * Configuration of the load run.
+     *
+     * @param rate        calls per second, zero means back to back calls
+     * @param concurrency number of callers
+     * @param duration    duration of the measured run
+     * @param warmUp      duration of the warm-up run
+     */
+    record DriveOptions(double rate, int concurrency, Duration duration, Duration warmUp) {
+    }
+
+    /**
+     * Result of the load run.
+     *
+     * @param calls          number of calls
+     * @param faults         number of fault responses
+     * @param errors         number of failed calls
+     * @param elapsed        duration of the run
+     * @param latency        latency histogram with coordinated omission correction
+     * @param serviceTime    latency histogram without correction
+     * @param allocatedBytes bytes allocated by callers
+     * @param gcCount        number of garbage collections
+     * @param gcTime         time spent in garbage collections
+     */
+    record Report(long calls, long faults, long errors, Duration elapsed, Histogram latency, Histogram serviceTime,
+                  long allocatedBytes, long gcCount, Duration gcTime) {
+        double throughput() {
+            return calls * 1e9 / Math.max(1, elapsed.toNanos());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("calls %d, faults %d, errors %d, %.1f calls/s%n"
+                            + "latency ms:      %s%n"
+                            + "service time ms: %s%n"
+                            + "allocated %.1f KB/call, GC %d collections, %d ms",
+                    calls, faults, errors, throughput(), latency, serviceTime,
+                    allocatedBytes / 1024.0 / Math.max(1, calls), gcCount, gcTime.toMillis());
+        }
+    }
+
+    /**
+     * Log-linear latency histogram. Values are kept with relative error below 1%, so memory does not depend on the
+     * number of samples.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 7;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int HALF_COUNT = SUB_COUNT / 2;
+
+        private final long[] counts = new long[SUB_COUNT + (Long.SIZE - SUB_BITS) * HALF_COUNT];
+        private long total;
+        private long max;
+
+        void record(long value) {
+            var v = Math.max(0, value);
+            counts[index(v)]++;
+            total++;
+            max = Math.max(max, v);
+        }
+
+        /**
+         * Records value and the values missed while the caller was stalled longer than the expected interval.
+         */
+        void recordCorrected(long value, long expectedInterval) {
+            record(value);
+            if (expectedInterval <= 0) {
+                return;
+            }
+            for (var missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+                record(missing);
+            }
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return total;
+        }
+
+        long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            if (percentile >= 100) {
+                return max;
+            }
+            var rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max, highestValue(i));
+                }
+            }
+            return max;
+        }
+
+        long mean() {
+            if (total == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += (double) counts[i] * highestValue(i);
+            }
+            return (long) (sum / total);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                    percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(99.9) / 1e6,
+                    percentile(100) / 1e6);
+        }
+
+        private static int index(long value) {
+            if (value < SUB_COUNT) {
+                return (int) value;
+            }
+            var shift = Long.SIZE - SUB_BITS - Long.numberOfLeadingZeros(value);
+            return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+        }
+
+        private static long highestValue(int index) {
+            if (index < SUB_COUNT) {
+                return index;
+            }
+            var shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+            var mantissa = (long) ((index - SUB_COUNT) % HALF_COUNT + HALF_COUNT);
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+
+        switch (args[0]) {
+            case "stub" -> {
+                var port = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : 8080;
+                var server = stub(port, new StubOptions(
+                        Integer.parseInt(option(args, "--size", "100")),
+                        latency(option(args, "--latency", "fixed:0")),
+                        Double.parseDouble(option(args, "--faults", "0")),
+                        Integer.parseInt(option(args, "--workers", "256"))));
+                System.out.printf("Serving %s on http://127.0.0.1:%d/%n", METHOD, server.getPort());
+            }
+            case "drive" -> {
+                if (args.length < 2) {
+                    usage();
+                    return;
+                }
+                var options = new DriveOptions(
+                        Double.parseDouble(option(args, "--rate", "0")),
+                        Integer.parseInt(option(args, "--concurrency", "16")),
+                        Duration.ofSeconds(Long.parseLong(option(args, "--duration", "10"))),
+                        Duration.ofSeconds(Long.parseLong(option(args, "--warmup", "2"))));
+                // keep-alive cache must hold connection of each caller
+                System.setProperty("http.maxConnections", Integer.toString(options.concurrency()));
+                var timeout = Duration.ofMillis(Long.parseLong(option(args, "--timeout", "10000")));
+                var service = XMLRPCService.builder(args[1])
+                        .connectTimeout(timeout)
+                        .readTimeout(timeout)
+                        .build();
+                System.out.println(drive(service, options));
+            }
+            default -> usage();
+        }
+    }
+
+    /**
+     * Starts stub server.
+     *
+     * @param port port, zero means any free port
+     */
+    static XMLRPCServer stub(int port, StubOptions options) throws IOException {
+        var response = "x".repeat(options.size());
+        return XMLRPCServer.builder(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+                .workerThreads(options.workers())
+                .handler(METHOD, params -> {
+                    var latency = options.latency().getAsLong();
+                    if (latency > 0) {
+                        LockSupport.parkNanos(latency);
+                    }
+                    if (options.faults() > 0 && ThreadLocalRandom.current().nextDouble() < options.faults()) {
+                        throw new XMLRPCException(FAULT_CODE, "Injected fault");
+                    }
+                    return response;
+                })
+                .build()
+                .start();
+    }
+
+    /**
+     * Parses latency distribution, values are in milliseconds.
+     */
+    static LongSupplier latency(String spec) {
+        var parts = spec.split(":");
+        return switch (parts[0]) {
+            case "fixed" -> {
+                var value = millis(parts[1]);
+                yield () -> value;
+            }
+            case "uniform" -> {
+                var min = millis(parts[1]);
+                var max = millis(parts[2]);
+                yield () -> min + (long) (ThreadLocalRandom.current().nextDouble() * (max - min));
+            }
+            case "exp" -> {
+                var mean = millis(parts[1]);
+                yield () -> (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * mean);
+            }
+            default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        };
+    }
+
+    /**
+     * Runs warm-up and measured load against the service.
+     */
+    static Report drive(XMLRPCService service, DriveOptions options) throws InterruptedException {
+        var warmUp = run(service, options, options.warmUp(), 0);
+        return run(service, options, options.duration(), warmUp.serviceTime().mean());
+    }
+
+    private static Report run(XMLRPCService service, DriveOptions options, Duration duration, long expectedInterval)
+            throws InterruptedException {
+        var concurrency = options.concurrency();
+        var interval = options.rate() > 0 ? (long) (1e9 / options.rate()) : 0;
+        var next = new AtomicLong();
+        var faults = new AtomicLong();
+        var errors = new AtomicLong();
+        var allocated = new AtomicLong();
+        var latencies = new ArrayList<Histogram>();
+        var serviceTimes = new ArrayList<Histogram>();
+        var threads = new ArrayList<Thread>();
+
+        var gcBefore = gc();
+        var start = System.nanoTime() + Duration.ofMillis(10).toNanos();
+        var end = start + duration.toNanos();
+        for (int t = 0; t < concurrency; t++) {
+            var latency = new Histogram();
+            var serviceTime = new Histogram();
+            latencies.add(latency);
+            serviceTimes.add(serviceTime);
+            var thread = new Thread(() -> {
+                var allocatedBefore = allocatedBytes();
+                LockSupport.parkNanos(start - System.nanoTime());
+                while (true) {
+                    long planned;
+                    if (interval > 0) {
+                        planned = start + next.getAndIncrement() * interval;
+                        if (planned >= end) {
+                            break;
+                        }
+                        var wait = planned - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else if ((planned = System.nanoTime()) >= end) {
+                        break;
+                    }
+                    var callStart = System.nanoTime();
+                    try {
+                        service.call(METHOD);
+                    } catch (XMLRPCException ex) {
+                        faults.incrementAndGet();
+                    } catch (IOException | RuntimeException ex) {
+                        errors.incrementAndGet();
+                    }
+                    var now = System.nanoTime();
+                    serviceTime.record(now - callStart);
+                    if (interval > 0) {
+                        latency.record(now - planned);
+                    } else {
+                        latency.recordCorrected(now - callStart, expectedInterval);
+                    }
+                }
+                allocated.addAndGet(allocatedBytes() - allocatedBefore);
+            }, "load-" + t);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        threads.forEach(Thread::start);
+        for (var thread : threads) {
+            thread.join();
+        }
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        var gcAfter = gc();
+
+        var latency = new Histogram();
+        latencies.forEach(latency::add);
+        var serviceTime = new Histogram();
+        serviceTimes.forEach(serviceTime::add);
+        return new Report(serviceTime.count(), faults.get(), errors.get(), elapsed, latency, serviceTime,
+                allocated.get(), gcAfter[0] - gcBefore[0], Duration.ofMillis(gcAfter[1] - gcBefore[1]));
+    }
+
+    /**
+     * Returns bytes allocated by the current thread or zero if allocation tracking is not supported.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            return Math.max(0, bean.getCurrentThreadAllocatedBytes());
+        }
+        return 0;
+    }
+
+    private static long[] gc() {
+        long count = 0;
+        long time = 0;
+        for (var bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private static long millis(String value) {
+        return (long) (Double.parseDouble(value) * 1_000_000);
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage:
+                  LoadTool stub [port] [--size bytes] [--latency fixed:ms|uniform:min:max|exp:mean]
+                                [--faults ratio] [--workers n]
+                  LoadTool drive <url> [--rate calls/s] [--concurrency n] [--duration s] [--warmup s]
+                                 [--timeout ms]""");
+    }
+}
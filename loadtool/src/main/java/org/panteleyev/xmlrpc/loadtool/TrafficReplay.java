@@ -0,0 +1,217 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc.loadtool;
+
+import com.sun.net.httpserver.HttpServer;
+import org.panteleyev.xmlrpc.TrafficRecorder;
+import org.panteleyev.xmlrpc.XMLRPCException;
+import org.panteleyev.xmlrpc.XMLRPCService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays traffic captured by {@link TrafficRecorder}.
+ * <ul>
+ *     <li>{@code serve} - starts local server that answers recorded requests with recorded responses,
+ *     optionally with recorded latency. Identical requests are answered with their responses in recorded
+ *     order.</li>
+ *     <li>{@code drive} - sends recorded requests to the target service with fixed rate or as fast as possible,
+ *     then reports throughput and latency percentiles. With fixed rate latency is measured from the planned
+ *     start of each call, so that stalls of the client are not hidden.</li>
+ * </ul>
+ * <pre>
+ * mvn install -Dgpg.skip -DskipTests
+ * mvn -f loadtool package
+ * java -cp loadtool/target/xmlrpc-loadtool.jar org.panteleyev.xmlrpc.loadtool.TrafficReplay \
+ *     serve traffic.xrt [port] [--latency]
+ * java -cp loadtool/target/xmlrpc-loadtool.jar org.panteleyev.xmlrpc.loadtool.TrafficReplay \
+ *     drive traffic.xrt url [--rate calls/s] [--concurrency n] [--repeat n]
+ * </pre>
+ */
+public final class TrafficReplay {
+    private TrafficReplay() {
+    }
+
+    /**
+     * Result of the drive run.
+     *
+     * @param calls     number of calls
+     * @param errors    number of failed calls
+     * @param elapsed   duration of the run
+     * @param latencies sorted latencies in nanoseconds
+     */
+    record Report(int calls, int errors, Duration elapsed, long[] latencies) {
+        double throughput() {
+            return calls * 1e9 / Math.max(1, elapsed.toNanos());
+        }
+
+        long percentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            var index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("calls %d, errors %d, %.1f calls/s%n"
+                            + "latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                    calls, errors, throughput(),
+                    percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(99.9) / 1e6,
+                    percentile(100) / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+
+        var entries = TrafficRecorder.read(Path.of(args[1]));
+        System.out.printf("%d recorded exchanges%n", entries.size());
+        switch (args[0]) {
+            case "serve" -> {
+                var port = args.length > 2 && !args[2].startsWith("--") ? Integer.parseInt(args[2]) : 8080;
+                var server = serve(entries, port, List.of(args).contains("--latency"));
+                System.out.printf("Serving on http://127.0.0.1:%d/%n", server.getAddress().getPort());
+            }
+            case "drive" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                var service = XMLRPCService.builder(args[2]).build();
+                var report = drive(entries, service,
+                        Double.parseDouble(option(args, "--rate", "0")),
+                        Integer.parseInt(option(args, "--concurrency", "1")),
+                        Integer.parseInt(option(args, "--repeat", "1")));
+                System.out.println(report);
+            }
+            default -> usage();
+        }
+    }
+
+    /**
+     * Starts server that answers recorded requests.
+     */
+    static HttpServer serve(List<TrafficRecorder.Entry> entries, int port, boolean latency) throws IOException {
+        var responses = new HashMap<ByteBuffer, List<TrafficRecorder.Entry>>();
+        for (var entry : entries) {
+            if (entry.truncated()) {
+                continue;
+            }
+            responses.computeIfAbsent(ByteBuffer.wrap(entry.request()), k -> new ArrayList<>()).add(entry);
+        }
+        var positions = new HashMap<ByteBuffer, Integer>();
+
+        var server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                var key = ByteBuffer.wrap(exchange.getRequestBody().readAllBytes());
+                var recorded = responses.get(key);
+                if (recorded == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                TrafficRecorder.Entry entry;
+                synchronized (positions) {
+                    var position = positions.getOrDefault(key, 0);
+                    entry = recorded.get(position % recorded.size());
+                    positions.put(key, position + 1);
+                }
+                if (latency) {
+                    LockSupport.parkNanos(entry.latency().toNanos());
+                }
+                exchange.getResponseHeaders().add("Content-Type", "text/xml");
+                exchange.sendResponseHeaders(entry.status(), entry.response().length == 0 ? -1 :
+                        entry.response().length);
+                exchange.getResponseBody().write(entry.response());
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Sends recorded requests to the service.
+     *
+     * @param rate        calls per second, zero means as fast as possible
+     * @param concurrency number of concurrent callers
+     * @param repeat      number of passes over recorded requests
+     */
+    static Report drive(List<TrafficRecorder.Entry> entries, XMLRPCService service, double rate, int concurrency,
+                        int repeat) throws InterruptedException {
+        var total = entries.size() * repeat;
+        var latencies = new long[total];
+        var next = new AtomicInteger();
+        var errors = new AtomicInteger();
+        var interval = rate > 0 ? (long) (1e9 / rate) : 0;
+
+        var executor = Executors.newFixedThreadPool(concurrency);
+        var start = System.nanoTime();
+        for (int t = 0; t < concurrency; t++) {
+            executor.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < total) {
+                    var planned = start + i * interval;
+                    var wait = planned - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    var callStart = interval > 0 ? planned : System.nanoTime();
+                    try {
+                        service.replay(entries.get(i % entries.size()).request());
+                    } catch (XMLRPCException ex) {
+                        // fault is a valid response
+                    } catch (IOException | RuntimeException ex) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - callStart;
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Arrays.sort(latencies);
+        return new Report(total, errors.get(), elapsed, latencies);
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage:
+                  TrafficReplay serve <capture> [port] [--latency]
+                  TrafficReplay drive <capture> <url> [--rate calls/s] [--concurrency n] [--repeat n]""");
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc.loadtool;
+
+import org.junit.jupiter.api.Test;
+import org.panteleyev.xmlrpc.XMLRPCException;
+import org.panteleyev.xmlrpc.XMLRPCResult;
+import org.panteleyev.xmlrpc.XMLRPCService;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadToolTest {
+    @Test
+    public void testHistogram() {
+        var histogram = new LoadTool.Histogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(10_000, histogram.count());
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 * 0.02);
+        assertEquals(9_900_000, histogram.percentile(99), 9_900_000 * 0.02);
+        assertEquals(10_000_000, histogram.percentile(100));
+
+        // stalled caller would have sent 9 more calls with decreasing latency
+        var corrected = new LoadTool.Histogram();
+        corrected.recordCorrected(100, 10);
+        assertEquals(10, corrected.count());
+        assertEquals(50, corrected.percentile(50), 1);
+    }
+
+    @Test
+    public void testStubAndDrive() throws Exception {
+        try (var stub = LoadTool.stub(0, new LoadTool.StubOptions(1000, LoadTool.latency("uniform:1:2"), 0.2, 8))) {
+            var service = new XMLRPCService("http://127.0.0.1:" + stub.getPort() + "/");
+            XMLRPCResult result = null;
+            while (result == null) {
+                try {
+                    result = service.call(LoadTool.METHOD);
+                } catch (XMLRPCException ex) {
+                    assertEquals(LoadTool.FAULT_CODE, ex.getFaultCode());
+                }
+            }
+            assertEquals(1000, result.getStringValue(0).length());
+
+            var report = LoadTool.drive(service,
+                    new LoadTool.DriveOptions(200, 4, Duration.ofMillis(500), Duration.ofMillis(100)));
+            assertEquals(100, report.calls(), 5);
+            assertTrue(report.faults() > 0 && report.faults() < report.calls());
+            assertEquals(0, report.errors());
+            assertTrue(report.latency().percentile(50) >= Duration.ofMillis(1).toNanos());
+            assertTrue(report.allocatedBytes() > 0);
+
+            var closed = LoadTool.drive(service,
+                    new LoadTool.DriveOptions(0, 2, Duration.ofMillis(300), Duration.ofMillis(100)));
+            assertTrue(closed.calls() > 0);
+            assertTrue(closed.latency().count() >= closed.serviceTime().count());
+        }
+    }
+}
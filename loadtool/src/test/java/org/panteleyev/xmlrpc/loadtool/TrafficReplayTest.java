@@ -0,0 +1,92 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc.loadtool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.panteleyev.xmlrpc.TrafficRecorder;
+import org.panteleyev.xmlrpc.XMLRPCServer;
+import org.panteleyev.xmlrpc.XMLRPCService;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrafficReplayTest {
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private XMLRPCServer server() throws IOException {
+        return XMLRPCServer.builder(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .handler("item.get", params -> {
+                    calls.incrementAndGet();
+                    return Map.of("id", params.getIntegerValue(0));
+                })
+                .build()
+                .start();
+    }
+
+    private static String url(int port) {
+        return "http://127.0.0.1:" + port + "/";
+    }
+
+    private Path record(XMLRPCServer server, int from, int to) throws Exception {
+        var file = directory.resolve("traffic.xrt");
+        try (var recorder = TrafficRecorder.open(file)) {
+            var service = XMLRPCService.builder(url(server.getPort())).trafficRecorder(recorder).build();
+            for (int i = from; i < to; i++) {
+                service.call("item.get", i);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testServe() throws Exception {
+        Path file;
+        try (var server = server()) {
+            file = record(server, 0, 5);
+        }
+
+        var replay = TrafficReplay.serve(TrafficRecorder.read(file), 0, true);
+        try {
+            var service = XMLRPCService.builder(url(replay.getAddress().getPort())).build();
+            assertEquals(Map.of("id", 3), service.call("item.get", 3).getStructValue(0));
+            assertThrows(IOException.class, () -> service.call("item.get", 10));
+        } finally {
+            replay.stop(0);
+        }
+    }
+
+    @Test
+    public void testDrive() throws Exception {
+        try (var server = server()) {
+            var entries = TrafficRecorder.read(record(server, 0, 5));
+            var service = XMLRPCService.builder(url(server.getPort())).build();
+            assertEquals(Map.of("id", 2), service.replay(entries.get(2).request()).getStructValue(0));
+
+            var report = TrafficReplay.drive(entries, service, 0, 4, 10);
+            assertEquals(50, report.calls());
+            assertEquals(0, report.errors());
+            assertEquals(56, calls.get());
+            assertTrue(report.percentile(50) <= report.percentile(99));
+            assertTrue(report.throughput() > 0);
+
+            var paced = TrafficReplay.drive(entries, service, 200, 2, 2);
+            assertEquals(10, paced.calls());
+            // ten calls at 200 calls/s take at least 45 ms
+            assertTrue(paced.elapsed().toMillis() >= 45);
+        }
+    }
+}
@@ -8,6 +8,8 @@
 module org.panteleyev.xmlrpc {
     requires java.base;
     requires java.xml;
+    // annotation processor is registered in META-INF/services only, so runtime does not need java.compiler
+    requires static java.compiler;
 
     exports org.panteleyev.xmlrpc;
 }
@@ -0,0 +1,179 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects calls made within a short window and sends them as a single {@code system.multicall} request.
+ */
+final class AutoBatcher {
+    static final String MULTICALL = "system.multicall";
+    private static final String SYSTEM_PREFIX = "system.";
+
+    private record Entry(String method, Object[] parameters, String encoded, Deadline deadline,
+                         CompletableFuture<XMLRPCResult> future) {
+    }
+
+    private final XMLRPCService service;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final TimeZone tzIn;
+    private final TimeZone tzOut;
+    private final XMLRPCCodecs codecs;
+
+    private List<Entry> pending = new ArrayList<>();
+    private ScheduledFuture<?> timer;
+
+    AutoBatcher(XMLRPCService service, Duration window, int maxBatchSize, TimeZone tzIn, TimeZone tzOut,
+                XMLRPCCodecs codecs) {
+        this.service = service;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.tzIn = tzIn;
+        this.tzOut = tzOut;
+        this.codecs = codecs;
+    }
+
+    boolean accepts(String method) {
+        return !method.startsWith(SYSTEM_PREFIX);
+    }
+
+    CompletableFuture<XMLRPCResult> submit(Deadline deadline, String method, Object[] parameters) {
+        var future = new CompletableFuture<XMLRPCResult>();
+
+        // encoding in the caller thread isolates errors of a single call from the batch
+        String encoded;
+        try {
+            var call = new XMLRPCParameters(tzOut, codecs);
+            call.appendValue(Map.of("methodName", method, "params", Arrays.asList(parameters)));
+            encoded = call.getParametersString();
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+            return future;
+        }
+
+        if (!deadline.isInfinite()) {
+            // batch is sent with the latest deadline, each call expires by its own
+            var expiration = Exchange.TIMER.schedule(
+                    () -> future.completeExceptionally(new XMLRPCTimeoutException("Deadline exceeded")),
+                    deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+            future.whenComplete((result, error) -> expiration.cancel(false));
+        }
+
+        List<Entry> batch = null;
+        synchronized (this) {
+            pending.add(new Entry(method, parameters, encoded, deadline, future));
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (pending.size() == 1) {
+                timer = Exchange.TIMER.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+        return future;
+    }
+
+    private void flush() {
+        List<Entry> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    private List<Entry> takePending() {
+        var batch = pending;
+        pending = new ArrayList<>();
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<Entry> entries) {
+        var batch = entries.stream().filter(e -> !e.future().isDone()).toList();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (batch.size() == 1) {
+            var entry = batch.get(0);
+            forward(service.submit(entry.deadline(), entry.method(), entry.parameters()), entry.future());
+            return;
+        }
+
+        var deadline = batch.get(0).deadline();
+        var array = new StringBuilder("<array><data>");
+        for (var entry : batch) {
+            deadline = deadline.max(entry.deadline());
+            array.append("<value>").append(entry.encoded()).append("</value>");
+        }
+        array.append("</data></array>");
+
+        var params = new XMLRPCParameters(tzOut, codecs).appendEncodedParameter(array.toString());
+        service.submit(deadline, MULTICALL, params).whenComplete((result, error) -> {
+            if (error != null) {
+                batch.forEach(e -> e.future().completeExceptionally(error));
+            } else {
+                route(result, batch);
+            }
+        });
+    }
+
+    private void route(XMLRPCResult result, List<Entry> batch) {
+        List<?> responses;
+        try {
+            responses = result.getArrayValue(0);
+        } catch (RuntimeException ex) {
+            var error = new XMLRPCException("Invalid multicall response");
+            batch.forEach(e -> e.future().completeExceptionally(error));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            var future = batch.get(i).future();
+            var response = i < responses.size() ? responses.get(i) : null;
+            if (response instanceof List<?> values) {
+                future.complete(new XMLRPCResult(tzIn, codecs, values));
+            } else if (response instanceof Map<?, ?> fault
+                    && fault.get("faultCode") instanceof Integer faultCode) {
+                var faultString = String.valueOf(fault.get("faultString"));
+                future.completeExceptionally(new XMLRPCException(faultCode, faultString));
+            } else {
+                future.completeExceptionally(new XMLRPCException("Invalid multicall response"));
+            }
+        }
+    }
+
+    private static void forward(CompletableFuture<XMLRPCResult> source, CompletableFuture<XMLRPCResult> target) {
+        source.whenComplete((result, error) -> {
+            if (error != null) {
+                target.completeExceptionally(error);
+            } else {
+                target.complete(result);
+            }
+        });
+        target.whenComplete((result, error) -> {
+            if (target.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Compact binary encoding of XMLRPC data model for peers that support it on both sides.
+ * <p>Client sends {@code Accept: application/x-xmlrpc-binary} with XML requests. Server that supports binary
+ * encoding answers with binary response, after that client sends binary requests to this server. Server
+ * rejects binary request it does not support with status 415, client then returns to XML.</p>
+ * <p>Message starts with signature byte, version and kind: request, response or fault. Values are encoded
+ * as type byte followed by payload:</p>
+ * <ul>
+ *     <li>string - length and UTF-8 bytes</li>
+ *     <li>int, i8 - zigzag varint</li>
+ *     <li>double - 8 bytes of IEEE 754 representation</li>
+ *     <li>boolean - type byte only</li>
+ *     <li>base64 - length and raw bytes</li>
+ *     <li>dateTime - zigzag varint of seconds from 1970-01-01T00:00:00 to the local date and time in the time
+ *     zone of the sender, the same value that XML dateTime.iso8601 carries</li>
+ *     <li>struct - number of members, then name and value of each member</li>
+ *     <li>array - number of elements, then elements</li>
+ * </ul>
+ * <p>Static methods {@link #decodeRequest(ByteBuffer, TimeZone)}, {@link #encodeResponse(List, TimeZone)} and
+ * {@link #encodeFault(int, String)} implement server side of the protocol.</p>
+ */
+public final class BinaryCodec {
+    /**
+     * Content type of binary messages.
+     */
+    public static final String CONTENT_TYPE = "application/x-xmlrpc-binary";
+
+    /**
+     * Decoded request.
+     *
+     * @param method     method name
+     * @param parameters method parameters
+     */
+    public record Request(String method, List<Object> parameters) {
+    }
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private static final byte SIGNATURE = 'X';
+    private static final byte VERSION = 1;
+
+    private static final byte KIND_REQUEST = 0;
+    private static final byte KIND_RESPONSE = 1;
+    private static final byte KIND_FAULT = 2;
+
+    private static final byte T_STRING = 0;
+    private static final byte T_INT = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_DOUBLE = 3;
+    private static final byte T_FALSE = 4;
+    private static final byte T_TRUE = 5;
+    private static final byte T_BYTES = 6;
+    private static final byte T_DATE = 7;
+    private static final byte T_STRUCT = 8;
+    private static final byte T_ARRAY = 9;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Decodes request, dates are interpreted in GMT.
+     *
+     * @param buffer request body
+     * @return request
+     * @throws XMLRPCException if request is malformed
+     */
+    public static Request decodeRequest(ByteBuffer buffer) throws XMLRPCException {
+        return decodeRequest(buffer, GMT);
+    }
+
+    /**
+     * Decodes request.
+     *
+     * @param buffer request body
+     * @param tz     time zone of dates
+     * @return request
+     * @throws XMLRPCException if request is malformed
+     */
+    public static Request decodeRequest(ByteBuffer buffer, TimeZone tz) throws XMLRPCException {
+        try {
+            var reader = new Reader(buffer, ResponseLimits.NONE, tz);
+            reader.header(KIND_REQUEST);
+            var method = reader.string();
+            return new Request(method, reader.values());
+        } catch (XMLRPCLimitException ex) {
+            throw new IllegalStateException(ex);
+        } catch (BufferUnderflowException ex) {
+            throw new XMLRPCException("Truncated binary message");
+        }
+    }
+
+    /**
+     * Encodes response with the specified values, dates are encoded in GMT.
+     *
+     * @param values result values
+     * @return response body
+     * @throws IllegalArgumentException if value type is not supported
+     */
+    public static byte[] encodeResponse(List<?> values) {
+        return encodeResponse(values, GMT);
+    }
+
+    /**
+     * Encodes response with the specified values.
+     *
+     * @param values result values
+     * @param tz     time zone of dates
+     * @return response body
+     * @throws IllegalArgumentException if value type is not supported
+     */
+    public static byte[] encodeResponse(List<?> values, TimeZone tz) {
+        var writer = new Writer(tz);
+        writer.header(KIND_RESPONSE);
+        writer.values(values);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes fault response.
+     *
+     * @param code    fault code
+     * @param message fault string
+     * @return response body
+     */
+    public static byte[] encodeFault(int code, String message) {
+        var writer = new Writer(GMT);
+        writer.header(KIND_FAULT);
+        writer.zigzag(code);
+        writer.string(message == null ? "" : message);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Checks if all parameters can be encoded, types with custom encoders are encoded as XML only.
+     */
+    static boolean supports(Object[] parameters, XMLRPCCodecs codecs) {
+        for (var p : parameters) {
+            if (!supports(p, codecs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean supports(Object value, XMLRPCCodecs codecs) {
+        if (value == null || codecs.hasCustomEncoder(value.getClass())) {
+            return false;
+        }
+        if (value instanceof Map<?, ?> map) {
+            for (var entry : map.entrySet()) {
+                // members with other keys are skipped by XML encoding, such maps are sent as XML
+                if (!(entry.getKey() instanceof String)
+                        || entry.getValue() != null && !supports(entry.getValue(), codecs)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (value instanceof List<?> list) {
+            for (var element : list) {
+                if (!supports(element, codecs)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return value instanceof String || value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte || value instanceof Double
+                    || value instanceof Float || value instanceof Boolean || value instanceof byte[]
+                    || value instanceof Date;
+        }
+    }
+
+    /**
+     * Encodes request. Returned buffer wraps encoder array without copying.
+     */
+    static ByteBuffer encodeRequest(String method, Object[] parameters, TimeZone tz) {
+        var writer = new Writer(tz);
+        writer.header(KIND_REQUEST);
+        writer.string(method);
+        writer.values(Arrays.asList(parameters));
+        return writer.toByteBuffer();
+    }
+
+    /**
+     * Decodes response values.
+     *
+     * @throws XMLRPCException      if response is a fault or is malformed
+     * @throws XMLRPCLimitException if response exceeds limits
+     */
+    static List<Object> decodeResponse(ByteBuffer buffer, ResponseLimits limits, TimeZone tz)
+            throws XMLRPCException, XMLRPCLimitException {
+        try {
+            var reader = new Reader(buffer, limits, tz);
+            if (reader.header(KIND_RESPONSE, KIND_FAULT) == KIND_FAULT) {
+                var code = (int) reader.zigzag();
+                throw new XMLRPCException(code, reader.string());
+            }
+            return reader.values();
+        } catch (BufferUnderflowException ex) {
+            throw new XMLRPCException("Truncated binary message");
+        }
+    }
+
+    /**
+     * Writer into growable array.
+     */
+    private static final class Writer {
+        private final TimeZone tz;
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        Writer(TimeZone tz) {
+            this.tz = tz;
+        }
+
+        void header(byte kind) {
+            ensure(3);
+            buffer[size++] = SIGNATURE;
+            buffer[size++] = VERSION;
+            buffer[size++] = kind;
+        }
+
+        void values(List<?> values) {
+            varint(values.size());
+            for (var value : values) {
+                value(value);
+            }
+        }
+
+        void value(Object value) {
+            if (value instanceof String s) {
+                type(T_STRING);
+                string(s);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                type(T_INT);
+                zigzag(((Number) value).intValue());
+            } else if (value instanceof Long l) {
+                type(T_LONG);
+                zigzag(l);
+            } else if (value instanceof Double || value instanceof Float) {
+                type(T_DOUBLE);
+                var bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+                ensure(8);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    buffer[size++] = (byte) (bits >>> shift);
+                }
+            } else if (value instanceof Boolean b) {
+                type(b ? T_TRUE : T_FALSE);
+            } else if (value instanceof byte[] bytes) {
+                type(T_BYTES);
+                bytes(bytes, 0, bytes.length);
+            } else if (value instanceof Date date) {
+                type(T_DATE);
+                // local time in seconds, like XML value
+                var millis = date.getTime();
+                zigzag(Math.floorDiv(millis + tz.getOffset(millis), 1000L));
+            } else if (value instanceof Map<?, ?> map) {
+                type(T_STRUCT);
+                var count = 0;
+                for (var entry : map.entrySet()) {
+                    if (isMember(entry)) {
+                        count++;
+                    }
+                }
+                varint(count);
+                for (var entry : map.entrySet()) {
+                    if (isMember(entry)) {
+                        string((String) entry.getKey());
+                        value(entry.getValue());
+                    }
+                }
+            } else if (value instanceof List<?> list) {
+                type(T_ARRAY);
+                values(list);
+            } else {
+                throw new IllegalArgumentException("Unsupported value type: "
+                        + (value == null ? "null" : value.getClass().getName()));
+            }
+        }
+
+        void string(String s) {
+            // ASCII strings are copied without intermediate array
+            var length = s.length();
+            var ascii = true;
+            for (int i = 0; i < length && ascii; i++) {
+                ascii = s.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                varint(length);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    buffer[size++] = (byte) s.charAt(i);
+                }
+            } else {
+                var bytes = s.getBytes(StandardCharsets.UTF_8);
+                bytes(bytes, 0, bytes.length);
+            }
+        }
+
+        private void bytes(byte[] bytes, int offset, int length) {
+            varint(length);
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        /**
+         * Members with keys other than strings and null values are omitted as in XML encoding.
+         */
+        private static boolean isMember(Map.Entry<?, ?> entry) {
+            return entry.getKey() instanceof String && entry.getValue() != null;
+        }
+
+        private void type(byte type) {
+            ensure(1);
+            buffer[size++] = type;
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        private void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void ensure(int length) {
+            if (buffer.length - size < length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buffer, 0, size);
+        }
+    }
+
+    /**
+     * Reader over buffer. Strings are decoded directly from the backing array of heap buffers.
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final ResponseLimits limits;
+        private final TimeZone tz;
+        private int depth;
+        private int count;
+
+        Reader(ByteBuffer buffer, ResponseLimits limits, TimeZone tz) {
+            this.buffer = buffer;
+            this.limits = limits;
+            this.tz = tz;
+        }
+
+        byte header(byte... kinds) throws XMLRPCException {
+            if (buffer.get() != SIGNATURE || buffer.get() != VERSION) {
+                throw new XMLRPCException("Unsupported binary message");
+            }
+            var kind = buffer.get();
+            for (var k : kinds) {
+                if (kind == k) {
+                    return kind;
+                }
+            }
+            throw new XMLRPCException("Unexpected binary message kind " + kind);
+        }
+
+        List<Object> values() throws XMLRPCException, XMLRPCLimitException {
+            var size = length();
+            var values = new ArrayList<>(Math.min(size, buffer.remaining()));
+            for (int i = 0; i < size; i++) {
+                values.add(value());
+            }
+            return values;
+        }
+
+        private Object value() throws XMLRPCException, XMLRPCLimitException {
+            if (++count > limits.maxElements()) {
+                throw new XMLRPCLimitException("Response exceeds limit of " + limits.maxElements() + " elements");
+            }
+            if (++depth > limits.maxDepth()) {
+                throw new XMLRPCLimitException("Response exceeds nesting depth of " + limits.maxDepth());
+            }
+            var type = buffer.get();
+            Object result = switch (type) {
+                case T_STRING -> string();
+                case T_INT -> {
+                    var value = zigzag();
+                    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                        throw new XMLRPCException("Value of int is out of range");
+                    }
+                    yield (int) value;
+                }
+                case T_LONG -> zigzag();
+                case T_DOUBLE -> buffer.getDouble();
+                case T_FALSE -> Boolean.FALSE;
+                case T_TRUE -> Boolean.TRUE;
+                case T_BYTES -> {
+                    var bytes = new byte[length()];
+                    buffer.get(bytes);
+                    yield bytes;
+                }
+                case T_DATE -> Date.from(LocalDateTime.ofEpochSecond(zigzag(), 0, ZoneOffset.UTC)
+                        .atZone(tz.toZoneId()).toInstant());
+                case T_STRUCT -> {
+                    var size = length();
+                    var map = new HashMap<String, Object>(Math.min(size, buffer.remaining()) * 2);
+                    for (int i = 0; i < size; i++) {
+                        var name = string();
+                        map.put(name, value());
+                    }
+                    yield map;
+                }
+                case T_ARRAY -> values();
+                default -> throw new XMLRPCException("Unknown binary value type " + type);
+            };
+            depth--;
+            return result;
+        }
+
+        String string() throws XMLRPCException {
+            var length = length();
+            if (length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            String result;
+            if (buffer.hasArray()) {
+                result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                var bytes = new byte[length];
+                buffer.get(bytes);
+                result = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return result;
+        }
+
+        private int length() throws XMLRPCException {
+            var length = varint();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new XMLRPCException("Invalid length in binary message");
+            }
+            return (int) length;
+        }
+
+        long zigzag() throws XMLRPCException {
+            var value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long varint() throws XMLRPCException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                var b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new XMLRPCException("Malformed varint in binary message");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class defines retry and hedging policy of idempotent XMLRPC methods.
+ * <p>Policy is applied only to methods explicitly registered via
+ * {@link XMLRPCService.Builder#callPolicy(CallPolicy, String...)}. Other methods are never retried or hedged.</p>
+ * <ul>
+ *     <li>Retry: call that failed to connect is repeated after jittered exponential backoff.</li>
+ *     <li>Hedging: if call is not completed within hedge delay, second identical request is sent. The first
+ *     response wins, the other request is cancelled. Delay may be derived from observed latency percentile
+ *     of the method.</li>
+ * </ul>
+ * <p>All extra requests are limited by the retry budget of the service.</p>
+ */
+public final class CallPolicy {
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration hedgeDelay;
+    private final double hedgePercentile;
+
+    private CallPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.hedgeDelay = builder.hedgeDelay;
+        this.hedgePercentile = builder.hedgePercentile;
+    }
+
+    /**
+     * Creates new builder.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    boolean hedging() {
+        return hedgeDelay != null || hedgePercentile > 0;
+    }
+
+    double hedgePercentile() {
+        return hedgePercentile;
+    }
+
+    Duration hedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Returns backoff before the specified retry, half of the exponential delay is randomized.
+     */
+    long backoffNanos(int retry) {
+        var delay = initialBackoff.toNanos() << Math.min(retry - 1, 30);
+        if (delay <= 0 || delay > maxBackoff.toNanos()) {
+            delay = maxBackoff.toNanos();
+        }
+        var half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * This class builds {@link CallPolicy} objects.
+     */
+    public static final class Builder {
+        private int maxAttempts = 1;
+        private Duration initialBackoff = Duration.ofMillis(50);
+        private Duration maxBackoff = Duration.ofSeconds(1);
+        private Duration hedgeDelay;
+        private double hedgePercentile;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets maximum number of attempts including the first one for calls that failed to connect.
+         * Default is 1, i.e. no retries.
+         *
+         * @param maxAttempts maximum number of attempts
+         * @return this builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("Number of attempts must be positive");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets backoff between retries. Delay doubles with each retry up to maximum. Default is 50ms to 1s.
+         *
+         * @param initial initial delay
+         * @param max     maximum delay
+         * @return this builder
+         */
+        public Builder backoff(Duration initial, Duration max) {
+            this.initialBackoff = initial;
+            this.maxBackoff = max;
+            return this;
+        }
+
+        /**
+         * Sets fixed hedge delay. If hedge percentile is also set this delay is used until enough latency
+         * samples are collected.
+         *
+         * @param hedgeDelay delay
+         * @return this builder
+         */
+        public Builder hedgeDelay(Duration hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        /**
+         * Derives hedge delay from observed latency of the method, for example 95 means that second request
+         * is sent if call takes longer than 95% of recent successful calls.
+         *
+         * @param percentile latency percentile, from 0 to 100 exclusively
+         * @return this builder
+         */
+        public Builder hedgePercentile(double percentile) {
+            if (percentile <= 0 || percentile >= 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            this.hedgePercentile = percentile;
+            return this;
+        }
+
+        /**
+         * Builds policy.
+         *
+         * @return policy
+         */
+        public CallPolicy build() {
+            return new CallPolicy(this);
+        }
+    }
+}
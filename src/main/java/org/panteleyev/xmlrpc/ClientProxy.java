@@ -0,0 +1,94 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dynamic proxy implementation of {@link XMLRPCInterface}. Method metadata is computed once when proxy is created.
+ */
+final class ClientProxy implements InvocationHandler {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private record MethodInfo(String name, Class<?> returnType) {
+    }
+
+    private final XMLRPCService service;
+    private final Class<?> iface;
+    private final Map<Method, MethodInfo> methods = new HashMap<>();
+
+    private ClientProxy(XMLRPCService service, Class<?> iface) {
+        this.service = service;
+        this.iface = iface;
+
+        var annotation = iface.getAnnotation(XMLRPCInterface.class);
+        var prefix = annotation == null ? "" : annotation.prefix();
+        for (var method : iface.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers())) {
+                continue;
+            }
+            var exceptions = Arrays.asList(method.getExceptionTypes());
+            if (!declares(exceptions, IOException.class) || !declares(exceptions, XMLRPCException.class)) {
+                throw new IllegalArgumentException("Method " + method.getName()
+                        + " must declare IOException and XMLRPCException");
+            }
+            methods.put(method, new MethodInfo(methodName(prefix, method), method.getReturnType()));
+        }
+    }
+
+    static <T> T create(XMLRPCService service, Class<T> iface) {
+        var handler = new ClientProxy(service, iface);
+        return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, handler));
+    }
+
+    static String methodName(String prefix, Method method) {
+        var name = method.getAnnotation(XMLRPCName.class);
+        if (name != null) {
+            return name.value();
+        }
+        return prefix.isEmpty() ? method.getName() : prefix + "." + method.getName();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        var info = methods.get(method);
+        if (info == null) {
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> iface.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        }
+
+        var result = service.call(info.name(), args == null ? NO_ARGS : args);
+        if (info.returnType() == void.class) {
+            return null;
+        } else if (info.returnType() == XMLRPCResult.class) {
+            return result;
+        } else {
+            return result.getValue(0, info.returnType());
+        }
+    }
+
+    private static boolean declares(Iterable<Class<?>> exceptions, Class<?> type) {
+        for (var e : exceptions) {
+            if (e.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
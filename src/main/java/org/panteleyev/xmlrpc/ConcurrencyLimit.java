@@ -0,0 +1,172 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.time.Duration;
+
+/**
+ * This class defines adaptive limit of concurrent calls to an endpoint.
+ * <p>Limit is adjusted according to the observed latency with one of the following algorithms:</p>
+ * <ul>
+ *     <li>{@link Algorithm#AIMD} - limit grows by one while calls complete faster than latency threshold and
+ *     is multiplied by backoff ratio when call is slower than threshold or fails.</li>
+ *     <li>{@link Algorithm#GRADIENT} - limit follows the ratio between minimum observed latency and
+ *     current latency, similar to TCP Vegas.</li>
+ * </ul>
+ * <p>Calls above the limit wait up to the specified time and then are rejected with
+ * {@link XMLRPCLimitException}.</p>
+ */
+public final class ConcurrencyLimit {
+    /**
+     * Limit adjustment algorithm.
+     */
+    public enum Algorithm {
+        /**
+         * Additive increase, multiplicative decrease.
+         */
+        AIMD,
+        /**
+         * Latency gradient.
+         */
+        GRADIENT
+    }
+
+    private final Algorithm algorithm;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Duration maxWait;
+    private final Duration latencyThreshold;
+    private final double backoffRatio;
+
+    private ConcurrencyLimit(Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxWait = builder.maxWait;
+        this.latencyThreshold = builder.latencyThreshold;
+        this.backoffRatio = builder.backoffRatio;
+    }
+
+    /**
+     * Creates new builder.
+     *
+     * @param algorithm limit adjustment algorithm
+     * @return builder
+     */
+    public static Builder builder(Algorithm algorithm) {
+        return new Builder(algorithm);
+    }
+
+    Algorithm algorithm() {
+        return algorithm;
+    }
+
+    int initialLimit() {
+        return initialLimit;
+    }
+
+    int minLimit() {
+        return minLimit;
+    }
+
+    int maxLimit() {
+        return maxLimit;
+    }
+
+    Duration maxWait() {
+        return maxWait;
+    }
+
+    Duration latencyThreshold() {
+        return latencyThreshold;
+    }
+
+    double backoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * This class builds {@link ConcurrencyLimit} objects.
+     */
+    public static final class Builder {
+        private final Algorithm algorithm;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private Duration maxWait = Duration.ZERO;
+        private Duration latencyThreshold = Duration.ofSeconds(1);
+        private double backoffRatio = 0.9;
+
+        private Builder(Algorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        /**
+         * Sets initial, minimum and maximum limit. Default is 20, 1 and 200.
+         *
+         * @param initial initial limit
+         * @param min     minimum limit
+         * @param max     maximum limit
+         * @return this builder
+         */
+        public Builder limits(int initial, int min, int max) {
+            if (min < 1 || min > initial || initial > max) {
+                throw new IllegalArgumentException("Invalid limits");
+            }
+            this.initialLimit = initial;
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        /**
+         * Sets maximum time a call waits for a free slot. Zero means that excess calls are rejected
+         * immediately, which is default.
+         *
+         * @param maxWait maximum wait time
+         * @return this builder
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        /**
+         * Sets latency above which AIMD algorithm decreases the limit. Default is 1 second.
+         *
+         * @param latencyThreshold latency threshold
+         * @return this builder
+         */
+        public Builder latencyThreshold(Duration latencyThreshold) {
+            this.latencyThreshold = latencyThreshold;
+            return this;
+        }
+
+        /**
+         * Sets ratio by which AIMD algorithm decreases the limit. Default is 0.9.
+         *
+         * @param backoffRatio ratio, between 0.5 and 1
+         * @return this builder
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            if (backoffRatio < 0.5 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("Backoff ratio must be between 0.5 and 1");
+            }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Builds limit definition.
+         *
+         * @return limit definition
+         */
+        public ConcurrencyLimit build() {
+            return new ConcurrencyLimit(this);
+        }
+    }
+}
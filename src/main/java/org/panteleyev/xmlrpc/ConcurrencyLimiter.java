@@ -0,0 +1,190 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class limits number of concurrent calls to an endpoint according to {@link ConcurrencyLimit}.
+ * Its state can be used as metrics.
+ */
+public final class ConcurrencyLimiter {
+    private static final double SMOOTHING = 0.2;
+    private static final int MIN_RTT_RESET = 500;
+
+    private final ConcurrencyLimit config;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long rejected;
+
+    // gradient state
+    private double rttNoLoad;
+    private double rttShort;
+    private int samples;
+
+    ConcurrencyLimiter(ConcurrencyLimit config) {
+        this.config = config;
+        this.limit = config.initialLimit();
+    }
+
+    /**
+     * Returns current limit of concurrent calls.
+     *
+     * @return current limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of calls in flight.
+     *
+     * @return number of calls in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of calls waiting for a free slot.
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns total number of rejected calls.
+     *
+     * @return number of rejected calls
+     */
+    public long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void acquire(Deadline deadline) throws XMLRPCLimitException, InterruptedIOException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+
+            var wait = config.maxWait().toNanos();
+            if (!deadline.isInfinite()) {
+                wait = Math.min(wait, deadline.remaining().toNanos());
+            }
+            queued++;
+            try {
+                while (inFlight >= (int) limit) {
+                    if (wait <= 0) {
+                        rejected++;
+                        throw new XMLRPCLimitException("Concurrency limit " + (int) limit + " exceeded");
+                    }
+                    wait = available.awaitNanos(wait);
+                }
+                inFlight++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for concurrency limit");
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases slot without updating the limit.
+     */
+    void abandon() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long latencyNanos, boolean dropped) {
+        lock.lock();
+        try {
+            var wasInFlight = inFlight--;
+            var oldLimit = (int) limit;
+            switch (config.algorithm()) {
+                case AIMD -> updateAimd(latencyNanos, dropped, wasInFlight);
+                case GRADIENT -> updateGradient(latencyNanos, dropped);
+            }
+            limit = Math.max(config.minLimit(), Math.min(config.maxLimit(), limit));
+
+            var permits = Math.max(1, (int) limit - oldLimit + 1);
+            for (int i = 0; i < permits; i++) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateAimd(long latencyNanos, boolean dropped, int wasInFlight) {
+        if (dropped || latencyNanos > config.latencyThreshold().toNanos()) {
+            limit = limit * config.backoffRatio();
+        } else if (wasInFlight * 2 >= (int) limit) {
+            // increase only when limit is actually used
+            limit = limit + 1.0;
+        }
+    }
+
+    private void updateGradient(long latencyNanos, boolean dropped) {
+        if (dropped) {
+            limit = limit * config.backoffRatio();
+            return;
+        }
+
+        rttShort = rttShort == 0 ? latencyNanos : rttShort * (1 - SMOOTHING) + latencyNanos * SMOOTHING;
+        if (rttNoLoad == 0 || latencyNanos < rttNoLoad) {
+            rttNoLoad = latencyNanos;
+        }
+        // forget old minimum periodically to follow changes of the backend
+        if (++samples % MIN_RTT_RESET == 0) {
+            rttNoLoad = rttShort;
+        }
+
+        var gradient = Math.max(0.5, Math.min(1.0, 2 * rttNoLoad / rttShort));
+        var queueSize = Math.sqrt(limit);
+        var newLimit = limit * gradient + queueSize;
+        limit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.time.Duration;
+
+/**
+ * This class defines point in time by which XMLRPC call must be completed. Deadline covers connection,
+ * sending request, waiting for response and parsing it.
+ */
+public final class Deadline {
+    private static final Deadline NONE = new Deadline(0, true);
+
+    private final long nanoTime;
+    private final boolean infinite;
+
+    private Deadline(long nanoTime, boolean infinite) {
+        this.nanoTime = nanoTime;
+        this.infinite = infinite;
+    }
+
+    /**
+     * Returns deadline that expires after the specified timeout from now.
+     *
+     * @param timeout timeout
+     * @return deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), false);
+    }
+
+    /**
+     * Returns deadline that never expires.
+     *
+     * @return deadline
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the earliest of this and the other deadline.
+     *
+     * @param other other deadline
+     * @return the earliest deadline
+     */
+    public Deadline min(Deadline other) {
+        if (infinite) {
+            return other;
+        } else if (other.infinite) {
+            return this;
+        } else {
+            return nanoTime - other.nanoTime <= 0 ? this : other;
+        }
+    }
+
+    /**
+     * Returns the latest of this and the other deadline.
+     */
+    Deadline max(Deadline other) {
+        if (infinite || other.infinite) {
+            return NONE;
+        } else {
+            return nanoTime - other.nanoTime >= 0 ? this : other;
+        }
+    }
+
+    /**
+     * Checks if this deadline never expires.
+     *
+     * @return {@code true} if deadline never expires
+     */
+    public boolean isInfinite() {
+        return infinite;
+    }
+
+    /**
+     * Checks if this deadline has expired.
+     *
+     * @return {@code true} if deadline has expired
+     */
+    public boolean isExpired() {
+        return !infinite && System.nanoTime() - nanoTime >= 0;
+    }
+
+    /**
+     * Returns time remaining until this deadline, zero if deadline has expired.
+     *
+     * @return remaining time
+     * @throws IllegalStateException if deadline never expires
+     */
+    public Duration remaining() {
+        if (infinite) {
+            throw new IllegalStateException("Deadline never expires");
+        }
+        return Duration.ofNanos(Math.max(0, nanoTime - System.nanoTime()));
+    }
+
+    @Override
+    public String toString() {
+        return infinite ? "Deadline[none]" : "Deadline[remaining=" + remaining() + "]";
+    }
+}
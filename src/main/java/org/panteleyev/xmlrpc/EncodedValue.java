@@ -0,0 +1,81 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Immutable XMLRPC value encoded in advance. Encoded value can be passed as a parameter or nested into
+ * maps, lists and records, its bytes are copied into the request as is.
+ * <p>Use this class for large constant parts of requests that are sent with every call.</p>
+ */
+public final class EncodedValue {
+    private final byte[] bytes;
+
+    private EncodedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Encodes value using default codecs and GMT time zone.
+     *
+     * @param value value
+     * @return encoded value
+     * @throws RuntimeException if value cannot be encoded
+     */
+    public static EncodedValue of(Object value) {
+        return of(value, TimeZone.getTimeZone("GMT"), XMLRPCCodecs.DEFAULT);
+    }
+
+    /**
+     * Encodes value using the specified codecs and time zone.
+     *
+     * @param value  value
+     * @param tz     time zone of date values
+     * @param codecs codecs
+     * @return encoded value
+     * @throws RuntimeException if value cannot be encoded
+     */
+    public static EncodedValue of(Object value, TimeZone tz, XMLRPCCodecs codecs) {
+        var params = new XMLRPCParameters(tz, codecs);
+        params.appendValue(value);
+        return new EncodedValue(params.getParametersBytes());
+    }
+
+    /**
+     * Returns size of the encoded value in bytes.
+     *
+     * @return size in bytes
+     */
+    public int size() {
+        return bytes.length;
+    }
+
+    void writeTo(Utf8Sink out) {
+        out.write(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof EncodedValue that && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    /**
+     * Returns XML representation of the value.
+     *
+     * @return XML representation
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
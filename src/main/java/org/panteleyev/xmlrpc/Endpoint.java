@@ -0,0 +1,177 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class represents one of the endpoints of {@link XMLRPCService} and provides its load balancing state.
+ */
+public final class Endpoint {
+    // decay time of latency average
+    private static final double TAU = 10_000_000_000.0;
+    // failed call adds at least this cost, penalty decays within few seconds
+    private static final double MIN_PENALTY = 10_000_000.0;
+    private static final double PENALTY_TAU = 1_000_000_000.0;
+
+    private final String url;
+    private final URL parsedUrl;
+    private final ConcurrencyLimiter limiter;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private double latencyEwma;
+    private long lastUpdate;
+    private double penalty;
+    private long lastFailure;
+    private int consecutiveFailures;
+    private volatile long ejectedUntil;
+    private volatile boolean binary;
+
+    Endpoint(String url, ConcurrencyLimit concurrencyLimit) {
+        this.url = url;
+        this.parsedUrl = parse(url);
+        this.limiter = concurrencyLimit == null ? null : new ConcurrencyLimiter(concurrencyLimit);
+    }
+
+    /**
+     * Returns URL of the endpoint.
+     *
+     * @return URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns number of calls in progress.
+     *
+     * @return number of calls in progress
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Returns exponentially weighted moving average of call latency.
+     *
+     * @return latency average
+     */
+    public synchronized Duration getLatency() {
+        return Duration.ofNanos((long) latencyEwma);
+    }
+
+    /**
+     * Checks if endpoint is temporarily excluded from load balancing after consecutive failures.
+     *
+     * @return {@code true} if endpoint is ejected
+     */
+    public boolean isEjected() {
+        return ejectedUntil - System.nanoTime() > 0;
+    }
+
+    /**
+     * Returns concurrency limiter of the endpoint if configured.
+     *
+     * @return concurrency limiter
+     */
+    public Optional<ConcurrencyLimiter> getConcurrencyLimiter() {
+        return Optional.ofNullable(limiter);
+    }
+
+    /**
+     * Checks if endpoint answered with {@link BinaryCodec} encoding, binary requests are sent to such
+     * endpoints.
+     *
+     * @return {@code true} if binary encoding is used
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    void binary(boolean binary) {
+        this.binary = binary;
+    }
+
+    URL url() throws MalformedURLException {
+        return parsedUrl == null ? new URL(url) : parsedUrl;
+    }
+
+    ConcurrencyLimiter limiter() {
+        return limiter;
+    }
+
+    long ejectedUntil() {
+        return ejectedUntil;
+    }
+
+    void start() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Returns load estimate used for selection: latency and recent failure penalty multiplied by number of
+     * outstanding calls.
+     */
+    synchronized double cost() {
+        return (latencyEwma + penalty(System.nanoTime())) * (outstanding.get() + 1);
+    }
+
+    private double penalty(long now) {
+        return penalty == 0 ? 0 : penalty * Math.exp(-(now - lastFailure) / PENALTY_TAU);
+    }
+
+    /**
+     * Completes call without updating latency and failure statistics.
+     */
+    void abandon() {
+        outstanding.decrementAndGet();
+    }
+
+    void complete(long latencyNanos, boolean failed, int ejectionThreshold, Duration ejectionTime) {
+        outstanding.decrementAndGet();
+        synchronized (this) {
+            var now = System.nanoTime();
+            if (failed) {
+                // fast failures must not make endpoint look cheap, latency of failed call is not used
+                penalty = penalty(now) + Math.max(latencyEwma, MIN_PENALTY);
+                lastFailure = now;
+            } else {
+                if (latencyEwma == 0 || latencyNanos > latencyEwma) {
+                    // peak sensitive average reacts to slowdowns immediately
+                    latencyEwma = latencyNanos;
+                } else {
+                    var w = Math.exp(-(now - lastUpdate) / TAU);
+                    latencyEwma = latencyEwma * w + latencyNanos * (1 - w);
+                }
+                lastUpdate = now;
+            }
+
+            if (!failed) {
+                consecutiveFailures = 0;
+            } else if (ejectionThreshold > 0 && ++consecutiveFailures >= ejectionThreshold) {
+                consecutiveFailures = 0;
+                ejectedUntil = now + ejectionTime.toNanos();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Endpoint[" + url + "]";
+    }
+
+    private static URL parse(String url) {
+        try {
+            return new URL(url);
+        } catch (MalformedURLException ex) {
+            // reported when call is made
+            return null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of a single XMLRPC call. Aborts connection when deadline expires or call is cancelled.
+ */
+final class Exchange {
+    static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        var thread = new Thread(r, "xmlrpc-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Deadline deadline;
+    private volatile HttpURLConnection connection;
+    private volatile boolean cancelled;
+    private volatile boolean expired;
+    private ScheduledFuture<?> timer;
+
+    Exchange(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    Deadline deadline() {
+        return deadline;
+    }
+
+    void start() throws XMLRPCTimeoutException {
+        if (deadline.isInfinite()) {
+            return;
+        }
+        if (deadline.isExpired()) {
+            throw new XMLRPCTimeoutException("Deadline exceeded before call started");
+        }
+        timer = TIMER.schedule(() -> {
+            expired = true;
+            disconnect();
+        }, deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    void finish() {
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        // connection may be reused by other calls after exchange is finished
+        connection = null;
+    }
+
+    void connection(HttpURLConnection connection) {
+        this.connection = connection;
+        if (cancelled || expired) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Returns timeout in milliseconds for a blocking operation limited by both deadline and configured timeout.
+     */
+    int timeout(int configured) {
+        if (deadline.isInfinite()) {
+            return configured;
+        }
+        var remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.remaining().toMillis()));
+        return configured == 0 ? remaining : Math.min(configured, remaining);
+    }
+
+    void cancel() {
+        cancelled = true;
+        disconnect();
+    }
+
+    void checkDeadline() throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Call cancelled");
+        }
+        if (expired || deadline.isExpired()) {
+            throw new XMLRPCTimeoutException("Deadline exceeded");
+        }
+    }
+
+    /**
+     * Translates exception caused by aborted connection or socket timeout.
+     */
+    IOException translate(IOException ex) {
+        if (cancelled) {
+            var result = new InterruptedIOException("Call cancelled");
+            result.initCause(ex);
+            return result;
+        } else if (expired || deadline.isExpired()) {
+            return new XMLRPCTimeoutException("Deadline exceeded", ex);
+        } else if (ex instanceof SocketTimeoutException) {
+            return new XMLRPCTimeoutException(ex.getMessage(), ex);
+        } else {
+            return ex;
+        }
+    }
+
+    private void disconnect() {
+        var c = connection;
+        if (c != null) {
+            c.disconnect();
+        }
+    }
+}
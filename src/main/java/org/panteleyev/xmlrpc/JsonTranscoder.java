@@ -0,0 +1,220 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Response handler that transcodes XMLRPC response to JSON while it is received. Value tree is never
+ * created, memory usage does not depend on the response size.
+ * <p>Response is written as {@code {"result":value}}, fault is written as
+ * {@code {"error":{"code":faultCode,"message":faultString}}}. Values are mapped as follows:</p>
+ * <ul>
+ *     <li>&lt;struct&gt; - object</li>
+ *     <li>&lt;array&gt; - array</li>
+ *     <li>&lt;int&gt;, &lt;i4&gt;, &lt;i8&gt;, &lt;double&gt; - number</li>
+ *     <li>&lt;boolean&gt; - boolean</li>
+ *     <li>&lt;string&gt;, &lt;base64&gt; - string</li>
+ *     <li>&lt;dateTime.iso8601&gt; - ISO-8601 string in UTC</li>
+ * </ul>
+ * <p>Values with custom tags are converted by {@link XMLRPCCodecs} of the service. XMLRPC response may contain
+ * only one value, extra values are skipped.</p>
+ * <pre>
+ * service.call(JsonTranscoder.to(out), "items.list");
+ * </pre>
+ */
+public final class JsonTranscoder implements ResponseHandler<Void> {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    private JsonTranscoder(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates handler that writes JSON to the writer. Writer is flushed but not closed.
+     *
+     * @param out writer
+     * @return response handler
+     */
+    public static ResponseHandler<Void> to(Writer out) {
+        return new JsonTranscoder(out);
+    }
+
+    /**
+     * Creates handler that writes JSON encoded as UTF-8 to the stream. Stream is flushed but not closed.
+     *
+     * @param out output stream
+     * @return response handler
+     */
+    public static ResponseHandler<Void> to(OutputStream out) {
+        return new JsonTranscoder(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public Void handle(XMLRPCReader reader) throws IOException, XMLRPCException {
+        boolean hasValue;
+        try {
+            hasValue = reader.hasNext();
+        } catch (XMLRPCException ex) {
+            if (!reader.isFault()) {
+                throw ex;
+            }
+            out.write("{\"error\":{\"code\":");
+            out.write(Integer.toString(ex.getFaultCode()));
+            out.write(",\"message\":");
+            writeString(ex.getMessage() == null ? "" : ex.getMessage());
+            out.write("}}");
+            out.flush();
+            return null;
+        }
+
+        out.write("{\"result\":");
+        if (hasValue) {
+            writeValue(reader);
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+        } else {
+            out.write("null");
+        }
+        out.write('}');
+        out.flush();
+        return null;
+    }
+
+    private void writeValue(XMLRPCReader reader) throws IOException, XMLRPCException {
+        switch (reader.peek()) {
+            case BEGIN_STRUCT -> {
+                reader.beginStruct();
+                out.write('{');
+                var first = true;
+                while (reader.hasNext()) {
+                    var name = reader.nextMemberName();
+                    if (!reader.hasNext() || reader.peek() == XMLRPCReader.Token.MEMBER_NAME) {
+                        continue;
+                    }
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    writeString(name);
+                    out.write(':');
+                    writeValue(reader);
+                }
+                reader.endStruct();
+                out.write('}');
+            }
+            case BEGIN_ARRAY -> {
+                reader.beginArray();
+                out.write('[');
+                var first = true;
+                while (reader.hasNext()) {
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    writeValue(reader);
+                }
+                reader.endArray();
+                out.write(']');
+            }
+            case STRING -> {
+                out.write('"');
+                reader.readText(this::writeEscaped);
+                out.write('"');
+            }
+            case BASE64 -> {
+                out.write('"');
+                reader.readText(this::writeBase64);
+                out.write('"');
+            }
+            case INT, LONG -> out.write(Long.toString(reader.readLong()));
+            case DOUBLE -> writeNumber(reader.readDouble());
+            case BOOLEAN -> out.write(reader.readBoolean() ? "true" : "false");
+            case DATE_TIME -> writeString(reader.readDate().toInstant().toString());
+            default -> writeObject(reader.readValue());
+        }
+    }
+
+    private void writeObject(Object value) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            out.write(value.toString());
+        } else if (value instanceof Number number) {
+            writeNumber(number.doubleValue());
+        } else if (value instanceof Date date) {
+            writeString(date.toInstant().toString());
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeNumber(double value) throws IOException {
+        if (Double.isFinite(value)) {
+            out.write(Double.toString(value));
+        } else {
+            // JSON has no representation of NaN and infinity
+            writeString(Double.toString(value));
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        var chars = value.toCharArray();
+        writeEscaped(chars, 0, chars.length);
+        out.write('"');
+    }
+
+    private void writeEscaped(char[] chars, int start, int length) throws IOException {
+        var end = start + length;
+        var from = start;
+        for (int i = start; i < end; i++) {
+            var c = chars[i];
+            // line and paragraph separators are escaped for JavaScript consumers
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            out.write(chars, from, i - from);
+            from = i + 1;
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+                }
+            }
+        }
+        out.write(chars, from, end - from);
+    }
+
+    private void writeBase64(char[] chars, int start, int length) throws IOException {
+        // base64 alphabet needs no escaping, only line breaks are removed
+        var end = start + length;
+        var from = start;
+        for (int i = start; i < end; i++) {
+            if (Character.isWhitespace(chars[i])) {
+                out.write(chars, from, i - from);
+                from = i + 1;
+            }
+        }
+        out.write(chars, from, end - from);
+    }
+}
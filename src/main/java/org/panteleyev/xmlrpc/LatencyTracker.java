@@ -0,0 +1,43 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.Arrays;
+
+/**
+ * Keeps recent latency samples of a method and computes percentiles over them.
+ */
+final class LatencyTracker {
+    static final int MIN_SAMPLES = 20;
+    private static final int SIZE = 256;
+
+    private final long[] samples = new long[SIZE];
+    private int count;
+    private int next;
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % SIZE;
+        if (count < SIZE) {
+            count++;
+        }
+    }
+
+    /**
+     * Returns percentile of recent samples or -1 if there are not enough samples.
+     */
+    long percentile(double percentile) {
+        long[] copy;
+        synchronized (this) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            copy = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(copy);
+        var index = (int) Math.ceil(percentile / 100.0 * copy.length) - 1;
+        return copy[Math.max(0, Math.min(index, copy.length - 1))];
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how {@link XMLRPCService} with several endpoints selects endpoint for a call. Ejected endpoints are
+ * skipped unless all endpoints are ejected.
+ */
+public enum LoadBalancing {
+    /**
+     * Endpoint with the least number of calls in progress is selected.
+     */
+    LEAST_OUTSTANDING {
+        @Override
+        Endpoint select(List<Endpoint> endpoints) {
+            var size = endpoints.size();
+            var offset = ThreadLocalRandom.current().nextInt(size);
+            Endpoint best = null;
+            for (int i = 0; i < size; i++) {
+                var endpoint = endpoints.get((offset + i) % size);
+                if (!endpoint.isEjected()
+                        && (best == null || endpoint.getOutstanding() < best.getOutstanding())) {
+                    best = endpoint;
+                }
+            }
+            return best;
+        }
+    },
+
+    /**
+     * Two random endpoints are compared and the one with lower product of latency average and number of calls
+     * in progress is selected.
+     */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        Endpoint select(List<Endpoint> endpoints) {
+            var size = endpoints.size();
+            var random = ThreadLocalRandom.current();
+            Endpoint a = null;
+            Endpoint b = null;
+            // few attempts to find two healthy endpoints, then fall back to full scan
+            for (int i = 0; i < 4 && (a == null || b == null); i++) {
+                var candidate = endpoints.get(random.nextInt(size));
+                if (candidate.isEjected() || candidate == a) {
+                    continue;
+                }
+                if (a == null) {
+                    a = candidate;
+                } else {
+                    b = candidate;
+                }
+            }
+            if (a == null) {
+                return LEAST_OUTSTANDING.select(endpoints);
+            } else if (b == null) {
+                return a;
+            }
+
+            var costA = a.cost();
+            var costB = b.cost();
+            if (costA == costB) {
+                return a.getOutstanding() <= b.getOutstanding() ? a : b;
+            }
+            return costA < costB ? a : b;
+        }
+    };
+
+    /**
+     * Returns selected endpoint or {@code null} if all endpoints are ejected.
+     */
+    abstract Endpoint select(List<Endpoint> endpoints);
+
+    Endpoint choose(List<Endpoint> endpoints) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        var result = select(endpoints);
+        if (result != null) {
+            return result;
+        }
+        // all endpoints are ejected, use the one that recovers first
+        var first = endpoints.get(0);
+        for (var endpoint : endpoints) {
+            if (endpoint.ejectedUntil() - first.ejectedUntil() < 0) {
+                first = endpoint;
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class limits total size of responses that are received and decoded at the same time. Budget can be
+ * shared by several services.
+ * <p>Response with declared Content-Length reserves its whole size before the body is read. Response of
+ * unknown length reserves budget in chunks as bytes are received. Reservation is released when response is
+ * decoded, results returned to the caller are not accounted.</p>
+ * <p>Response that does not fit into the remaining budget waits up to the specified time or call deadline,
+ * then it is rejected with {@link XMLRPCLimitException}. Response larger than the whole budget is rejected
+ * immediately.</p>
+ */
+public final class MemoryBudget {
+    private final long capacity;
+    private final Duration maxWait;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private long used;
+    private int queued;
+    private long rejected;
+
+    private MemoryBudget(long capacity, Duration maxWait) {
+        this.capacity = capacity;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Creates memory budget.
+     *
+     * @param capacity total size of responses in bytes
+     * @param maxWait  maximum time a response waits for the budget, zero means no wait
+     * @return memory budget
+     */
+    public static MemoryBudget of(long capacity, Duration maxWait) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        return new MemoryBudget(capacity, maxWait);
+    }
+
+    /**
+     * Returns total size of the budget in bytes.
+     *
+     * @return capacity in bytes
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns number of bytes reserved by responses in flight.
+     *
+     * @return reserved bytes
+     */
+    public long getUsed() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of responses waiting for the budget.
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns total number of rejected responses.
+     *
+     * @return number of rejected responses
+     */
+    public long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void acquire(long bytes, Deadline deadline) throws XMLRPCLimitException, InterruptedIOException {
+        lock.lock();
+        try {
+            if (bytes > capacity) {
+                rejected++;
+                throw new XMLRPCLimitException("Response of " + bytes + " bytes exceeds memory budget");
+            }
+            if (used + bytes <= capacity) {
+                used += bytes;
+                return;
+            }
+
+            var wait = maxWait.toNanos();
+            if (!deadline.isInfinite()) {
+                wait = Math.min(wait, deadline.remaining().toNanos());
+            }
+            queued++;
+            try {
+                while (used + bytes > capacity) {
+                    if (wait <= 0) {
+                        rejected++;
+                        throw new XMLRPCLimitException("Memory budget exhausted");
+                    }
+                    wait = available.awaitNanos(wait);
+                }
+                used += bytes;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memory budget");
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves bytes if budget can hold them without waiting. Failure is not counted as rejection.
+     */
+    boolean tryAcquire(long bytes) {
+        lock.lock();
+        try {
+            if (used + bytes > capacity) {
+                return false;
+            }
+            used += bytes;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long bytes) {
+        if (bytes == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            used -= bytes;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decoder of buffered responses that consist of a single array. Structural pre-scan finds boundaries of array
+ * elements, contiguous ranges of elements are decoded concurrently and concatenated in order.
+ * <p>Pre-scan recognizes only the plain response layout in UTF-8 or ASCII, other responses including faults
+ * are left to the sequential parser.</p>
+ */
+final class ParallelDecoder {
+    private static final String[] PATH = {"methodResponse", "params", "param", "value", "array", "data"};
+    private static final int ELEMENT_LEVEL = PATH.length + 1;
+
+    private static final byte[] PREFIX = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<methodResponse><params><param><value><array><data>").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUFFIX = "</data></array></value></param></params></methodResponse>"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    private final byte[] bytes;
+    private final TimeZone tz;
+    private final XMLRPCCodecs codecs;
+
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private int count;
+
+    private ParallelDecoder(byte[] bytes, TimeZone tz, XMLRPCCodecs codecs) {
+        this.bytes = bytes;
+        this.tz = tz;
+        this.codecs = codecs;
+    }
+
+    /**
+     * Decodes response values or returns null if response layout is not supported.
+     */
+    static List<Object> decode(byte[] bytes, TimeZone tz, XMLRPCCodecs codecs, ForkJoinPool pool)
+            throws IOException, XMLRPCException {
+        var decoder = new ParallelDecoder(bytes, tz, codecs);
+        if (!decoder.scan()) {
+            return null;
+        }
+        return List.of(decoder.decode(pool));
+    }
+
+    private List<Object> decode(ForkJoinPool pool) throws IOException, XMLRPCException {
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        // split elements into ranges of similar size
+        var total = ends[count - 1] - starts[0];
+        var chunkSize = Math.max(MIN_CHUNK_SIZE, total / ((long) pool.getParallelism() * CHUNKS_PER_THREAD));
+        var bounds = new int[Math.min(count, (int) (total / chunkSize) + 2) + 1];
+        var chunks = 0;
+        var chunkStart = starts[0];
+        for (int i = 0; i < count; i++) {
+            if (ends[i] - chunkStart >= chunkSize || i == count - 1) {
+                bounds[++chunks] = i + 1;
+                chunkStart = ends[i];
+            }
+        }
+
+        var results = new List<?>[chunks];
+        try {
+            pool.invoke(new DecodeTask(bounds, results, 0, chunks));
+        } catch (RuntimeException ex) {
+            // pool may rethrow a copy of the task exception
+            for (Throwable t = ex; t != null; t = t.getCause()) {
+                if (t instanceof IOException ioException) {
+                    throw ioException;
+                } else if (t instanceof XMLRPCException xmlrpcException) {
+                    throw xmlrpcException;
+                }
+            }
+            throw ex;
+        }
+
+        var values = new ArrayList<>(count);
+        for (var result : results) {
+            values.addAll(result);
+        }
+        return values;
+    }
+
+    private List<Object> decodeRange(int from, int to) throws IOException, XMLRPCException {
+        var start = starts[from];
+        var in = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(PREFIX),
+                new ByteArrayInputStream(bytes, start, ends[to - 1] - start),
+                new ByteArrayInputStream(SUFFIX))));
+        var reader = new XMLRPCReader(in, tz, codecs);
+        var values = new ArrayList<>(to - from);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            values.add(reader.readValue());
+        }
+        reader.endArray();
+        return values;
+    }
+
+    /**
+     * Finds boundaries of top level array elements. Returns false if response has unexpected layout.
+     */
+    private boolean scan() {
+        if (!isUtf8()) {
+            return false;
+        }
+
+        int level = 0;
+        var data = false;
+        int i = 0;
+        while (true) {
+            i = indexOf('<', i);
+            if (i < 0) {
+                break;
+            }
+            if (startsWith("<!--", i)) {
+                i = find("-->", i);
+            } else if (startsWith("<![CDATA[", i)) {
+                if (level < ELEMENT_LEVEL) {
+                    return false;
+                }
+                i = find("]]>", i);
+            } else if (startsWith("<?", i)) {
+                i = find("?>", i);
+            } else if (startsWith("<!", i)) {
+                // document type declaration
+                return false;
+            } else if (i + 1 < bytes.length && bytes[i + 1] == '/') {
+                var end = tagEnd(i);
+                if (end < 0) {
+                    return false;
+                }
+                if (level == ELEMENT_LEVEL) {
+                    addElement(-1, end);
+                } else if (level == 0 || (level < ELEMENT_LEVEL && !nameEquals(PATH[level - 1], i + 2, end - 1))) {
+                    return false;
+                }
+                level--;
+                i = end;
+            } else {
+                var end = tagEnd(i);
+                if (end < 0) {
+                    return false;
+                }
+                var nameEnd = i + 1;
+                while (nameEnd < end && !isNameEnd(bytes[nameEnd])) {
+                    nameEnd++;
+                }
+                var selfClosing = bytes[end - 2] == '/';
+                var elementLevel = level + 1;
+                if (elementLevel < ELEMENT_LEVEL) {
+                    // ancestors must be plain elements, namespace declarations would be lost in ranges
+                    if (!nameEquals(PATH[elementLevel - 1], i + 1, nameEnd) || nameEnd != end - 1 || selfClosing) {
+                        return false;
+                    }
+                    if (elementLevel == PATH.length) {
+                        if (data) {
+                            return false;
+                        }
+                        data = true;
+                    }
+                } else if (elementLevel == ELEMENT_LEVEL) {
+                    if (!nameEquals("value", i + 1, nameEnd)) {
+                        return false;
+                    }
+                    addElement(i, selfClosing ? end : -1);
+                }
+                if (!selfClosing) {
+                    level++;
+                }
+                i = end;
+            }
+            if (i < 0) {
+                return false;
+            }
+        }
+        return data && level == 0;
+    }
+
+    private void addElement(int start, int end) {
+        if (start >= 0) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+        }
+        if (end >= 0) {
+            ends[count++] = end;
+        }
+    }
+
+    /**
+     * Returns position after the end of the tag, attribute values may contain '&gt;'.
+     */
+    private int tagEnd(int start) {
+        byte quote = 0;
+        for (int i = start + 1; i < bytes.length; i++) {
+            var b = bytes[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isUtf8() {
+        if (bytes.length < 2 || bytes[0] == 0 || bytes[1] == 0 || (bytes[0] & 0xFE) == 0xFE) {
+            // UTF-16 or UTF-32
+            return false;
+        }
+        var start = indexOf('<', 0);
+        if (start < 0 || !startsWith("<?xml", start)) {
+            return true;
+        }
+        var end = find("?>", start);
+        if (end < 0) {
+            return false;
+        }
+        var declaration = new String(bytes, start, end - start, StandardCharsets.US_ASCII).toLowerCase();
+        var encoding = declaration.indexOf("encoding");
+        return encoding < 0 || declaration.contains("utf-8") || declaration.contains("us-ascii");
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private boolean nameEquals(String name, int from, int to) {
+        if (to - from != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (bytes[from + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int from) {
+        return TextScanner.indexOf(bytes, (byte) c, from, bytes.length);
+    }
+
+    private boolean startsWith(String s, int at) {
+        if (at + s.length() > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (bytes[at + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns position after the terminator or -1 if it is not found.
+     */
+    private int find(String terminator, int from) {
+        var first = (byte) terminator.charAt(0);
+        var last = bytes.length - terminator.length() + 1;
+        for (int i = from; (i = TextScanner.indexOf(bytes, first, i, last)) >= 0; i++) {
+            if (startsWith(terminator, i)) {
+                return i + terminator.length();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes ranges of chunks, splitting them in halves.
+     */
+    private final class DecodeTask extends RecursiveAction {
+        private final int[] bounds;
+        private final List<?>[] results;
+        private final int from;
+        private final int to;
+
+        DecodeTask(int[] bounds, List<?>[] results, int from, int to) {
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    results[from] = decodeRange(bounds[from], bounds[to]);
+                } catch (IOException | XMLRPCException ex) {
+                    throw new DecodeException(ex);
+                }
+            } else {
+                var middle = (from + to) >>> 1;
+                invokeAll(new DecodeTask(bounds, results, from, middle), new DecodeTask(bounds, results, middle, to));
+            }
+        }
+    }
+
+    private static final class DecodeException extends RuntimeException {
+        DecodeException(Exception cause) {
+            super(cause);
+        }
+    }
+}
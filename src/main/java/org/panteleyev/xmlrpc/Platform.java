@@ -0,0 +1,43 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform dependent facilities. This implementation defines JDK 17 behaviour, multi-release jar contains
+ * versioned implementations for newer releases in <code>META-INF/versions</code>.
+ */
+final class Platform {
+    private Platform() {
+    }
+
+    /**
+     * Creates executor for tasks that block on network calls.
+     *
+     * @param name thread name prefix
+     * @return executor
+     */
+    static ExecutorService newBlockingExecutor(String name) {
+        var counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            var thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checks if current thread is virtual. Virtual threads are not reused, so per-thread caches do not work for
+     * them.
+     *
+     * @return true if current thread is virtual
+     */
+    static boolean isVirtualThread() {
+        return false;
+    }
+}
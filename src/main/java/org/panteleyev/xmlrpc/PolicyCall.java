@@ -0,0 +1,154 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call of idempotent method that may be retried and hedged according to {@link CallPolicy}.
+ */
+final class PolicyCall extends CompletableFuture<XMLRPCResult> {
+    private final XMLRPCService service;
+    private final CallPolicy policy;
+    private final LatencyTracker tracker;
+    private final RetryBudget budget;
+    private final Deadline deadline;
+    private final String method;
+    private final Object[] parameters;
+
+    private final List<CompletableFuture<XMLRPCResult>> attempts = new ArrayList<>();
+    // running attempts and scheduled retries
+    private int pending;
+    private int retriesLeft;
+    private boolean hedged;
+
+    PolicyCall(XMLRPCService service, CallPolicy policy, LatencyTracker tracker, RetryBudget budget,
+               Deadline deadline, String method, Object[] parameters) {
+        this.service = service;
+        this.policy = policy;
+        this.tracker = tracker;
+        this.budget = budget;
+        this.deadline = deadline;
+        this.method = method;
+        this.parameters = parameters;
+        this.retriesLeft = policy.maxAttempts() - 1;
+    }
+
+    PolicyCall start() {
+        budget.deposit();
+        synchronized (this) {
+            pending++;
+        }
+        attempt();
+        if (policy.hedging()) {
+            scheduleHedge();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        var result = super.cancel(mayInterruptIfRunning);
+        cancelAttempts();
+        return result;
+    }
+
+    /**
+     * Starts attempt, caller must increment pending counter.
+     */
+    private void attempt() {
+        CompletableFuture<XMLRPCResult> attempt;
+        var start = System.nanoTime();
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            attempt = service.submit(deadline, method, parameters);
+            attempts.add(attempt);
+        }
+        attempt.whenComplete((result, error) -> {
+            if (error == null) {
+                tracker.record(System.nanoTime() - start);
+                complete(result);
+                cancelAttempts();
+            } else {
+                onFailure(error);
+            }
+        });
+    }
+
+    private void onFailure(Throwable error) {
+        long backoff;
+        synchronized (this) {
+            pending--;
+            if (isDone()) {
+                return;
+            }
+            if (retryable(error) && retriesLeft > 0 && !deadline.isExpired() && budget.tryWithdraw()) {
+                retriesLeft--;
+                pending++;
+                backoff = policy.backoffNanos(policy.maxAttempts() - 1 - retriesLeft);
+            } else {
+                if (pending == 0) {
+                    completeExceptionally(error);
+                }
+                return;
+            }
+        }
+        CompletableFuture.delayedExecutor(backoff, TimeUnit.NANOSECONDS).execute(() -> {
+            if (deadline.isExpired()) {
+                synchronized (this) {
+                    pending--;
+                }
+                completeExceptionally(new XMLRPCTimeoutException("Deadline exceeded"));
+            } else {
+                attempt();
+            }
+        });
+    }
+
+    private void scheduleHedge() {
+        var delay = -1L;
+        if (policy.hedgePercentile() > 0) {
+            delay = tracker.percentile(policy.hedgePercentile());
+        }
+        if (delay < 0 && policy.hedgeDelay() != null) {
+            delay = policy.hedgeDelay().toNanos();
+        }
+        if (delay < 0) {
+            return;
+        }
+
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (this) {
+                if (isDone() || hedged || deadline.isExpired() || !budget.tryWithdraw()) {
+                    return;
+                }
+                hedged = true;
+                pending++;
+            }
+            attempt();
+        });
+    }
+
+    private void cancelAttempts() {
+        List<CompletableFuture<XMLRPCResult>> copy;
+        synchronized (this) {
+            copy = List.copyOf(attempts);
+        }
+        for (var attempt : copy) {
+            attempt.cancel(true);
+        }
+    }
+
+    private static boolean retryable(Throwable error) {
+        return error instanceof ConnectException || error instanceof NoRouteToHostException;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set of paths that defines which parts of the response are decoded. Each path is applied to every result
+ * value and consists of struct member names separated by dots and array wildcards {@code [*]}, for example
+ * {@code [*].id} or {@code items[*].owner.name}.
+ * <p>Only values matching one of the paths are created, other subtrees are skipped while response is read.
+ * Structs contain only matching members, arrays contain projections of their elements.</p>
+ */
+public final class Projection {
+    private final List<String> paths;
+    private final Node root = new Node();
+
+    private Projection(List<String> paths) {
+        this.paths = paths;
+        for (var path : paths) {
+            compile(path);
+        }
+    }
+
+    /**
+     * Creates projection from paths.
+     *
+     * @param paths paths
+     * @return projection
+     * @throws IllegalArgumentException if path is malformed
+     */
+    public static Projection of(String... paths) {
+        if (paths.length == 0) {
+            throw new IllegalArgumentException("At least one path must be specified");
+        }
+        return new Projection(List.of(paths));
+    }
+
+    /**
+     * Returns paths of this projection.
+     *
+     * @return paths
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    private void compile(String path) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Empty path");
+        }
+        var node = root;
+        int i = 0;
+        while (i < path.length()) {
+            if (path.startsWith("[*]", i)) {
+                if (node.elements == null) {
+                    node.elements = new Node();
+                }
+                node = node.elements;
+                i += 3;
+                if (i < path.length() && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                    throw new IllegalArgumentException("Malformed path: " + path);
+                }
+            } else {
+                int end = i;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == i) {
+                    throw new IllegalArgumentException("Malformed path: " + path);
+                }
+                node = node.members.computeIfAbsent(path.substring(i, end), k -> new Node());
+                i = end;
+            }
+
+            if (i < path.length() && path.charAt(i) == '.') {
+                if (++i == path.length()) {
+                    throw new IllegalArgumentException("Malformed path: " + path);
+                }
+            }
+        }
+        node.all = true;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", paths);
+    }
+
+    /**
+     * Compiled projection tree.
+     */
+    static final class Node {
+        static final Node ALL = new Node();
+
+        static {
+            ALL.all = true;
+        }
+
+        private final Map<String, Node> members = new HashMap<>();
+        private Node elements;
+        private boolean all;
+
+        /**
+         * Returns true if the whole subtree must be decoded.
+         */
+        boolean all() {
+            return all;
+        }
+
+        /**
+         * Returns projection of struct member or null if member must be skipped.
+         */
+        Node member(String name) {
+            return all ? ALL : members.get(name);
+        }
+
+        /**
+         * Returns projection of array elements or null if elements must be skipped.
+         */
+        Node elements() {
+            return all ? ALL : elements;
+        }
+    }
+}
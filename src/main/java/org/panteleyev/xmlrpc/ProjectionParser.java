@@ -0,0 +1,84 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Response parser that creates only values selected by {@link Projection}. Skipped subtrees are consumed
+ * as parser events without creating any values.
+ */
+final class ProjectionParser {
+    private final XMLRPCReader reader;
+    private final Projection projection;
+
+    ProjectionParser(XMLRPCReader reader, Projection projection) {
+        this.reader = reader;
+        this.projection = projection;
+    }
+
+    List<Object> parse() throws IOException, XMLRPCException {
+        var values = new ArrayList<>();
+        while (reader.hasNext()) {
+            var value = read(projection.root());
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private Object read(Projection.Node node) throws IOException, XMLRPCException {
+        if (node == null) {
+            reader.skipValue();
+            return null;
+        }
+        if (node.all()) {
+            return reader.readValue();
+        }
+
+        switch (reader.peek()) {
+            case BEGIN_STRUCT -> {
+                var res = new HashMap<String, Object>();
+                reader.beginStruct();
+                while (reader.hasNext()) {
+                    var name = reader.nextMemberName();
+                    if (reader.hasNext() && reader.peek() != XMLRPCReader.Token.MEMBER_NAME) {
+                        var value = read(node.member(name));
+                        if (value != null) {
+                            res.put(name, value);
+                        }
+                    }
+                }
+                reader.endStruct();
+                return res;
+            }
+            case BEGIN_ARRAY -> {
+                var elements = node.elements();
+                if (elements == null) {
+                    reader.skipValue();
+                    return null;
+                }
+                var res = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    var value = read(elements);
+                    if (value != null) {
+                        res.add(value);
+                    }
+                }
+                reader.endArray();
+                return res;
+            }
+            default -> {
+                reader.skipValue();
+                return null;
+            }
+        }
+    }
+}
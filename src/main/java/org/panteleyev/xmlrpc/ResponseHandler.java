@@ -0,0 +1,25 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+
+/**
+ * Handler that decodes response of XMLRPC call directly from {@link XMLRPCReader}.
+ *
+ * @param <T> type of the result
+ */
+@FunctionalInterface
+public interface ResponseHandler<T> {
+    /**
+     * Reads response values. Reader is valid only during this call.
+     *
+     * @param reader reader of the response
+     * @return result
+     * @throws IOException     in case of network issue
+     * @throws XMLRPCException if response is a fault or cannot be parsed
+     */
+    T handle(XMLRPCReader reader) throws IOException, XMLRPCException;
+}
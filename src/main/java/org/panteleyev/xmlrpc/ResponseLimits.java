@@ -0,0 +1,119 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+/**
+ * This class defines limits of a single response. Limits are checked while response is received, the call
+ * is aborted with {@link XMLRPCLimitException} as soon as any limit is exceeded.
+ * <ul>
+ *     <li>Size - number of response bytes. Response with larger declared Content-Length is rejected before
+ *     its body is read.</li>
+ *     <li>Depth - nesting level of values, top level value has depth 1.</li>
+ *     <li>Elements - total number of values including struct members and array elements.</li>
+ * </ul>
+ * <p>Depth and element limits are checked by {@link XMLRPCReader}, results of the calls with such limits are
+ * decoded with the pull reader.</p>
+ */
+public final class ResponseLimits {
+    static final ResponseLimits NONE = builder().build();
+
+    private final long maxBytes;
+    private final int maxDepth;
+    private final int maxElements;
+
+    private ResponseLimits(Builder builder) {
+        this.maxBytes = builder.maxBytes;
+        this.maxDepth = builder.maxDepth;
+        this.maxElements = builder.maxElements;
+    }
+
+    /**
+     * Creates new builder. By default nothing is limited.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    int maxElements() {
+        return maxElements;
+    }
+
+    boolean isStructural() {
+        return maxDepth != Integer.MAX_VALUE || maxElements != Integer.MAX_VALUE;
+    }
+
+    /**
+     * This class builds {@link ResponseLimits} objects.
+     */
+    public static final class Builder {
+        private long maxBytes = Long.MAX_VALUE;
+        private int maxDepth = Integer.MAX_VALUE;
+        private int maxElements = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets maximum response size in bytes.
+         *
+         * @param maxBytes maximum size
+         * @return this builder
+         */
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Maximum size must be positive");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets maximum nesting depth of values.
+         *
+         * @param maxDepth maximum depth
+         * @return this builder
+         */
+        public Builder maxDepth(int maxDepth) {
+            if (maxDepth <= 0) {
+                throw new IllegalArgumentException("Maximum depth must be positive");
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Sets maximum number of values in the response.
+         *
+         * @param maxElements maximum number of values
+         * @return this builder
+         */
+        public Builder maxElements(int maxElements) {
+            if (maxElements <= 0) {
+                throw new IllegalArgumentException("Maximum number of elements must be positive");
+            }
+            this.maxElements = maxElements;
+            return this;
+        }
+
+        /**
+         * Builds limits definition.
+         *
+         * @return limits definition
+         */
+        public ResponseLimits build() {
+            return new ResponseLimits(this);
+        }
+    }
+}
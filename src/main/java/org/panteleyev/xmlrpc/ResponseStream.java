@@ -0,0 +1,97 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response stream that enforces size limit and reserves memory budget for received bytes.
+ */
+final class ResponseStream extends FilterInputStream {
+    private static final long RESERVE_CHUNK = 64 * 1024;
+
+    private final long maxBytes;
+    private final MemoryBudget budget;
+    private final Deadline deadline;
+    private long count;
+    private long reserved;
+
+    /**
+     * Creates stream. Declared content length is checked and reserved before the first byte is read.
+     *
+     * @param contentLength declared content length or -1 if unknown
+     */
+    ResponseStream(InputStream in, long contentLength, long maxBytes, MemoryBudget budget, Deadline deadline)
+            throws IOException {
+        super(in);
+        this.maxBytes = maxBytes;
+        this.budget = budget;
+        this.deadline = deadline;
+
+        if (contentLength > maxBytes) {
+            throw new XMLRPCLimitException("Response size " + contentLength + " exceeds limit of "
+                    + maxBytes + " bytes");
+        }
+        if (budget != null && contentLength >= 0) {
+            budget.acquire(contentLength, deadline);
+            reserved = contentLength;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = in.read();
+        if (b != -1) {
+            received(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        var n = in.read(b, off, len);
+        if (n > 0) {
+            received(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = in.skip(n);
+        if (skipped > 0) {
+            received(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (budget != null) {
+            budget.release(reserved);
+            reserved = 0;
+        }
+        super.close();
+    }
+
+    private void received(long n) throws IOException {
+        count += n;
+        if (count > maxBytes) {
+            throw new XMLRPCLimitException("Response exceeds limit of " + maxBytes + " bytes");
+        }
+        if (budget != null && count > reserved) {
+            var extra = Math.max(count - reserved, Math.min(RESERVE_CHUNK, budget.getCapacity() - reserved));
+            budget.acquire(extra, deadline);
+            reserved += extra;
+        }
+    }
+}
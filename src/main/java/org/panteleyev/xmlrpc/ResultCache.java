@@ -0,0 +1,300 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.function.Supplier;
+
+/**
+ * Persistent cache of call results. Results are stored on local disk in compact binary format keyed by
+ * method name and encoded parameters, and survive process restarts. Cached results are read through
+ * memory mapped files, structs and arrays are decoded lazily on access and cannot be modified.
+ * <p>Cache is bounded by total size of stored results, least recently used results are evicted first.
+ * Access order is kept in memory and written to modification time of stored files at most once a minute,
+ * so it survives restarts approximately.
+ * Stored result is discarded when it is older than time-to-live or when version token supplied by the
+ * application changes.</p>
+ * <pre>
+ * var cache = ResultCache.builder(Path.of("cache"))
+ *     .maxSize(1L &lt;&lt; 30)
+ *     .ttl(Duration.ofHours(6))
+ *     .build();
+ * var service = XMLRPCService.builder(url)
+ *     .resultCache(cache, "catalog.list")
+ *     .build();
+ * </pre>
+ */
+public final class ResultCache {
+    private static final String SUFFIX = ".xrc";
+    // access time is written to the file no more often than this, it only orders results after restart
+    private static final long PERSIST_INTERVAL = 60_000;
+
+    private final Path directory;
+    private final long maxSize;
+    private final Duration ttl;
+    private final Supplier<String> version;
+
+    private final Map<Path, Entry> entries = new HashMap<>();
+    private long size;
+    private long clock;
+
+    private static final class Entry {
+        private final long size;
+        private long lastAccess;
+        private long persistedAccess;
+
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.persistedAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Builder of {@link ResultCache}.
+     */
+    public static final class Builder {
+        private final Path directory;
+        private long maxSize = 256L * 1024 * 1024;
+        private Duration ttl;
+        private Supplier<String> version = () -> null;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Sets maximum total size of stored results in bytes. Default is 256 MB.
+         *
+         * @param maxSize maximum size in bytes
+         * @return this builder
+         */
+        public Builder maxSize(long maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("Maximum size must be positive");
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets time-to-live of stored results. By default results do not expire.
+         *
+         * @param ttl time-to-live
+         * @return this builder
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Sets supplier of version token. Stored result is used only if token at the moment of the call
+         * equals token at the moment result was stored.
+         *
+         * @param version version token supplier
+         * @return this builder
+         */
+        public Builder version(Supplier<String> version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Creates cache. Directory is created if it does not exist, existing results are reused.
+         *
+         * @return result cache
+         * @throws UncheckedIOException if directory cannot be created or read
+         */
+        public ResultCache build() {
+            return new ResultCache(this);
+        }
+    }
+
+    private ResultCache(Builder builder) {
+        this.directory = builder.directory;
+        this.maxSize = builder.maxSize;
+        this.ttl = builder.ttl;
+        this.version = builder.version;
+
+        try {
+            Files.createDirectories(directory);
+            try (var files = Files.list(directory)) {
+                for (var file : (Iterable<Path>) files::iterator) {
+                    var name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        // left by interrupted store
+                        Files.deleteIfExists(file);
+                    } else if (name.endsWith(SUFFIX)) {
+                        var entry = new Entry(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                        entries.put(file, entry);
+                        clock = Math.max(clock, entry.lastAccess);
+                        size += entry.size;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        evict(null);
+    }
+
+    /**
+     * Creates builder of the cache stored in the specified directory.
+     *
+     * @param directory cache directory
+     * @return builder
+     */
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Returns total size of stored results in bytes.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Removes all stored results.
+     *
+     * @throws IOException if results cannot be deleted
+     */
+    public synchronized void clear() throws IOException {
+        for (var file : entries.keySet()) {
+            Files.deleteIfExists(file);
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    static String key(String method, XMLRPCParameters parameters) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(new XMLRPCMethod(method).getMethodBytes(parameters));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns stored result or null if there is no valid result for the key.
+     */
+    XMLRPCResult get(String key, TimeZone tz, XMLRPCCodecs codecs) {
+        var file = directory.resolve(key + SUFFIX);
+        synchronized (this) {
+            var entry = entries.get(file);
+            if (entry == null) {
+                return null;
+            }
+
+            try {
+                var snapshot = Snapshot.map(file);
+                var now = tick();
+                if ((ttl != null && snapshot.created() + ttl.toMillis() < now)
+                        || !Objects.equals(snapshot.version(), version.get())) {
+                    remove(file);
+                    return null;
+                }
+                entry.lastAccess = now;
+                if (now - entry.persistedAccess >= PERSIST_INTERVAL) {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+                    entry.persistedAccess = now;
+                }
+                return new XMLRPCResult(tz, codecs, snapshot.values());
+            } catch (IOException | RuntimeException ex) {
+                // corrupted or concurrently removed snapshot is a cache miss
+                remove(file);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stores result. Results that cannot be stored are ignored, cache never fails the call.
+     */
+    void put(String key, XMLRPCResult result) {
+        var file = directory.resolve(key + SUFFIX);
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, key, ".tmp");
+            Snapshot.write(tmp, System.currentTimeMillis(), version.get(), result.getValues());
+            var length = Files.size(tmp);
+            if (length > maxSize) {
+                Files.delete(tmp);
+                return;
+            }
+            synchronized (this) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                var old = entries.put(file, new Entry(length, tick()));
+                size += length - (old == null ? 0 : old.size);
+                evict(file);
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns current time in milliseconds that is strictly increasing between accesses, so that
+     * least recently used result is defined even for accesses within the same millisecond.
+     */
+    private long tick() {
+        clock = Math.max(System.currentTimeMillis(), clock + 1);
+        return clock;
+    }
+
+    private synchronized void evict(Path keep) {
+        while (size > maxSize) {
+            Path oldest = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (var e : entries.entrySet()) {
+                if (!e.getKey().equals(keep) && e.getValue().lastAccess < oldestAccess) {
+                    oldest = e.getKey();
+                    oldestAccess = e.getValue().lastAccess;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            remove(oldest);
+        }
+    }
+
+    private void remove(Path file) {
+        var entry = entries.remove(file);
+        if (entry != null) {
+            size -= entry.size;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            // mapped file may be locked by the platform, it is overwritten by the next store
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that limits retries and hedged requests to a fraction of original calls.
+ */
+final class RetryBudget {
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+    private final long max;
+    private final AtomicLong balance;
+
+    RetryBudget(double ratio, int maxTokens) {
+        this.deposit = (long) (ratio * TOKEN);
+        this.max = maxTokens * TOKEN;
+        this.balance = new AtomicLong(max);
+    }
+
+    void deposit() {
+        balance.updateAndGet(b -> Math.min(max, b + deposit));
+    }
+
+    boolean tryWithdraw() {
+        while (true) {
+            var current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+}
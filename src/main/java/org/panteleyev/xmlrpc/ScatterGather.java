@@ -0,0 +1,202 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class calls the same method on many services concurrently and gathers results as they complete.
+ * <p>All calls share the same deadline. Failure of a single target is reported in its {@link Response} and
+ * does not affect other targets. Calls that are still running are cancelled when quorum is reached or when this
+ * object is closed.</p>
+ * <pre>
+ * try (var calls = ScatterGather.start(sites, Deadline.after(Duration.ofSeconds(5)), "status")) {
+ *     for (var response = calls.next(); response != null; response = calls.next()) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <K> type of target keys
+ */
+public final class ScatterGather<K> implements AutoCloseable {
+    /**
+     * Result of a call to a single target.
+     *
+     * @param key    target key
+     * @param result result of the call or {@code null} if call failed
+     * @param error  error of the call or {@code null} if call succeeded
+     * @param <K>    type of target keys
+     */
+    public record Response<K>(K key, XMLRPCResult result, Throwable error) {
+        /**
+         * Checks if call succeeded.
+         *
+         * @return {@code true} if call succeeded
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    private final Deadline deadline;
+    private final Map<K, CompletableFuture<XMLRPCResult>> calls = new LinkedHashMap<>();
+    private final LinkedBlockingQueue<Response<K>> completed = new LinkedBlockingQueue<>();
+    private final List<Response<K>> received = new ArrayList<>();
+
+    private ScatterGather(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Starts calls of the method on all target services.
+     *
+     * @param targets    services by their keys
+     * @param deadline   deadline shared by all calls
+     * @param method     method name
+     * @param parameters method parameters
+     * @param <K>        type of target keys
+     * @return started calls
+     */
+    public static <K> ScatterGather<K> start(Map<K, XMLRPCService> targets, Deadline deadline, String method,
+                                             Object... parameters) {
+        var result = new ScatterGather<K>(deadline);
+        targets.forEach((key, service) -> {
+            var future = service.callAsync(deadline, method, parameters);
+            result.calls.put(key, future);
+            future.whenComplete((value, error) -> result.completed.add(new Response<>(key, value, unwrap(error))));
+        });
+        return result;
+    }
+
+    /**
+     * Starts calls of the method on all target services using services as keys.
+     *
+     * @param targets    services
+     * @param deadline   deadline shared by all calls
+     * @param method     method name
+     * @param parameters method parameters
+     * @return started calls
+     */
+    public static ScatterGather<XMLRPCService> start(Collection<XMLRPCService> targets, Deadline deadline,
+                                                     String method, Object... parameters) {
+        var map = new LinkedHashMap<XMLRPCService, XMLRPCService>();
+        targets.forEach(t -> map.put(t, t));
+        return start(map, deadline, method, parameters);
+    }
+
+    /**
+     * Returns the next completed response. Waits until any call completes or deadline expires.
+     *
+     * @return next response or {@code null} if all responses were received or deadline expired
+     * @throws InterruptedException if current thread is interrupted
+     */
+    public Response<K> next() throws InterruptedException {
+        if (received.size() == calls.size()) {
+            return null;
+        }
+        Response<K> response;
+        if (deadline.isInfinite()) {
+            response = completed.take();
+        } else {
+            response = completed.poll(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (response != null) {
+            received.add(response);
+        }
+        return response;
+    }
+
+    /**
+     * Waits until the specified number of calls succeed and cancels the remaining calls.
+     *
+     * @param quorum number of successful calls
+     * @return all responses received so far, including failed ones
+     * @throws XMLRPCTimeoutException if deadline expires before quorum is reached
+     * @throws XMLRPCException        if quorum cannot be reached because too many calls failed
+     * @throws InterruptedException   if current thread is interrupted
+     */
+    public List<Response<K>> awaitQuorum(int quorum)
+            throws XMLRPCTimeoutException, XMLRPCException, InterruptedException {
+        if (quorum > calls.size()) {
+            throw new IllegalArgumentException("Quorum exceeds number of targets");
+        }
+        try {
+            var successes = (int) received.stream().filter(Response::isSuccess).count();
+            while (successes < quorum) {
+                var failures = received.size() - successes;
+                if (calls.size() - failures < quorum) {
+                    throw new XMLRPCException("Quorum of " + quorum + " cannot be reached, "
+                            + failures + " of " + calls.size() + " calls failed");
+                }
+                var response = next();
+                if (response == null) {
+                    throw new XMLRPCTimeoutException("Deadline exceeded with " + successes + " of "
+                            + quorum + " responses");
+                }
+                if (response.isSuccess()) {
+                    successes++;
+                }
+            }
+            return List.copyOf(received);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Waits for all calls until deadline. Calls that did not complete in time are cancelled and reported as
+     * failed with {@link XMLRPCTimeoutException}.
+     *
+     * @return responses of all targets in order of completion
+     * @throws InterruptedException if current thread is interrupted
+     */
+    public List<Response<K>> awaitAll() throws InterruptedException {
+        while (next() != null) {
+            // collect
+        }
+        if (received.size() < calls.size()) {
+            var done = new HashSet<K>();
+            received.forEach(r -> done.add(r.key()));
+            calls.forEach((key, future) -> {
+                if (!done.contains(key)) {
+                    future.cancel(true);
+                    received.add(new Response<>(key, null, new XMLRPCTimeoutException("Deadline exceeded")));
+                }
+            });
+        }
+        return List.copyOf(received);
+    }
+
+    /**
+     * Returns responses received so far.
+     *
+     * @return responses in order of completion
+     */
+    public List<Response<K>> getReceived() {
+        return List.copyOf(received);
+    }
+
+    /**
+     * Cancels calls that are still running.
+     */
+    @Override
+    public void close() {
+        calls.values().forEach(f -> f.cancel(true));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Connection of {@link XMLRPCServer}. HTTP requests are parsed incrementally as bytes arrive, request body
+ * is collected while it is received, its buffer grows with received bytes rather than declared length.
+ * Connection handles one request at a time, pipelined requests wait in the input buffer.
+ */
+final class ServerConnection {
+    private static final int MAX_HEADER = 16 * 1024;
+    private static final int MAX_LINE = 1024;
+    private static final int INITIAL_BODY = 8192;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    // states of chunked body
+    private static final int CHUNK_SIZE = 0;
+    private static final int CHUNK_DATA = 1;
+    private static final int CHUNK_END = 2;
+    private static final int TRAILER = 3;
+
+    /**
+     * Complete HTTP request.
+     */
+    record Request(String method, boolean keepAlive, byte[] body, int length) {
+    }
+
+    /**
+     * Malformed or rejected request that is answered with the status and closed.
+     */
+    static final class HttpException extends IOException {
+        private final int status;
+
+        HttpException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        int status() {
+            return status;
+        }
+    }
+
+    private final SocketChannel channel;
+    private final long maxBody;
+    private SelectionKey key;
+
+    private byte[] buf = new byte[8192];
+    private int start;
+    private int end;
+
+    // state of the current request
+    private String method;
+    private boolean keepAlive;
+    private boolean chunked;
+    private int chunkState;
+    private long remaining;
+    private byte[] body;
+    private int bodyLength;
+
+    private ByteBuffer output;
+    private boolean busy;
+    private boolean closeAfterWrite;
+    private long lastActive = System.nanoTime();
+
+    ServerConnection(SocketChannel channel, long maxBody) {
+        this.channel = channel;
+        this.maxBody = maxBody;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    SelectionKey key() {
+        return key;
+    }
+
+    void key(SelectionKey key) {
+        this.key = key;
+    }
+
+    boolean isBusy() {
+        return busy;
+    }
+
+    void busy(boolean busy) {
+        this.busy = busy;
+    }
+
+    boolean closeAfterWrite() {
+        return closeAfterWrite;
+    }
+
+    /**
+     * Returns true if connection neither sent request bytes nor accepted response bytes for the timeout.
+     * Connection waiting for its handler is not idle.
+     */
+    boolean isIdle(long now, long timeoutNanos) {
+        var handling = busy && output == null;
+        return !handling && now - lastActive > timeoutNanos;
+    }
+
+    /**
+     * Reads available bytes, returns false if connection was closed by the client.
+     */
+    boolean read() throws IOException {
+        if (start == end) {
+            start = 0;
+            end = 0;
+        } else if (end == buf.length) {
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            } else {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+        }
+        var n = channel.read(ByteBuffer.wrap(buf, end, buf.length - end));
+        if (n < 0) {
+            return false;
+        }
+        if (n > 0) {
+            lastActive = System.nanoTime();
+        }
+        end += n;
+        return true;
+    }
+
+    /**
+     * Parses buffered bytes, returns complete request or null if more bytes are needed.
+     */
+    Request parse() throws IOException {
+        if (method == null) {
+            var headerEnd = indexOf(start, "\r\n\r\n");
+            if (headerEnd < 0) {
+                if (end - start > MAX_HEADER) {
+                    throw new HttpException(431, "Request header is too large");
+                }
+                return null;
+            }
+            parseHeader(new String(buf, start, headerEnd - start, StandardCharsets.ISO_8859_1));
+            start = headerEnd + 4;
+        }
+
+        if (chunked ? !parseChunks() : !parseFixed()) {
+            return null;
+        }
+        var request = new Request(method, keepAlive, body, bodyLength);
+        method = null;
+        body = null;
+        bodyLength = 0;
+        return request;
+    }
+
+    void respond(byte[] response, boolean close) {
+        output = ByteBuffer.wrap(response);
+        closeAfterWrite = close;
+        lastActive = System.nanoTime();
+    }
+
+    /**
+     * Writes response, returns true if the whole response is written.
+     */
+    boolean flush() throws IOException {
+        if (channel.write(output) > 0) {
+            lastActive = System.nanoTime();
+        }
+        if (output.hasRemaining()) {
+            return false;
+        }
+        output = null;
+        return true;
+    }
+
+    void close() {
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // nothing to do
+        }
+    }
+
+    private void parseHeader(String header) throws IOException {
+        var lines = header.split("\r\n");
+        var requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new HttpException(400, "Malformed request line");
+        }
+        var http10 = requestLine[2].equals("HTTP/1.0");
+
+        long contentLength = -1;
+        String connection = null;
+        String transferEncoding = null;
+        var expectContinue = false;
+        for (int i = 1; i < lines.length; i++) {
+            var colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new HttpException(400, "Malformed header");
+            }
+            var name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            var value = lines[i].substring(colon + 1).trim();
+            switch (name) {
+                case "content-length" -> {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        throw new HttpException(400, "Malformed Content-Length");
+                    }
+                    if (contentLength < 0) {
+                        throw new HttpException(400, "Malformed Content-Length");
+                    }
+                }
+                case "connection" -> connection = value.toLowerCase(Locale.ROOT);
+                case "transfer-encoding" -> transferEncoding = value.toLowerCase(Locale.ROOT);
+                case "expect" -> expectContinue = value.equalsIgnoreCase("100-continue");
+                default -> {
+                }
+            }
+        }
+
+        method = requestLine[0];
+        keepAlive = http10 ? "keep-alive".equals(connection) : !"close".equals(connection);
+        chunked = transferEncoding != null && transferEncoding.endsWith("chunked");
+        if (chunked) {
+            chunkState = CHUNK_SIZE;
+            body = new byte[INITIAL_BODY];
+        } else if (contentLength >= 0) {
+            if (contentLength > maxBody) {
+                throw new HttpException(413, "Request body exceeds limit of " + maxBody + " bytes");
+            }
+            remaining = contentLength;
+            body = new byte[(int) Math.min(contentLength, INITIAL_BODY)];
+        } else if ("POST".equals(method)) {
+            throw new HttpException(411, "Content-Length is required");
+        } else {
+            remaining = 0;
+            body = new byte[0];
+        }
+
+        if (expectContinue) {
+            channel.write(ByteBuffer.wrap(CONTINUE));
+        }
+    }
+
+    private boolean parseFixed() {
+        var n = (int) Math.min(remaining, end - start);
+        if (bodyLength + n > body.length) {
+            // total length of chunked body is not known, buffer is doubled up to the limit
+            var limit = chunked ? maxBody : bodyLength + remaining;
+            body = Arrays.copyOf(body, (int) Math.min(limit, Math.max(bodyLength + n, body.length * 2L)));
+        }
+        System.arraycopy(buf, start, body, bodyLength, n);
+        start += n;
+        bodyLength += n;
+        remaining -= n;
+        return remaining == 0;
+    }
+
+    private boolean parseChunks() throws IOException {
+        while (true) {
+            switch (chunkState) {
+                case CHUNK_SIZE -> {
+                    var lineEnd = lineEnd();
+                    if (lineEnd < 0) {
+                        return false;
+                    }
+                    var line = new String(buf, start, lineEnd - start, StandardCharsets.ISO_8859_1);
+                    var semicolon = line.indexOf(';');
+                    try {
+                        remaining = Long.parseLong((semicolon < 0 ? line : line.substring(0, semicolon)).trim(), 16);
+                    } catch (NumberFormatException ex) {
+                        throw new HttpException(400, "Malformed chunk size");
+                    }
+                    if (remaining < 0) {
+                        throw new HttpException(400, "Malformed chunk size");
+                    }
+                    start = lineEnd + 2;
+                    if (remaining == 0) {
+                        chunkState = TRAILER;
+                    } else {
+                        if (remaining > maxBody - bodyLength) {
+                            throw new HttpException(413, "Request body exceeds limit of " + maxBody + " bytes");
+                        }
+                        chunkState = CHUNK_DATA;
+                    }
+                }
+                case CHUNK_DATA -> {
+                    if (!parseFixed()) {
+                        return false;
+                    }
+                    chunkState = CHUNK_END;
+                }
+                case CHUNK_END -> {
+                    if (end - start < 2) {
+                        return false;
+                    }
+                    if (buf[start] != '\r' || buf[start + 1] != '\n') {
+                        throw new HttpException(400, "Malformed chunk");
+                    }
+                    start += 2;
+                    chunkState = CHUNK_SIZE;
+                }
+                default -> {
+                    // trailer fields are ignored, empty line ends the body
+                    var lineEnd = lineEnd();
+                    if (lineEnd < 0) {
+                        return false;
+                    }
+                    var empty = lineEnd == start;
+                    start = lineEnd + 2;
+                    if (empty) {
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds end of the chunk size or trailer line, returns -1 if more bytes are needed.
+     */
+    private int lineEnd() throws HttpException {
+        var lineEnd = indexOf(start, "\r\n");
+        if ((lineEnd < 0 ? end : lineEnd) - start > MAX_LINE) {
+            throw new HttpException(400, "Chunk line is too long");
+        }
+        return lineEnd;
+    }
+
+    private int indexOf(int from, String pattern) {
+        var last = end - pattern.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length(); j++) {
+                if (buf[i + j] != pattern.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary snapshot of result values. Snapshot is read through memory mapped file, structs and arrays are
+ * returned as read-only views that decode elements on access.
+ * <p>Layout: magic, creation time, version token, values as array. Each value starts with type byte,
+ * structs and arrays are prefixed with their size in bytes, so skipping them does not require reading
+ * their content.</p>
+ */
+final class Snapshot {
+    private static final int MAGIC = 0x58524331;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_INT = 2;
+    private static final byte T_LONG = 3;
+    private static final byte T_DOUBLE = 4;
+    private static final byte T_FALSE = 5;
+    private static final byte T_TRUE = 6;
+    private static final byte T_BYTES = 7;
+    private static final byte T_DATE = 8;
+    private static final byte T_STRUCT = 9;
+    private static final byte T_ARRAY = 10;
+
+    private final ByteBuffer buffer;
+    private final long created;
+    private final String version;
+    private final int valuesOffset;
+
+    private Snapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < 16 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        created = buffer.getLong(4);
+        var versionLength = buffer.getInt(12);
+        if (versionLength < 0) {
+            version = null;
+            valuesOffset = 16;
+        } else {
+            version = string(16, versionLength);
+            valuesOffset = 16 + versionLength;
+        }
+        if (buffer.get(valuesOffset) != T_ARRAY) {
+            throw new IOException("Corrupted snapshot");
+        }
+    }
+
+    static Snapshot map(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large");
+            }
+            return new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    long created() {
+        return created;
+    }
+
+    String version() {
+        return version;
+    }
+
+    List<?> values() {
+        return (List<?>) decode(valuesOffset);
+    }
+
+    /**
+     * Writes values to the file.
+     *
+     * @throws IllegalArgumentException if values contain type that cannot be stored
+     */
+    static void write(Path file, long created, String version, List<?> values) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var writer = new Writer(channel);
+            writer.putInt(MAGIC);
+            writer.putLong(created);
+            if (version == null) {
+                writer.putInt(-1);
+            } else {
+                var bytes = version.getBytes(StandardCharsets.UTF_8);
+                writer.putInt(bytes.length);
+                writer.put(bytes);
+            }
+            writer.value(values);
+            writer.flush();
+        }
+    }
+
+    private Object decode(int offset) {
+        var type = buffer.get(offset);
+        return switch (type) {
+            case T_NULL -> null;
+            case T_STRING -> string(offset + 5, buffer.getInt(offset + 1));
+            case T_INT -> buffer.getInt(offset + 1);
+            case T_LONG -> buffer.getLong(offset + 1);
+            case T_DOUBLE -> buffer.getDouble(offset + 1);
+            case T_FALSE -> Boolean.FALSE;
+            case T_TRUE -> Boolean.TRUE;
+            case T_BYTES -> {
+                var bytes = new byte[buffer.getInt(offset + 1)];
+                buffer.get(offset + 5, bytes);
+                yield bytes;
+            }
+            case T_DATE -> new Date(buffer.getLong(offset + 1));
+            case T_STRUCT -> new Struct(offset);
+            case T_ARRAY -> new Array(offset);
+            default -> throw new IllegalStateException("Corrupted snapshot");
+        };
+    }
+
+    private int skip(int offset) {
+        var type = buffer.get(offset);
+        return switch (type) {
+            case T_NULL, T_FALSE, T_TRUE -> offset + 1;
+            case T_INT -> offset + 5;
+            case T_LONG, T_DOUBLE, T_DATE -> offset + 9;
+            case T_STRING, T_BYTES -> offset + 5 + buffer.getInt(offset + 1);
+            case T_STRUCT, T_ARRAY -> offset + 9 + buffer.getInt(offset + 1);
+            default -> throw new IllegalStateException("Corrupted snapshot");
+        };
+    }
+
+    private String string(int offset, int length) {
+        var bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read-only view of the stored array.
+     */
+    private final class Array extends AbstractList<Object> {
+        private final int offset;
+        private volatile int[] offsets;
+
+        Array(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public Object get(int index) {
+            return decode(offsets()[index]);
+        }
+
+        @Override
+        public int size() {
+            return buffer.getInt(offset + 5);
+        }
+
+        private int[] offsets() {
+            var result = offsets;
+            if (result == null) {
+                result = new int[size()];
+                var position = offset + 9;
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = position;
+                    position = skip(position);
+                }
+                offsets = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Read-only view of the stored struct. Member names are read on first access.
+     */
+    private final class Struct extends AbstractMap<String, Object> {
+        private final int offset;
+        private volatile Map<String, Integer> members;
+
+        Struct(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public Object get(Object key) {
+            var position = members().get(key);
+            return position == null ? null : decode(position);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return members().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return buffer.getInt(offset + 5);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    var iterator = members().entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            var entry = iterator.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), decode(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return Struct.this.size();
+                }
+            };
+        }
+
+        private Map<String, Integer> members() {
+            var result = members;
+            if (result == null) {
+                var count = size();
+                result = new LinkedHashMap<>(count * 2);
+                var position = offset + 9;
+                for (int i = 0; i < count; i++) {
+                    var length = buffer.getInt(position);
+                    var name = string(position + 4, length);
+                    position += 4 + length;
+                    result.put(name, position);
+                    position = skip(position);
+                }
+                members = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Buffered writer that can patch container sizes after their content is written.
+     */
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private long flushed;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void value(Object value) throws IOException {
+            if (value == null) {
+                putByte(T_NULL);
+            } else if (value instanceof String s) {
+                putByte(T_STRING);
+                var bytes = s.getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                put(bytes);
+            } else if (value instanceof Integer i) {
+                putByte(T_INT);
+                putInt(i);
+            } else if (value instanceof Long l) {
+                putByte(T_LONG);
+                putLong(l);
+            } else if (value instanceof Double d) {
+                putByte(T_DOUBLE);
+                ensure(8);
+                buffer.putDouble(d);
+            } else if (value instanceof Boolean b) {
+                putByte(b ? T_TRUE : T_FALSE);
+            } else if (value instanceof byte[] bytes) {
+                putByte(T_BYTES);
+                putInt(bytes.length);
+                put(bytes);
+            } else if (value instanceof Date date) {
+                putByte(T_DATE);
+                putLong(date.getTime());
+            } else if (value instanceof Map<?, ?> map) {
+                var start = begin(T_STRUCT, map.size());
+                for (var entry : map.entrySet()) {
+                    var bytes = entry.getKey().toString().getBytes(StandardCharsets.UTF_8);
+                    putInt(bytes.length);
+                    put(bytes);
+                    value(entry.getValue());
+                }
+                end(start);
+            } else if (value instanceof List<?> list) {
+                var start = begin(T_ARRAY, list.size());
+                for (var element : list) {
+                    value(element);
+                }
+                end(start);
+            } else {
+                throw new IllegalArgumentException("Cannot store " + value.getClass().getName());
+            }
+        }
+
+        private long begin(byte type, int count) throws IOException {
+            putByte(type);
+            var start = position();
+            putInt(0);
+            putInt(count);
+            return start;
+        }
+
+        private void end(long start) throws IOException {
+            var size = position() - start - 8;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large");
+            }
+            if (start >= flushed) {
+                buffer.putInt((int) (start - flushed), (int) size);
+            } else {
+                channel.write(ByteBuffer.allocate(4).putInt(0, (int) size), start);
+            }
+        }
+
+        private long position() {
+            return flushed + buffer.position();
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                var length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer, flushed);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural hash of XMLRPC value that also keeps hashes of array elements and struct members. Hash depends
+ * only on types and contents of values, it does not depend on order of struct members and is the same in
+ * different processes. Values of custom types created by {@link XMLRPCCodecs} are hashed by their
+ * {@code hashCode()}.
+ * <p>Equal hashes mean equal values with probability of a 64-bit hash collision. Hashes are used to find
+ * changed parts of successive results without comparing whole values.</p>
+ */
+public final class StructuralHash {
+    private static final long NULL = 0x6e756c6cL;
+    private static final long STRING = 0x9e3779b97f4a7c15L;
+    private static final long INT = 0xc2b2ae3d27d4eb4fL;
+    private static final long I8 = 0x165667b19e3779f9L;
+    private static final long DOUBLE = 0xd6e8feb86659fd93L;
+    private static final long BOOLEAN = 0xff51afd7ed558ccdL;
+    private static final long BASE64 = 0xc4ceb9fe1a85ec53L;
+    private static final long DATE = 0x27d4eb2f165667c5L;
+    private static final long OTHER = 0x94d049bb133111ebL;
+    private static final long ARRAY = 0xbf58476d1ce4e5b9L;
+    private static final long STRUCT = 0x8cb92ba72f3d8dd7L;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final String[] NO_NAMES = {};
+
+    private final long hash;
+    // null for scalars, member names in ascending order for structs, NO_NAMES for arrays
+    private final String[] names;
+    // hashes of elements or members
+    private final long[] hashes;
+    // hashes of nested arrays and structs, null for scalars or if there are no nested containers
+    private final StructuralHash[] nested;
+
+    private StructuralHash(long hash, String[] names, long[] hashes, StructuralHash[] nested) {
+        this.hash = hash;
+        this.names = names;
+        this.hashes = hashes;
+        this.nested = nested;
+    }
+
+    /**
+     * Computes structural hash of value. Lists are hashed as arrays, maps as structs.
+     *
+     * @param value value
+     * @return structural hash
+     */
+    public static StructuralHash of(Object value) {
+        if (value instanceof List<?> list) {
+            return ofArray(list);
+        } else if (value instanceof Map<?, ?> map) {
+            return ofStruct(map);
+        } else {
+            return new StructuralHash(scalar(value), null, null, null);
+        }
+    }
+
+    /**
+     * Returns hash of the whole value.
+     *
+     * @return hash
+     */
+    public long getValue() {
+        return hash;
+    }
+
+    /**
+     * Returns hash of array element.
+     *
+     * @param index index of the element
+     * @return hash of the element
+     * @throws IllegalStateException     if value is not array
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    public StructuralHash getElement(int index) {
+        if (!isArray()) {
+            throw new IllegalStateException("Value is not array");
+        }
+        return child(index);
+    }
+
+    /**
+     * Returns hash of struct member.
+     *
+     * @param name name of the member
+     * @return hash of the member or {@code null} if there is no such member
+     * @throws IllegalStateException if value is not struct
+     */
+    public StructuralHash getMember(String name) {
+        if (!isStruct()) {
+            throw new IllegalStateException("Value is not struct");
+        }
+        var index = Arrays.binarySearch(names, name);
+        return index < 0 ? null : child(index);
+    }
+
+    /**
+     * Returns paths of parts that differ between two values. Paths consist of struct member names separated
+     * by dots and array indices in brackets, for example {@code [3].owner.name}. Elements and members that
+     * were added or removed are reported by their paths. Empty path means that the whole value differs.
+     * Nothing is compared if hashes of the whole values are equal.
+     *
+     * @param previous hash of the previous value
+     * @param current  hash of the current value
+     * @return paths of changed parts, empty list if values are equal
+     */
+    public static List<String> diff(StructuralHash previous, StructuralHash current) {
+        var changes = new ArrayList<String>();
+        diff("", previous, current, changes);
+        return changes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StructuralHash other && hash == other.hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x", hash);
+    }
+
+    private boolean isArray() {
+        return names == NO_NAMES;
+    }
+
+    private boolean isStruct() {
+        return names != null && names != NO_NAMES;
+    }
+
+    private StructuralHash child(int index) {
+        var h = hashes[index];
+        if (nested != null && nested[index] != null) {
+            return nested[index];
+        }
+        return new StructuralHash(h, null, null, null);
+    }
+
+    private static void diff(String path, StructuralHash previous, StructuralHash current, List<String> changes) {
+        if (previous.hash == current.hash) {
+            return;
+        }
+        if (previous.isArray() && current.isArray()) {
+            var common = Math.min(previous.hashes.length, current.hashes.length);
+            for (int i = 0; i < common; i++) {
+                if (previous.hashes[i] != current.hashes[i]) {
+                    diffChild(path + "[" + i + "]", previous, i, current, i, changes);
+                }
+            }
+            var longer = Math.max(previous.hashes.length, current.hashes.length);
+            for (int i = common; i < longer; i++) {
+                changes.add(path + "[" + i + "]");
+            }
+        } else if (previous.isStruct() && current.isStruct()) {
+            // names are sorted, members are matched by merge
+            int i = 0;
+            int j = 0;
+            while (i < previous.names.length || j < current.names.length) {
+                var cmp = i == previous.names.length ? 1 :
+                        j == current.names.length ? -1 : previous.names[i].compareTo(current.names[j]);
+                if (cmp < 0) {
+                    changes.add(member(path, previous.names[i++]));
+                } else if (cmp > 0) {
+                    changes.add(member(path, current.names[j++]));
+                } else {
+                    if (previous.hashes[i] != current.hashes[j]) {
+                        diffChild(member(path, current.names[j]), previous, i, current, j, changes);
+                    }
+                    i++;
+                    j++;
+                }
+            }
+        } else {
+            changes.add(path);
+        }
+    }
+
+    private static void diffChild(String path, StructuralHash previous, int i, StructuralHash current, int j,
+                                  List<String> changes) {
+        var p = previous.nested == null ? null : previous.nested[i];
+        var c = current.nested == null ? null : current.nested[j];
+        if (p != null && c != null) {
+            diff(path, p, c, changes);
+        } else {
+            changes.add(path);
+        }
+    }
+
+    private static String member(String path, String name) {
+        return path.isEmpty() ? name : path + "." + name;
+    }
+
+    private static StructuralHash ofArray(List<?> list) {
+        var hashes = new long[list.size()];
+        StructuralHash[] nested = null;
+        var h = ARRAY;
+        int i = 0;
+        for (var element : list) {
+            var child = container(element);
+            if (child != null) {
+                if (nested == null) {
+                    nested = new StructuralHash[hashes.length];
+                }
+                nested[i] = child;
+                hashes[i] = child.hash;
+            } else {
+                hashes[i] = scalar(element);
+            }
+            h = mix(h ^ hashes[i]);
+            i++;
+        }
+        return new StructuralHash(mix(h + hashes.length), NO_NAMES, hashes, nested);
+    }
+
+    private static StructuralHash ofStruct(Map<?, ?> map) {
+        var names = new String[map.size()];
+        int n = 0;
+        for (var key : map.keySet()) {
+            names[n++] = String.valueOf(key);
+        }
+        Arrays.sort(names);
+
+        var hashes = new long[names.length];
+        StructuralHash[] nested = null;
+        // sum of member hashes does not depend on order of members
+        var sum = 0L;
+        for (int i = 0; i < names.length; i++) {
+            var value = map.get(names[i]);
+            var child = container(value);
+            if (child != null) {
+                if (nested == null) {
+                    nested = new StructuralHash[names.length];
+                }
+                nested[i] = child;
+                hashes[i] = child.hash;
+            } else {
+                hashes[i] = scalar(value);
+            }
+            sum += mix(chars(FNV_OFFSET, names[i]) ^ mix(hashes[i]));
+        }
+        return new StructuralHash(mix((STRUCT ^ sum) + names.length), names, hashes, nested);
+    }
+
+    private static StructuralHash container(Object value) {
+        if (value instanceof List<?> list) {
+            return ofArray(list);
+        } else if (value instanceof Map<?, ?> map) {
+            return ofStruct(map);
+        } else {
+            return null;
+        }
+    }
+
+    private static long scalar(Object value) {
+        if (value == null) {
+            return NULL;
+        } else if (value instanceof String s) {
+            return mix(STRING ^ chars(FNV_OFFSET, s));
+        } else if (value instanceof Integer i) {
+            return mix(INT ^ i);
+        } else if (value instanceof Long l) {
+            return mix(I8 ^ l);
+        } else if (value instanceof Double d) {
+            return mix(DOUBLE ^ Double.doubleToLongBits(d));
+        } else if (value instanceof Boolean b) {
+            return mix(BOOLEAN ^ (b ? 1 : 0));
+        } else if (value instanceof byte[] bytes) {
+            var h = FNV_OFFSET;
+            for (var b : bytes) {
+                h = (h ^ (b & 0xff)) * FNV_PRIME;
+            }
+            return mix(BASE64 ^ h);
+        } else if (value instanceof Date date) {
+            return mix(DATE ^ date.getTime());
+        } else {
+            return mix(OTHER ^ value.hashCode());
+        }
+    }
+
+    private static long chars(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
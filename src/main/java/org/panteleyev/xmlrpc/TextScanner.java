@@ -0,0 +1,80 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk scanner of UTF-8 text. Bytes are tested eight at a time within a {@code long} word (SWAR), so spans of
+ * plain text are skipped without per-byte branches.
+ */
+final class TextScanner {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private static final long AMP = ONES * '&';
+    private static final long LT = ONES * '<';
+    private static final long GT = ONES * '>';
+
+    private TextScanner() {
+    }
+
+    /**
+     * Finds the first byte that must be escaped in XML text: {@code &}, {@code <} or {@code >}.
+     *
+     * @return index of the byte or -1 if range contains plain text only
+     */
+    static int indexOfMarkup(byte[] bytes, int from, int to) {
+        var i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            var word = (long) LONG.get(bytes, i);
+            var found = zeroBytes(word ^ AMP) | zeroBytes(word ^ LT) | zeroBytes(word ^ GT);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            var b = bytes[i];
+            if (b == '&' || b == '<' || b == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the specified ASCII byte.
+     *
+     * @return index of the byte or -1 if it is not found
+     */
+    static int indexOf(byte[] bytes, byte value, int from, int to) {
+        var pattern = ONES * (value & 0xFF);
+        var i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            var found = zeroBytes((long) LONG.get(bytes, i) ^ pattern);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets high bit of each zero byte. Bits above the first zero byte may be set falsely due to borrow, so only
+     * the lowest set bit is exact.
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recorder of XMLRPC traffic. Request and response bodies of each exchange are appended to the capture file
+ * together with start time, latency and HTTP status. Captured traffic can be read back with
+ * {@link #read(Path)} to replay it against a stub server or a real service.
+ * <p>Capture is a sequence of binary records, file is opened in append mode and may be shared by several
+ * runs. Records are buffered and written when buffer is full, on {@link #flush()} and on {@link #close()}.
+ * Calls with streaming parameters are not recorded. Captured response is kept in memory until the exchange is
+ * recorded, so it is limited by the maximum response size, larger responses are recorded truncated. When
+ * {@link MemoryBudget} is set the captured bytes are reserved from it, and response is not captured if budget
+ * cannot hold it.</p>
+ * <pre>
+ * try (var recorder = TrafficRecorder.open(Path.of("traffic.xrt"))) {
+ *     var service = XMLRPCService.builder(url)
+ *         .trafficRecorder(recorder)
+ *         .build();
+ *     ...
+ * }
+ * </pre>
+ */
+public final class TrafficRecorder implements AutoCloseable {
+    private static final int MAGIC = 0x58525431;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_RESPONSE_SIZE = 1024 * 1024;
+
+    /**
+     * Recorded exchange.
+     *
+     * @param time     start time of the exchange
+     * @param latency  time from sending request to reading response
+     * @param status   HTTP status code
+     * @param request  request body
+     * @param response  response body, empty if response was not read
+     * @param truncated true if response body was not captured in full
+     */
+    public record Entry(Instant time, Duration latency, int status, byte[] request, byte[] response,
+                        boolean truncated) {
+    }
+
+    private final DataOutputStream out;
+    private final int maxResponseSize;
+    private boolean closed;
+
+    private TrafficRecorder(DataOutputStream out, int maxResponseSize) {
+        this.out = out;
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Opens capture file for appending, file is created if it does not exist. Responses are captured up to 1 MB.
+     *
+     * @param file capture file
+     * @return recorder
+     * @throws IOException if file cannot be opened or is not a capture file
+     */
+    public static TrafficRecorder open(Path file) throws IOException {
+        return open(file, DEFAULT_MAX_RESPONSE_SIZE);
+    }
+
+    /**
+     * Opens capture file for appending, file is created if it does not exist.
+     *
+     * @param file            capture file
+     * @param maxResponseSize maximum size of captured response in bytes
+     * @return recorder
+     * @throws IOException if file cannot be opened or is not a capture file
+     */
+    public static TrafficRecorder open(Path file, int maxResponseSize) throws IOException {
+        if (maxResponseSize < 0) {
+            throw new IllegalArgumentException("Maximum response size must not be negative");
+        }
+
+        var exists = Files.exists(file) && Files.size(file) > 0;
+        if (exists) {
+            try (var in = new DataInputStream(Files.newInputStream(file))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a capture file");
+                }
+            }
+        }
+
+        var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), BUFFER_SIZE));
+        if (!exists) {
+            out.writeInt(MAGIC);
+        }
+        return new TrafficRecorder(out, maxResponseSize);
+    }
+
+    /**
+     * Reads all exchanges from the capture file. Incomplete record at the end of the file is ignored.
+     *
+     * @param file capture file
+     * @return recorded exchanges
+     * @throws IOException if file cannot be read or is not a capture file
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a capture file");
+            }
+            var entries = new ArrayList<Entry>();
+            while (true) {
+                try {
+                    var time = Instant.ofEpochMilli(in.readLong());
+                    var latency = Duration.ofNanos(in.readLong());
+                    var status = in.readInt();
+                    var request = new byte[in.readInt()];
+                    in.readFully(request);
+                    var response = new byte[in.readInt()];
+                    in.readFully(response);
+                    var truncated = in.readBoolean();
+                    entries.add(new Entry(time, latency, status, request, response, truncated));
+                } catch (EOFException ex) {
+                    return entries;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes buffered records to the file.
+     *
+     * @throws IOException if records cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes buffered records and closes the file. Exchanges completed after close are not recorded.
+     *
+     * @throws IOException if records cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Returns stream that captures response. Captured bytes are reserved from the budget if it is set, response
+     * is not captured when budget cannot hold it without waiting.
+     */
+    Capture capture(InputStream in, long contentLength, MemoryBudget budget) {
+        var limit = contentLength >= 0 ? Math.min(contentLength, maxResponseSize) : maxResponseSize;
+        if (budget != null && !budget.tryAcquire(limit)) {
+            limit = 0;
+        }
+        return new Capture(in, (int) limit, budget);
+    }
+
+    /**
+     * Appends record. Failure to record never fails the call.
+     */
+    synchronized void record(long startMillis, long latencyNanos, int status, byte[] request, Capture response) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeLong(startMillis);
+            out.writeLong(latencyNanos);
+            out.writeInt(status);
+            out.writeInt(request.length);
+            out.write(request);
+            if (response == null) {
+                out.writeInt(0);
+                out.writeBoolean(false);
+            } else {
+                out.writeInt(response.size);
+                out.write(response.buffer, 0, response.size);
+                out.writeBoolean(response.truncated);
+            }
+        } catch (IOException ex) {
+            // capture is best effort
+        }
+    }
+
+    /**
+     * Stream that copies bytes read from the response into the capture buffer, bytes above the limit are not
+     * copied.
+     */
+    static final class Capture extends FilterInputStream {
+        private final int limit;
+        private final MemoryBudget budget;
+        private byte[] buffer;
+        private int size;
+        private boolean truncated;
+
+        private Capture(InputStream in, int limit, MemoryBudget budget) {
+            super(in);
+            this.limit = limit;
+            this.budget = budget;
+            buffer = new byte[Math.min(limit, 8192)];
+        }
+
+        /**
+         * Returns reserved bytes to the budget, must be called after the capture is recorded.
+         */
+        void release() {
+            if (budget != null) {
+                budget.release(limit);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = in.read();
+            if (b != -1 && reserve(1) == 1) {
+                buffer[size++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            var n = in.read(b, off, len);
+            if (n > 0) {
+                var copied = reserve(n);
+                System.arraycopy(b, off, buffer, size, copied);
+                size += copied;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be captured too
+            var skipped = new byte[(int) Math.min(n, 8192)];
+            var count = read(skipped, 0, skipped.length);
+            return Math.max(count, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Grows buffer for the bytes that fit into the limit.
+         *
+         * @return number of bytes to copy
+         */
+        private int reserve(int len) {
+            var n = Math.min(len, limit - size);
+            if (n < len) {
+                truncated = true;
+            }
+            if (size + n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(limit, Math.max(size + n, 2L * buffer.length)));
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 byte buffer. When target stream is set, buffer is flushed to it as soon as it exceeds
+ * flush threshold, so memory stays bounded regardless of the amount of written data.
+ */
+final class Utf8Sink {
+    static final int FLUSH_THRESHOLD = 8192;
+
+    private final OutputStream target;
+    private byte[] buf;
+    private int len;
+
+    Utf8Sink() {
+        this(null);
+    }
+
+    Utf8Sink(OutputStream target) {
+        this.target = target;
+        this.buf = new byte[target == null ? 256 : FLUSH_THRESHOLD * 2];
+    }
+
+    Utf8Sink append(String s) {
+        var length = s.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            var c = s.charAt(i);
+            if (c >= 0x80) {
+                // rest of the string contains non-ASCII characters
+                return appendUtf8(s, i);
+            }
+            buf[len++] = (byte) c;
+        }
+        return afterWrite();
+    }
+
+    /**
+     * Appends string as XML text. Spans without markup characters are copied in bulk.
+     */
+    Utf8Sink appendEscaped(String s) {
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        var start = 0;
+        int i;
+        while ((i = TextScanner.indexOfMarkup(bytes, start, bytes.length)) >= 0) {
+            appendBytes(bytes, start, i - start);
+            append(switch (bytes[i]) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                default -> "&gt;";
+            });
+            start = i + 1;
+        }
+        return appendBytes(bytes, start, bytes.length - start);
+    }
+
+    Utf8Sink append(char c) {
+        if (c < 0x80) {
+            ensure(1);
+            buf[len++] = (byte) c;
+            return afterWrite();
+        } else {
+            return append(String.valueOf(c));
+        }
+    }
+
+    Utf8Sink append(long value) {
+        return append(Long.toString(value));
+    }
+
+    /**
+     * Appends raw bytes of the specified range.
+     */
+    Utf8Sink appendBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buf, len, length);
+        len += length;
+        return afterWrite();
+    }
+
+    Utf8Sink write(byte[] bytes) {
+        return appendBytes(bytes, 0, bytes.length);
+    }
+
+    int length() {
+        return len;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns stream that writes raw bytes into this sink and ignores {@code close()}.
+     */
+    OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                ensure(1);
+                buf[len++] = (byte) b;
+                afterWrite();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int length) {
+                appendBytes(b, off, length);
+            }
+        };
+    }
+
+    void flush() {
+        if (target == null || len == 0) {
+            return;
+        }
+        try {
+            target.write(buf, 0, len);
+            len = 0;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Utf8Sink appendUtf8(String s, int from) {
+        var bytes = s.substring(from).getBytes(StandardCharsets.UTF_8);
+        return appendBytes(bytes, 0, bytes.length);
+    }
+
+    private Utf8Sink afterWrite() {
+        if (target != null && len >= FLUSH_THRESHOLD) {
+            flush();
+        }
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+    }
+}
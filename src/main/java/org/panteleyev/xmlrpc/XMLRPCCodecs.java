@@ -0,0 +1,417 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * This class defines conversion between Java types and XMLRPC values.
+ * <p>Encoders and decoders are resolved once per class and cached, so the cost of type lookup is paid
+ * only on the first use of each class.</p>
+ * <p>Default instance supports all types listed in the package description plus the following:</p>
+ * <ul>
+ *     <li>{@code Long} is encoded as &lt;i8&gt;</li>
+ *     <li>{@code Short}, {@code Byte} are encoded as &lt;int&gt;</li>
+ *     <li>{@code Float}, {@code BigDecimal} are encoded as &lt;double&gt;</li>
+ *     <li>{@code UUID} and enum constants are encoded as &lt;string&gt;</li>
+ *     <li>records are encoded as &lt;struct&gt; with component names as member names</li>
+ *     <li>{@link EncodedValue} is copied into the request as is</li>
+ * </ul>
+ */
+public final class XMLRPCCodecs {
+    static final XMLRPCCodecs DEFAULT = builder().build();
+
+    /**
+     * Internal value encoder.
+     */
+    @FunctionalInterface
+    interface ValueEncoder {
+        void encode(XMLRPCParameters params, Object value);
+    }
+
+    /**
+     * Internal value decoder.
+     */
+    @FunctionalInterface
+    interface ValueDecoder {
+        Object decode(Object value, TimeZone tz);
+    }
+
+    private static final Map<Class<?>, ValueEncoder> BUILTIN_ENCODERS = Map.ofEntries(
+            Map.entry(String.class, (p, v) -> p.appendString((String) v)),
+            Map.entry(Boolean.class, (p, v) -> p.appendBoolean((Boolean) v)),
+            Map.entry(Integer.class, (p, v) -> p.appendInt((Integer) v)),
+            Map.entry(Short.class, (p, v) -> p.appendInt((Short) v)),
+            Map.entry(Byte.class, (p, v) -> p.appendInt((Byte) v)),
+            Map.entry(Long.class, (p, v) -> p.appendLong((Long) v)),
+            Map.entry(Double.class, (p, v) -> p.appendDouble((Double) v)),
+            Map.entry(Float.class, (p, v) -> p.appendDouble((Float) v)),
+            Map.entry(BigDecimal.class, (p, v) -> p.appendDouble((BigDecimal) v)),
+            Map.entry(UUID.class, (p, v) -> p.appendString(v.toString())),
+            Map.entry(LocalDateTime.class, (p, v) -> p.appendDate((LocalDateTime) v)),
+            Map.entry(LocalDate.class, (p, v) -> p.appendDate((LocalDate) v)),
+            Map.entry(byte[].class, (p, v) -> p.appendData((byte[]) v)),
+            Map.entry(EncodedValue.class, (p, v) -> p.appendEncoded((EncodedValue) v))
+    );
+
+    private static final Map<Class<?>, Class<?>> BOXES = Map.of(
+            int.class, Integer.class,
+            long.class, Long.class,
+            short.class, Short.class,
+            byte.class, Byte.class,
+            double.class, Double.class,
+            float.class, Float.class,
+            boolean.class, Boolean.class
+    );
+
+    private static final Map<Class<?>, ValueDecoder> BUILTIN_DECODERS = Map.ofEntries(
+            Map.entry(Long.class, (v, tz) -> v instanceof Integer i ? Long.valueOf(i) : v),
+            Map.entry(Short.class, (v, tz) -> v instanceof Integer i ? Short.valueOf(i.shortValue()) : v),
+            Map.entry(Byte.class, (v, tz) -> v instanceof Integer i ? Byte.valueOf(i.byteValue()) : v),
+            Map.entry(Float.class, (v, tz) -> v instanceof Double d ? Float.valueOf(d.floatValue()) : v),
+            Map.entry(BigDecimal.class, (v, tz) -> v instanceof Double d ? BigDecimal.valueOf(d) :
+                    v instanceof String || v instanceof Integer || v instanceof Long ? new BigDecimal(v.toString()) : v),
+            Map.entry(UUID.class, (v, tz) -> v instanceof String s ? UUID.fromString(s) : v),
+            Map.entry(LocalDateTime.class, (v, tz) -> v instanceof Date d ?
+                    LocalDateTime.ofInstant(d.toInstant(), zoneId(tz)) : v),
+            Map.entry(LocalDate.class, (v, tz) -> v instanceof Date d ?
+                    LocalDate.ofInstant(d.toInstant(), zoneId(tz)) : v)
+    );
+
+    private final Map<Class<?>, Function<Object, ?>> encoders;
+    private final Map<Class<?>, Function<Object, ?>> decoders;
+    private final Map<String, Function<String, ?>> tagDecoders;
+
+    // accessors of record components, empty array marks record that is not accessible
+    private static final MethodHandle[] NOT_ACCESSIBLE = new MethodHandle[0];
+    private static final ClassValue<MethodHandle[]> RECORD_ACCESSORS = new ClassValue<>() {
+        @Override
+        protected MethodHandle[] computeValue(Class<?> type) {
+            var components = type.getRecordComponents();
+            var accessors = new MethodHandle[components.length];
+            var lookup = MethodHandles.lookup();
+            try {
+                for (int i = 0; i < components.length; i++) {
+                    accessors[i] = lookup.unreflect(components[i].getAccessor())
+                            .asType(MethodType.methodType(Object.class, Object.class));
+                }
+            } catch (IllegalAccessException ex) {
+                return NOT_ACCESSIBLE;
+            }
+            return accessors;
+        }
+    };
+
+    private final ClassValue<ValueEncoder> encoderCache = new ClassValue<>() {
+        @Override
+        protected ValueEncoder computeValue(Class<?> type) {
+            return resolveEncoder(type);
+        }
+    };
+
+    private final ClassValue<ValueDecoder> decoderCache = new ClassValue<>() {
+        @Override
+        protected ValueDecoder computeValue(Class<?> type) {
+            return resolveDecoder(type);
+        }
+    };
+
+    private XMLRPCCodecs(Builder builder) {
+        this.encoders = Map.copyOf(builder.encoders);
+        this.decoders = Map.copyOf(builder.decoders);
+        this.tagDecoders = Map.copyOf(builder.tagDecoders);
+    }
+
+    /**
+     * Creates new builder.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    ValueEncoder encoder(Class<?> type) {
+        return encoderCache.get(type);
+    }
+
+    boolean hasCustomEncoder(Class<?> type) {
+        return findCustom(encoders, type) != null;
+    }
+
+    Function<String, ?> tagDecoder(String tag) {
+        return tagDecoders.get(tag);
+    }
+
+    <T> T decode(Object value, Class<T> type, TimeZone tz) {
+        var boxed = box(type);
+        var result = decoderCache.get(boxed).decode(value, tz);
+        if (result != null && !boxed.isInstance(result)) {
+            throw new IllegalStateException("Cannot convert " + result.getClass().getName()
+                    + " to " + type.getName());
+        }
+        @SuppressWarnings("unchecked")
+        var typed = (T) result;
+        return typed;
+    }
+
+    private ValueEncoder resolveEncoder(Class<?> type) {
+        var custom = findCustom(encoders, type);
+        if (custom != null) {
+            return (p, v) -> p.appendValue(custom.apply(v));
+        }
+
+        var builtin = BUILTIN_ENCODERS.get(type);
+        if (builtin != null) {
+            return builtin;
+        }
+
+        if (Map.class.isAssignableFrom(type)) {
+            return (p, v) -> p.appendStruct((Map<?, ?>) v);
+        } else if (List.class.isAssignableFrom(type)) {
+            return (p, v) -> p.appendArray((List<?>) v);
+        } else if (Iterator.class.isAssignableFrom(type)) {
+            return (p, v) -> p.appendArray((Iterator<?>) v);
+        } else if (Stream.class.isAssignableFrom(type)) {
+            return (p, v) -> {
+                try (var stream = (Stream<?>) v) {
+                    p.appendArray(stream.iterator());
+                }
+            };
+        } else if (InputStream.class.isAssignableFrom(type)) {
+            return (p, v) -> p.appendData((InputStream) v);
+        } else if (Path.class.isAssignableFrom(type)) {
+            return (p, v) -> p.appendData((Path) v);
+        } else if (Date.class.isAssignableFrom(type)) {
+            return (p, v) -> p.appendDate((Date) v);
+        } else if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+            return (p, v) -> p.appendString(((Enum<?>) v).name());
+        } else if (type.isRecord()) {
+            return recordEncoder(type);
+        } else {
+            return (p, v) -> {
+                throw new RuntimeException("Unsupported parameter type: " + type.getName());
+            };
+        }
+    }
+
+    private ValueDecoder resolveDecoder(Class<?> type) {
+        var custom = decoders.get(type);
+        if (custom != null) {
+            return (v, tz) -> custom.apply(v);
+        }
+
+        var builtin = BUILTIN_DECODERS.get(type);
+        if (builtin != null) {
+            return builtin;
+        }
+
+        if (type.isEnum()) {
+            var constants = new HashMap<String, Object>();
+            for (var constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+            return (v, tz) -> {
+                if (!(v instanceof String s)) {
+                    return v;
+                }
+                var constant = constants.get(s);
+                if (constant == null) {
+                    throw new IllegalArgumentException("Unknown constant " + s + " of " + type.getName());
+                }
+                return constant;
+            };
+        } else if (type.isRecord()) {
+            return recordDecoder(type);
+        } else {
+            return (v, tz) -> v;
+        }
+    }
+
+    /**
+     * Returns cached accessors of record components, each accessor has type {@code (Object)Object}.
+     *
+     * @throws IllegalArgumentException if record is not accessible
+     */
+    static MethodHandle[] recordAccessors(Class<?> type) {
+        var accessors = RECORD_ACCESSORS.get(type);
+        if (accessors == NOT_ACCESSIBLE && type.getRecordComponents().length > 0) {
+            throw new IllegalArgumentException("Record " + type.getName() + " is not accessible");
+        }
+        return accessors;
+    }
+
+    private static ValueEncoder recordEncoder(Class<?> type) {
+        var components = type.getRecordComponents();
+        var names = new String[components.length];
+        for (int i = 0; i < components.length; i++) {
+            names[i] = components[i].getName();
+        }
+        var accessors = recordAccessors(type);
+
+        return (p, v) -> {
+            p.beginStruct();
+            for (int i = 0; i < accessors.length; i++) {
+                Object component;
+                try {
+                    component = accessors[i].invokeExact(v);
+                } catch (Throwable t) {
+                    throw new RuntimeException(t);
+                }
+                if (component != null) {
+                    p.appendMember(names[i], component);
+                }
+            }
+            p.endStruct();
+        };
+    }
+
+    private ValueDecoder recordDecoder(Class<?> type) {
+        var components = type.getRecordComponents();
+        var names = new String[components.length];
+        var types = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            names[i] = components[i].getName();
+            types[i] = components[i].getType();
+        }
+
+        MethodHandle constructor;
+        try {
+            constructor = MethodHandles.lookup()
+                    .findConstructor(type, MethodType.methodType(void.class, types))
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new IllegalArgumentException("Record " + type.getName() + " is not accessible", ex);
+        }
+
+        return (v, tz) -> {
+            if (!(v instanceof Map<?, ?> map)) {
+                return v;
+            }
+            var args = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                var component = map.get(names[i]);
+                if (component == null && types[i].isPrimitive()) {
+                    throw new IllegalStateException("Missing member " + names[i] + " for " + type.getName());
+                }
+                args[i] = decode(component, types[i], tz);
+            }
+            try {
+                return constructor.invokeExact(args);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Cannot create " + type.getName(), t);
+            }
+        };
+    }
+
+    private static <V> V findCustom(Map<Class<?>, V> map, Class<?> type) {
+        if (map.isEmpty()) {
+            return null;
+        }
+        for (var t = type; t != null; t = t.getSuperclass()) {
+            var result = map.get(t);
+            if (result != null) {
+                return result;
+            }
+        }
+        return Arrays.stream(type.getInterfaces())
+                .map(map::get)
+                .filter(x -> x != null)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Class<?> box(Class<?> type) {
+        return type.isPrimitive() ? BOXES.get(type) : type;
+    }
+
+    private static ZoneId zoneId(TimeZone tz) {
+        return tz == null ? ZoneId.systemDefault() : tz.toZoneId();
+    }
+
+    /**
+     * This class builds {@link XMLRPCCodecs} instances.
+     */
+    public static final class Builder {
+        private final Map<Class<?>, Function<Object, ?>> encoders = new HashMap<>();
+        private final Map<Class<?>, Function<Object, ?>> decoders = new HashMap<>();
+        private final Map<String, Function<String, ?>> tagDecoders = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Registers encoder for the specified type. Encoder must convert value into any other supported type,
+         * for example {@code String} or {@code Map}. Encoder is applied to subclasses and implementations
+         * of the specified type as well.
+         *
+         * @param type    value type
+         * @param encoder encoder
+         * @param <T>     value type
+         * @return this builder
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Builder encoder(Class<T> type, Function<? super T, ?> encoder) {
+            encoders.put(type, (Function<Object, ?>) encoder);
+            return this;
+        }
+
+        /**
+         * Registers decoder for the specified type. Decoder receives value as defined in the package
+         * description and must return instance of the specified type.
+         *
+         * @param type    value type
+         * @param decoder decoder
+         * @param <T>     value type
+         * @return this builder
+         * @see XMLRPCResult#getValue(int, Class)
+         */
+        public <T> Builder decoder(Class<T> type, Function<Object, ? extends T> decoder) {
+            decoders.put(box(type), decoder);
+            return this;
+        }
+
+        /**
+         * Registers decoder for non-standard XMLRPC value element, for example &lt;ex:i8&gt;.
+         * Decoder receives text content of the element.
+         *
+         * @param tag     element name
+         * @param decoder decoder
+         * @return this builder
+         */
+        public Builder tagDecoder(String tag, Function<String, ?> decoder) {
+            tagDecoders.put(tag, decoder);
+            return this;
+        }
+
+        /**
+         * Builds codecs instance.
+         *
+         * @return codecs
+         */
+        public XMLRPCCodecs build() {
+            return new XMLRPCCodecs(this);
+        }
+    }
+}
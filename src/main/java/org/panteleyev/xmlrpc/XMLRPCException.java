@@ -15,7 +15,13 @@ public class XMLRPCException extends Exception {
         this.faultCode = 0;
     }
 
-    XMLRPCException(int faultCode, String msg) {
+    /**
+     * Creates exception that is reported by {@link XMLRPCServer} as a fault response.
+     *
+     * @param faultCode fault code
+     * @param msg       fault string
+     */
+    public XMLRPCException(int faultCode, String msg) {
         super(msg);
         this.faultCode = faultCode;
     }
@@ -0,0 +1,22 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+/**
+ * Handler of XMLRPC method registered in {@link XMLRPCServer}.
+ */
+@FunctionalInterface
+public interface XMLRPCHandler {
+    /**
+     * Handles method call. Parameters are decoded with the same types as results of {@link XMLRPCService}
+     * calls. Returned value is encoded by {@link XMLRPCCodecs} of the server. {@link XMLRPCException} is sent
+     * as a fault with its code and message, other exceptions are sent as internal error faults.
+     *
+     * @param parameters method parameters
+     * @return method result
+     * @throws XMLRPCException to send fault response
+     */
+    Object handle(XMLRPCResult parameters) throws XMLRPCException;
+}
@@ -0,0 +1,32 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation marks Java interface which describes XMLRPC methods of a service.
+ * <p>Implementation of such interface is obtained via {@link XMLRPCService#client(Class)}. Each abstract method
+ * is mapped to XMLRPC method, method arguments are passed as call parameters and the first result value is
+ * converted to the return type. Methods must declare {@link java.io.IOException} and {@link XMLRPCException}.</p>
+ * <p>Annotation processor included into this library generates implementation class named
+ * {@code <Interface>XMLRPCClient} at compile time. If such class is not present a dynamic proxy is used.</p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface XMLRPCInterface {
+    /**
+     * Defines prefix of XMLRPC method names derived from Java method names, for example {@code "examples"} results in
+     * {@code "examples.getStateName"}.
+     *
+     * @return method name prefix
+     */
+    String prefix() default "";
+}
@@ -0,0 +1,18 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown when XMLRPC call is rejected by client side limits without being sent or when
+ * response is aborted because it exceeds {@link ResponseLimits} or {@link MemoryBudget}. Such calls are not
+ * counted as endpoint failures and do not affect latency statistics and concurrency limits.
+ */
+public class XMLRPCLimitException extends IOException {
+    XMLRPCLimitException(String msg) {
+        super(msg);
+    }
+}
@@ -4,10 +4,16 @@
  */
 package org.panteleyev.xmlrpc;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * This class defines XMLRPC method.
  */
 public record XMLRPCMethod(String name) {
+    static final String HEADER = "<?xml version=\"1.0\"?><methodCall><methodName>";
+    static final String PARAMS = "</methodName><params>";
+    static final String FOOTER = "</params></methodCall>";
 
     public XMLRPCMethod {
         if (name == null || name.isEmpty()) {
@@ -16,11 +22,16 @@ public record XMLRPCMethod(String name) {
     }
 
     public String getMethodString(XMLRPCParameters params) {
-        return "<?xml version=\"1.0\"?>"
-                + "<methodCall><methodName>"
-                + name
-                + "</methodName><params>"
-                + params.getParametersString()
-                + "</params></methodCall>";
+        return HEADER + name + PARAMS + params.getParametersString() + FOOTER;
+    }
+
+    byte[] getMethodBytes(XMLRPCParameters params) {
+        var head = (HEADER + name + PARAMS).getBytes(StandardCharsets.UTF_8);
+        var body = params.getParametersBytes();
+        var tail = FOOTER.getBytes(StandardCharsets.US_ASCII);
+        var result = Arrays.copyOf(head, head.length + body.length + tail.length);
+        System.arraycopy(body, 0, result, head.length, body.length);
+        System.arraycopy(tail, 0, result, head.length + body.length, tail.length);
+        return result;
     }
 }
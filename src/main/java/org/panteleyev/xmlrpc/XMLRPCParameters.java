@@ -4,16 +4,25 @@
  */
 package org.panteleyev.xmlrpc;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class defines XML RPC call parameters.
@@ -21,101 +30,225 @@ import java.util.stream.Collectors;
 public final class XMLRPCParameters {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HH:mm:ss");
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'00:00:00");
-    private final StringBuilder paramString = new StringBuilder();
+    private final Utf8Sink out;
     private final TimeZone tz;
-
+    private final XMLRPCCodecs codecs;
 
     XMLRPCParameters(TimeZone tz) {
+        this(tz, XMLRPCCodecs.DEFAULT);
+    }
+
+    XMLRPCParameters(TimeZone tz, XMLRPCCodecs codecs) {
+        this(tz, codecs, new Utf8Sink());
+    }
+
+    private XMLRPCParameters(TimeZone tz, XMLRPCCodecs codecs, Utf8Sink out) {
         this.tz = tz;
+        this.codecs = codecs;
+        this.out = out;
+    }
+
+    /**
+     * Checks if parameters contain one-shot sources that are encoded while request is sent. Members of structs,
+     * elements of arrays and record components are checked as well. Callers check parameters once per call.
+     */
+    static boolean isStreaming(Object[] parameters) {
+        for (var p : parameters) {
+            if (isStreaming(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStreaming(Object value) {
+        if (value instanceof Iterator<?> || value instanceof Stream<?> || value instanceof InputStream
+                || value instanceof Path) {
+            return true;
+        } else if (value instanceof Map<?, ?> map) {
+            for (var member : map.values()) {
+                if (isStreaming(member)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof List<?> list) {
+            for (var element : list) {
+                if (isStreaming(element)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof Record) {
+            MethodHandle[] accessors;
+            try {
+                accessors = XMLRPCCodecs.recordAccessors(value.getClass());
+            } catch (IllegalArgumentException ex) {
+                // record cannot be encoded at all, encoder reports it
+                return false;
+            }
+            for (var accessor : accessors) {
+                Object component;
+                try {
+                    component = accessor.invokeExact(value);
+                } catch (Throwable t) {
+                    throw new RuntimeException(t);
+                }
+                if (isStreaming(component)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes method call directly to the stream, memory usage does not depend on parameters size.
+     */
+    static void writeMethodCall(OutputStream stream, String method, Object[] parameters, TimeZone tz,
+                                XMLRPCCodecs codecs) throws IOException {
+        var params = new XMLRPCParameters(tz, codecs, new Utf8Sink(stream));
+        try {
+            params.out.append(XMLRPCMethod.HEADER).append(method).append(XMLRPCMethod.PARAMS);
+            for (var p : parameters) {
+                params.appendParameter(p);
+            }
+            params.out.append(XMLRPCMethod.FOOTER);
+            params.out.flush();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
     }
 
     String getParametersString() {
-        return paramString.toString();
+        return out.toString();
+    }
+
+    byte[] getParametersBytes() {
+        return out.toByteArray();
     }
 
     XMLRPCParameters appendParameter(Object param) {
-        paramString.append("<param><value>").append(appendValue(param)).append("</value></param>");
+        out.append("<param><value>");
+        appendValue(param);
+        out.append("</value></param>");
         return this;
     }
 
-    private String appendValue(Object value) {
-        // TODO: replace with switch pattern matching
-        if (value instanceof String stringValue) {
-            return appendStringValue(stringValue);
-        } else if (value instanceof Map<?, ?> map) {
-            return appendStructValue(map);
-        } else if (value instanceof List<?> list) {
-            return appendArrayValue(list);
-        } else if (value instanceof Boolean booleanValue) {
-            return appendBooleanValue(booleanValue);
-        } else if (value instanceof Integer intValue) {
-            return appendIntegerValue(intValue);
-        } else if (value instanceof Double doubleValue) {
-            return appendDoubleValue(doubleValue);
-        } else if (value instanceof Date date) {
-            return appendDateValue(date);
-        } else if (value instanceof LocalDateTime localDateTime) {
-            return appendDateValue(localDateTime);
-        } else if (value instanceof LocalDate localDate) {
-            return appendDateValue(localDate);
-        } else if (value instanceof byte[] bytes) {
-            return appendDataValue(bytes);
-        } else {
+    /**
+     * Appends parameter with already encoded value.
+     */
+    XMLRPCParameters appendEncodedParameter(String value) {
+        out.append("<param><value>").append(value).append("</value></param>");
+        return this;
+    }
+
+    void appendEncoded(EncodedValue value) {
+        value.writeTo(out);
+    }
+
+    void appendValue(Object value) {
+        if (value == null) {
             throw new RuntimeException("Unsupported parameter type");
         }
+        codecs.encoder(value.getClass()).encode(this, value);
+    }
+
+    void appendString(String value) {
+        out.append("<string>").appendEscaped(value).append("</string>");
+    }
+
+    void appendBoolean(boolean value) {
+        out.append("<boolean>").append(value ? '1' : '0').append("</boolean>");
+    }
+
+    void appendInt(int value) {
+        out.append("<int>").append(value).append("</int>");
+    }
+
+    void appendLong(long value) {
+        out.append("<i8>").append(value).append("</i8>");
+    }
+
+    void appendDouble(double value) {
+        out.append("<double>").append(Double.toString(value)).append("</double>");
+    }
+
+    void appendDouble(BigDecimal value) {
+        out.append("<double>").append(value.toPlainString()).append("</double>");
     }
 
-    private String appendStringValue(String value) {
-        return "<string>"
-                + value.replaceAll("&", "&amp;").replaceAll("<", "&lt;")
-                + "</string>";
+    void beginStruct() {
+        out.append("<struct>");
     }
 
-    private String appendBooleanValue(Boolean value) {
-        return "<boolean>" + ((value) ? "1" : "0") + "</boolean>";
+    void appendMember(String name, Object value) {
+        out.append("<member><name>").append(name).append("</name><value>");
+        appendValue(value);
+        out.append("</value></member>");
     }
 
-    private String appendIntegerValue(Integer value) {
-        return "<int>" + value.toString() + "</int>";
+    void endStruct() {
+        out.append("</struct>");
     }
 
-    private String appendDoubleValue(Double value) {
-        return "<double>" + value.toString() + "</double>";
+    void appendStruct(Map<?, ?> map) {
+        beginStruct();
+        for (var entry : map.entrySet()) {
+            if (entry.getKey() instanceof String name) {
+                appendMember(name, entry.getValue());
+            }
+        }
+        endStruct();
     }
 
-    private String appendStructValue(Map<?, ?> map) {
-        return "<struct>" +
-                map.entrySet().stream()
-                        .filter(entry -> entry.getKey() instanceof String)
-                        .map(entry -> "<member><name>" + entry.getKey() + "</name><value>"
-                                + appendValue(entry.getValue())
-                                + "</value></member>").collect(Collectors.joining(""))
-                + "</struct>";
+    void appendArray(Iterable<?> array) {
+        appendArray(array.iterator());
     }
 
-    private String appendArrayValue(List<?> array) {
-        return "<array><data>" +
-                array.stream()
-                        .map(x -> "<value>" + appendValue(x) + "</value>")
-                        .collect(Collectors.joining(""))
-                + "</data></array>";
+    void appendArray(Iterator<?> array) {
+        out.append("<array><data>");
+        while (array.hasNext()) {
+            out.append("<value>");
+            appendValue(array.next());
+            out.append("</value>");
+        }
+        out.append("</data></array>");
     }
 
-    private String appendDateValue(Date date) {
+    void appendDate(Date date) {
         var f = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
         f.setTimeZone(tz);
-        return "<dateTime.iso8601>" + f.format(date) + "</dateTime.iso8601>";
+        out.append("<dateTime.iso8601>").append(f.format(date)).append("</dateTime.iso8601>");
     }
 
-    private String appendDateValue(LocalDateTime date) {
-        return "<dateTime.iso8601>" + DATE_TIME_FORMATTER.format(date) + "</dateTime.iso8601>";
+    void appendDate(LocalDateTime date) {
+        out.append("<dateTime.iso8601>").append(DATE_TIME_FORMATTER.format(date))
+                .append("</dateTime.iso8601>");
     }
 
-    private String appendDateValue(LocalDate date) {
-        return "<dateTime.iso8601>" + DATE_FORMATTER.format(date) + "</dateTime.iso8601>";
+    void appendDate(LocalDate date) {
+        out.append("<dateTime.iso8601>").append(DATE_FORMATTER.format(date))
+                .append("</dateTime.iso8601>");
     }
 
-    private String appendDataValue(byte[] data) {
-        return "<base64>" + Base64.getEncoder().encodeToString(data) + "</base64>";
+    void appendData(byte[] data) {
+        out.append("<base64>").write(Base64.getEncoder().encode(data)).append("</base64>");
+    }
+
+    void appendData(InputStream data) {
+        out.append("<base64>");
+        try (data; var encoder = Base64.getEncoder().wrap(out.asOutputStream())) {
+            data.transferTo(encoder);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        out.append("</base64>");
+    }
+
+    void appendData(Path data) {
+        try {
+            appendData(Files.newInputStream(data));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
 }
@@ -0,0 +1,762 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimeZone;
+
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Pull reader of XMLRPC response values. Reader works directly over the response stream, values are
+ * converted only when requested, skipped values are not created at all.
+ * <p>Top level values of the response are read one by one while {@link #hasNext()} returns true:</p>
+ * <pre>
+ * while (reader.hasNext()) {
+ *     reader.beginArray();
+ *     while (reader.hasNext()) {
+ *         reader.beginStruct();
+ *         while (reader.hasNext()) {
+ *             switch (reader.nextMemberName()) {
+ *                 case "id" -&gt; id = reader.readInt();
+ *                 default -&gt; reader.skipValue();
+ *             }
+ *         }
+ *         reader.endStruct();
+ *     }
+ *     reader.endArray();
+ * }
+ * </pre>
+ * <p>Fault response is reported by {@link XMLRPCException} thrown by the first call of the reader.</p>
+ */
+public final class XMLRPCReader {
+    /**
+     * Type of the next token.
+     */
+    public enum Token {
+        BEGIN_STRUCT,
+        END_STRUCT,
+        MEMBER_NAME,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        STRING,
+        INT,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        BASE64,
+        DATE_TIME,
+        /**
+         * Scalar value with a non-standard tag, see {@link #getTag()}.
+         */
+        CUSTOM,
+        END_RESPONSE
+    }
+
+    /**
+     * Consumer of text fragments.
+     */
+    @FunctionalInterface
+    interface TextConsumer {
+        void accept(char[] chars, int start, int length) throws IOException;
+    }
+
+    private static final XMLInputFactory FACTORY = newFactory();
+
+    private static final int TOP = 0;
+    private static final int STRUCT = 1;
+    private static final int ARRAY = 2;
+
+    private static final int BASE64_CHUNK = 4096;
+
+    private final XMLStreamReader reader;
+    private final TimeZone tz;
+    private final XMLRPCCodecs codecs;
+    private final ResponseLimits limits;
+
+    private int[] stack = new int[16];
+    private int depth;
+    private Token peeked;
+    private String tag;
+    private String pendingText;
+    private boolean fault;
+    private boolean finished;
+    private String methodName;
+
+    // limits state
+    private int valueDepth;
+    private int valueCount;
+
+    XMLRPCReader(InputStream in, TimeZone tz, XMLRPCCodecs codecs) throws IOException, XMLRPCException {
+        this(in, tz, codecs, ResponseLimits.NONE);
+    }
+
+    XMLRPCReader(InputStream in, TimeZone tz, XMLRPCCodecs codecs, ResponseLimits limits)
+            throws IOException, XMLRPCException {
+        this.tz = tz;
+        this.codecs = codecs;
+        this.limits = limits;
+        try {
+            synchronized (FACTORY) {
+                reader = FACTORY.createXMLStreamReader(in);
+            }
+        } catch (XMLStreamException ex) {
+            throw error(ex);
+        }
+    }
+
+    /**
+     * Returns type of the next token without consuming it.
+     *
+     * @return type of the next token
+     * @throws IOException     in case of network issue
+     * @throws XMLRPCException if response is a fault or cannot be parsed
+     */
+    public Token peek() throws IOException, XMLRPCException {
+        if (peeked == null) {
+            peeked = advance();
+        }
+        return peeked;
+    }
+
+    /**
+     * Checks if current struct, array or response has more elements.
+     *
+     * @return true if there are more elements
+     * @throws IOException     in case of network issue
+     * @throws XMLRPCException if response is a fault or cannot be parsed
+     */
+    public boolean hasNext() throws IOException, XMLRPCException {
+        var token = peek();
+        return token != Token.END_STRUCT && token != Token.END_ARRAY && token != Token.END_RESPONSE;
+    }
+
+    /**
+     * Consumes beginning of the struct.
+     *
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#BEGIN_STRUCT}
+     */
+    public void beginStruct() throws IOException, XMLRPCException {
+        expect(Token.BEGIN_STRUCT);
+        push(STRUCT);
+    }
+
+    /**
+     * Consumes end of the struct.
+     *
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#END_STRUCT}
+     */
+    public void endStruct() throws IOException, XMLRPCException {
+        expect(Token.END_STRUCT);
+        depth--;
+    }
+
+    /**
+     * Consumes beginning of the array.
+     *
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#BEGIN_ARRAY}
+     */
+    public void beginArray() throws IOException, XMLRPCException {
+        expect(Token.BEGIN_ARRAY);
+        push(ARRAY);
+    }
+
+    /**
+     * Consumes end of the array.
+     *
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#END_ARRAY}
+     */
+    public void endArray() throws IOException, XMLRPCException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Reads name of the next struct member.
+     *
+     * @return member name
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#MEMBER_NAME}
+     */
+    public String nextMemberName() throws IOException, XMLRPCException {
+        expect(Token.MEMBER_NAME);
+        return elementText();
+    }
+
+    /**
+     * Returns tag of the next scalar value.
+     *
+     * @return tag of the scalar value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not a scalar value
+     */
+    public String getTag() throws IOException, XMLRPCException {
+        checkScalar(peek());
+        return tag;
+    }
+
+    /**
+     * Reads text of the next scalar value of any type.
+     *
+     * @return text of the value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not a scalar value
+     */
+    public String readText() throws IOException, XMLRPCException {
+        checkScalar(peek());
+        peeked = null;
+        if (pendingText != null) {
+            var text = pendingText;
+            pendingText = null;
+            return text;
+        }
+        return elementText();
+    }
+
+    /**
+     * Passes text of the next scalar value to the consumer as it is received from the stream.
+     */
+    void readText(TextConsumer consumer) throws IOException, XMLRPCException {
+        checkScalar(peek());
+        peeked = null;
+        if (pendingText != null) {
+            var chars = pendingText.toCharArray();
+            pendingText = null;
+            consumer.accept(chars, 0, chars.length);
+            return;
+        }
+
+        int event;
+        while ((event = next()) != END_ELEMENT) {
+            if (event != CHARACTERS && event != CDATA && event != SPACE) {
+                throw new XMLRPCException("Unexpected content of " + tag + " value");
+            }
+            consumer.accept(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        }
+    }
+
+    /**
+     * Returns method name when reader is used for a request document.
+     */
+    String methodName() throws IOException, XMLRPCException {
+        peek();
+        return methodName;
+    }
+
+    /**
+     * Checks if response is a fault.
+     */
+    boolean isFault() {
+        return fault;
+    }
+
+    /**
+     * Reads string value.
+     *
+     * @return string value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#STRING}
+     */
+    public String readString() throws IOException, XMLRPCException {
+        check(Token.STRING);
+        return readText();
+    }
+
+    /**
+     * Reads integer value.
+     *
+     * @return integer value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#INT}
+     */
+    public int readInt() throws IOException, XMLRPCException {
+        expect(Token.INT);
+        return (int) parseInteger(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads long value, accepts both &lt;i8&gt; and &lt;int&gt; values.
+     *
+     * @return long value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#LONG} or {@link Token#INT}
+     */
+    public long readLong() throws IOException, XMLRPCException {
+        if (peek() == Token.INT) {
+            peeked = null;
+        } else {
+            expect(Token.LONG);
+        }
+        return parseInteger(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads double value.
+     *
+     * @return double value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#DOUBLE}
+     */
+    public double readDouble() throws IOException, XMLRPCException {
+        check(Token.DOUBLE);
+        return Double.parseDouble(readText());
+    }
+
+    /**
+     * Reads boolean value.
+     *
+     * @return boolean value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#BOOLEAN}
+     */
+    public boolean readBoolean() throws IOException, XMLRPCException {
+        expect(Token.BOOLEAN);
+        return parseInteger(0, 1) == 1;
+    }
+
+    /**
+     * Reads date value using input time zone of the service.
+     *
+     * @return date value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#DATE_TIME}
+     */
+    public Date readDate() throws IOException, XMLRPCException {
+        check(Token.DATE_TIME);
+        return (Date) scalar(tag, readText());
+    }
+
+    /**
+     * Decodes base64 value into the sink without creating intermediate copy of the whole value.
+     *
+     * @param sink sink
+     * @return number of bytes written to the sink
+     * @throws IOException           in case of network issue or if sink cannot be written
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#BASE64}
+     */
+    public long readBase64(OutputStream sink) throws IOException, XMLRPCException {
+        expect(Token.BASE64);
+
+        var decoder = Base64.getDecoder();
+        var chunk = new byte[BASE64_CHUNK];
+        var decoded = new byte[BASE64_CHUNK / 4 * 3];
+        int length = 0;
+        long total = 0;
+        int event;
+        while ((event = next()) != END_ELEMENT) {
+            if (event != CHARACTERS && event != CDATA && event != SPACE) {
+                throw new XMLRPCException("Unexpected content of base64 value");
+            }
+            var chars = reader.getTextCharacters();
+            var end = reader.getTextStart() + reader.getTextLength();
+            for (int i = reader.getTextStart(); i < end; i++) {
+                var c = chars[i];
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                chunk[length++] = (byte) c;
+                if (length == chunk.length) {
+                    var n = decoder.decode(chunk, decoded);
+                    sink.write(decoded, 0, n);
+                    total += n;
+                    length = 0;
+                }
+            }
+        }
+        if (length > 0) {
+            var n = decoder.decode(Arrays.copyOf(chunk, length), decoded);
+            sink.write(decoded, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Reads base64 value.
+     *
+     * @return binary data
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not {@link Token#BASE64}
+     */
+    public byte[] readBytes() throws IOException, XMLRPCException {
+        var out = new ByteArrayOutputStream();
+        readBase64(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the next value with all its content using the same types as {@link XMLRPCResult}.
+     *
+     * @return value
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not a value
+     */
+    public Object readValue() throws IOException, XMLRPCException {
+        switch (peek()) {
+            case BEGIN_STRUCT -> {
+                var map = new HashMap<String, Object>();
+                beginStruct();
+                while (hasNext()) {
+                    var name = nextMemberName();
+                    if (hasNext() && peek() != Token.MEMBER_NAME) {
+                        var value = readValue();
+                        if (value != null) {
+                            map.put(name, value);
+                        }
+                    }
+                }
+                endStruct();
+                return map;
+            }
+            case BEGIN_ARRAY -> {
+                var list = new ArrayList<>();
+                beginArray();
+                while (hasNext()) {
+                    list.add(readValue());
+                }
+                endArray();
+                return list;
+            }
+            case BASE64 -> {
+                return readBytes();
+            }
+            default -> {
+                var untyped = pendingText != null;
+                var valueTag = getTag();
+                var text = readText();
+                return untyped ? text : scalar(valueTag, text);
+            }
+        }
+    }
+
+    /**
+     * Reads all remaining top level values, values of unknown types are omitted.
+     */
+    List<Object> readValues() throws IOException, XMLRPCException {
+        var values = new ArrayList<>();
+        while (hasNext()) {
+            var value = readValue();
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Skips the next value with all its content. If the next token is a member name, the whole member
+     * is skipped.
+     *
+     * @throws IOException           in case of network issue
+     * @throws XMLRPCException       if response is a fault or cannot be parsed
+     * @throws IllegalStateException if the next token is not a value or member name
+     */
+    public void skipValue() throws IOException, XMLRPCException {
+        var token = peek();
+        switch (token) {
+            case END_STRUCT, END_ARRAY, END_RESPONSE ->
+                    throw new IllegalStateException("Expected value but was " + token);
+            case MEMBER_NAME -> {
+                peeked = null;
+                skipElement();
+                if (hasNext() && peek() != Token.MEMBER_NAME) {
+                    skipValue();
+                }
+            }
+            default -> {
+                peeked = null;
+                if (pendingText != null) {
+                    pendingText = null;
+                } else {
+                    skipElement();
+                }
+            }
+        }
+    }
+
+    private Token advance() throws IOException, XMLRPCException {
+        if (finished) {
+            return Token.END_RESPONSE;
+        }
+        while (true) {
+            var event = next();
+            if (event == END_DOCUMENT) {
+                if (depth != 0) {
+                    throw new XMLRPCException("Unexpected end of response");
+                }
+                finished = true;
+                return Token.END_RESPONSE;
+            } else if (event == START_ELEMENT) {
+                var name = reader.getLocalName();
+                switch (stack[depth]) {
+                    case STRUCT -> {
+                        if ("name".equals(name)) {
+                            return Token.MEMBER_NAME;
+                        } else if ("value".equals(name)) {
+                            return enterValue();
+                        } else if (!"member".equals(name)) {
+                            skipElement();
+                        }
+                    }
+                    case ARRAY -> {
+                        if ("value".equals(name)) {
+                            return enterValue();
+                        } else if (!"data".equals(name)) {
+                            skipElement();
+                        }
+                    }
+                    default -> {
+                        if ("fault".equals(name)) {
+                            fault = true;
+                        } else if ("methodName".equals(name)) {
+                            methodName = elementText().trim();
+                        } else if ("value".equals(name)) {
+                            var token = enterValue();
+                            if (fault) {
+                                peeked = token;
+                                throw XMLRPCResult.fault(readValue());
+                            }
+                            return token;
+                        }
+                    }
+                }
+            } else if (event == END_ELEMENT) {
+                var name = reader.getLocalName();
+                if (stack[depth] == STRUCT && "struct".equals(name)) {
+                    return Token.END_STRUCT;
+                } else if (stack[depth] == ARRAY && "array".equals(name)) {
+                    return Token.END_ARRAY;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds type of the value after &lt;value&gt; element. Value without type element is a string.
+     */
+    private Token enterValue() throws IOException, XMLRPCException {
+        StringBuilder text = null;
+        while (true) {
+            var event = next();
+            if (event == START_ELEMENT) {
+                tag = name();
+                return switch (tag) {
+                    case "struct" -> Token.BEGIN_STRUCT;
+                    case "array" -> Token.BEGIN_ARRAY;
+                    case "string" -> Token.STRING;
+                    case "int", "i4" -> Token.INT;
+                    case "i8" -> Token.LONG;
+                    case "double" -> Token.DOUBLE;
+                    case "boolean" -> Token.BOOLEAN;
+                    case "base64" -> Token.BASE64;
+                    case "dateTime.iso8601" -> Token.DATE_TIME;
+                    default -> Token.CUSTOM;
+                };
+            } else if (event == END_ELEMENT) {
+                tag = "string";
+                pendingText = text == null ? "" : text.toString();
+                return Token.STRING;
+            } else if ((event == CHARACTERS || event == CDATA) && !reader.isWhiteSpace()) {
+                if (text == null) {
+                    text = new StringBuilder();
+                }
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+    }
+
+    /**
+     * Parses integer directly from parser buffer.
+     */
+    private long parseInteger(long min, long max) throws IOException, XMLRPCException {
+        long value = 0;
+        var negative = false;
+        var digits = 0;
+        var trailing = false;
+        int event;
+        while ((event = next()) != END_ELEMENT) {
+            if (event != CHARACTERS && event != CDATA && event != SPACE) {
+                throw new XMLRPCException("Unexpected content of " + tag + " value");
+            }
+            var chars = reader.getTextCharacters();
+            var end = reader.getTextStart() + reader.getTextLength();
+            for (int i = reader.getTextStart(); i < end; i++) {
+                var c = chars[i];
+                if (Character.isWhitespace(c)) {
+                    trailing = digits > 0;
+                } else if (trailing) {
+                    throw new NumberFormatException("Invalid " + tag + " value");
+                } else if (digits == 0 && !negative && (c == '-' || c == '+')) {
+                    negative = c == '-';
+                } else if (c >= '0' && c <= '9') {
+                    // accumulate negative value to cover Long.MIN_VALUE
+                    try {
+                        value = Math.subtractExact(Math.multiplyExact(value, 10), c - '0');
+                    } catch (ArithmeticException ex) {
+                        throw new NumberFormatException("Value of " + tag + " is out of range");
+                    }
+                    digits++;
+                } else {
+                    throw new NumberFormatException("Invalid " + tag + " value");
+                }
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Empty " + tag + " value");
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new NumberFormatException("Value of " + tag + " is out of range");
+            }
+            value = -value;
+        }
+        if (value < min || value > max) {
+            throw new NumberFormatException("Value of " + tag + " is out of range");
+        }
+        return value;
+    }
+
+    private Object scalar(String valueTag, String text) throws XMLRPCException {
+        try {
+            return XMLRPCResult.parseScalar(valueTag, text, tz, codecs);
+        } catch (ParseException ex) {
+            throw new XMLRPCException("Invalid " + valueTag + " value", ex);
+        }
+    }
+
+    private void expect(Token token) throws IOException, XMLRPCException {
+        check(token);
+        peeked = null;
+    }
+
+    private void check(Token token) throws IOException, XMLRPCException {
+        var next = peek();
+        if (next != token) {
+            throw new IllegalStateException("Expected " + token + " but was " + next);
+        }
+    }
+
+    private static void checkScalar(Token token) {
+        switch (token) {
+            case BEGIN_STRUCT, END_STRUCT, MEMBER_NAME, BEGIN_ARRAY, END_ARRAY, END_RESPONSE ->
+                    throw new IllegalStateException("Expected scalar value but was " + token);
+            default -> {
+            }
+        }
+    }
+
+    private void push(int context) {
+        if (++depth == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[depth] = context;
+    }
+
+    private void skipElement() throws IOException, XMLRPCException {
+        int level = 1;
+        while (level > 0) {
+            var event = next();
+            if (event == START_ELEMENT) {
+                level++;
+            } else if (event == END_ELEMENT) {
+                level--;
+            }
+        }
+    }
+
+    private String elementText() throws IOException, XMLRPCException {
+        try {
+            return reader.getElementText();
+        } catch (XMLStreamException ex) {
+            throw error(ex);
+        }
+    }
+
+    private int next() throws IOException, XMLRPCException {
+        int event;
+        try {
+            event = reader.next();
+        } catch (XMLStreamException ex) {
+            throw error(ex);
+        }
+        if (limits != ResponseLimits.NONE) {
+            checkLimits(event);
+        }
+        return event;
+    }
+
+    /**
+     * Counts values including skipped ones, so that limits do not depend on the way response is consumed.
+     */
+    private void checkLimits(int event) throws XMLRPCLimitException {
+        if (event == START_ELEMENT && "value".equals(reader.getLocalName())) {
+            if (++valueCount > limits.maxElements()) {
+                throw new XMLRPCLimitException("Response exceeds limit of " + limits.maxElements() + " elements");
+            }
+            if (++valueDepth > limits.maxDepth()) {
+                throw new XMLRPCLimitException("Response exceeds nesting depth of " + limits.maxDepth());
+            }
+        } else if (event == END_ELEMENT && "value".equals(reader.getLocalName())) {
+            valueDepth--;
+        }
+    }
+
+    private String name() {
+        var prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+    }
+
+    private static XMLRPCException error(XMLStreamException ex) throws IOException {
+        if (ex.getNestedException() instanceof IOException ioException) {
+            throw ioException;
+        }
+        return new XMLRPCException("XML parser error", ex);
+    }
+
+    private static XMLInputFactory newFactory() {
+        var factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
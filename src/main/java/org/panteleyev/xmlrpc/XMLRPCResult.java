@@ -10,6 +10,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
@@ -23,6 +24,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * This class provides wrapper for result of XMLRPC call.
@@ -35,30 +38,74 @@ public class XMLRPCResult {
     private static final String DATA = "data";
     private static final String PARAM = "param";
 
+    // Built-in factory avoids service lookup, builders are reset and reused by each thread
+    private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newDefaultInstance();
+    private static final ThreadLocal<DocumentBuilder> BUILDER = ThreadLocal.withInitial(XMLRPCResult::newBuilder);
+    // Virtual threads are not reused, they take builders from the shared pool
+    private static final BlockingQueue<DocumentBuilder> POOL = new ArrayBlockingQueue<>(64);
+
     private final TimeZone tz;
+    private final XMLRPCCodecs codecs;
 
     private final List<Object> values = new ArrayList<>();
+    private volatile StructuralHash hash;
 
     XMLRPCResult() {
         // for unit testing purposes only
-        tz = TimeZone.getTimeZone("GMT");
+        this(TimeZone.getTimeZone("GMT"));
     }
 
     XMLRPCResult(TimeZone tz) {
         // for unit testing purposes only
-        this.tz = tz;
+        this(tz, XMLRPCCodecs.DEFAULT);
     }
 
-    XMLRPCResult(InputStream in, TimeZone tz) throws IOException, XMLRPCException {
+    XMLRPCResult(TimeZone tz, XMLRPCCodecs codecs) {
         this.tz = tz;
+        this.codecs = codecs;
+    }
+
+    XMLRPCResult(TimeZone tz, XMLRPCCodecs codecs, List<?> values) {
+        this(tz, codecs);
+        this.values.addAll(values);
+    }
+
+    XMLRPCResult(InputStream in, TimeZone tz, XMLRPCCodecs codecs) throws IOException, XMLRPCException {
+        this(tz, codecs);
 
-        var factory = DocumentBuilderFactory.newInstance();
+        var virtual = Platform.isVirtualThread();
+        var builder = virtual ? pooledBuilder() : BUILDER.get();
         try {
-            var builder = factory.newDocumentBuilder();
             var doc = builder.parse(in);
             parse(doc);
-        } catch (ParserConfigurationException | ParseException | SAXException ex) {
+        } catch (ParseException | SAXException ex) {
             throw new XMLRPCException("XML parser error", ex);
+        } finally {
+            builder.reset();
+            if (virtual) {
+                POOL.offer(builder);
+            }
+        }
+    }
+
+    XMLRPCResult(InputStream in, TimeZone tz, XMLRPCCodecs codecs, Projection projection)
+            throws IOException, XMLRPCException {
+        this(tz, codecs);
+        values.addAll(new ProjectionParser(new XMLRPCReader(in, tz, codecs), projection).parse());
+    }
+
+    private static DocumentBuilder pooledBuilder() {
+        var builder = POOL.poll();
+        return builder != null ? builder : newBuilder();
+    }
+
+    private static DocumentBuilder newBuilder() {
+        synchronized (FACTORY) {
+            try {
+                return FACTORY.newDocumentBuilder();
+            } catch (ParserConfigurationException ex) {
+                throw new IllegalStateException(ex);
+            }
         }
     }
 
@@ -70,14 +117,7 @@ public class XMLRPCResult {
         if (faults.getLength() != 0) {
             var values = ((Element) faults.item(0)).getElementsByTagName(VALUE);
             if (values.getLength() != 0) {
-                Object value = parseValue(values.item(0));
-                if (value instanceof HashMap<?, ?> hashMap) {
-                    int faultCode = (Integer) hashMap.get("faultCode");
-                    var faultString = (String) hashMap.get("faultString");
-                    throw new XMLRPCException(faultCode, faultString);
-                } else {
-                    throw new XMLRPCException("Undefined fault response");
-                }
+                throw fault(parseValue(values.item(0)));
             }
         } else {
             var params = root.getElementsByTagName(PARAM);
@@ -89,7 +129,7 @@ public class XMLRPCResult {
                     if (VALUE.equals(valueNode.getNodeName())) {
                         var v = parseValue(valueNode);
                         if (v != null) {
-                            values.add(parseValue(valueNode));
+                            values.add(v);
                         }
                         break;
                     }
@@ -100,44 +140,79 @@ public class XMLRPCResult {
     }
 
     private Object parseValue(Node valueNode) throws ParseException {
+        var typed = false;
         var children = valueNode.getChildNodes();
         for (int i = 0; i < children.getLength(); i++) {
             var firstChild = children.item(i);
+            if (firstChild.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            typed = true;
             var childName = firstChild.getNodeName();
 
-            var text = firstChild.getTextContent();
-
             switch (childName) {
-                case "string" -> {
-                    return text;
-                }
-                case "int", "i4" -> {
-                    return Integer.parseInt(text);
-                }
-                case "double" -> {
-                    return Double.parseDouble(text);
-                }
-                case "boolean" -> {
-                    return ("1".equals(text)) ? Boolean.TRUE : Boolean.FALSE;
-                }
-                case "base64" -> {
-                    return Base64.getDecoder().decode(text);
-                }
                 case "struct" -> {
                     return parseStruct(firstChild);
                 }
                 case "array" -> {
                     return parseArray(firstChild);
                 }
-                case "dateTime.iso8601" -> {
-                    var f = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
-                    f.setTimeZone(tz);
-                    return f.parse(text);
+                default -> {
+                    var value = parseScalar(childName, firstChild.getTextContent(), tz, codecs);
+                    if (value != null) {
+                        return value;
+                    }
                 }
             }
         }
 
-        return null;
+        // value without type element is a string
+        return typed ? null : valueNode.getTextContent();
+    }
+
+    /**
+     * Converts text of scalar element, returns null if element is not known.
+     */
+    static Object parseScalar(String tag, String text, TimeZone tz, XMLRPCCodecs codecs) throws ParseException {
+        switch (tag) {
+            case "string" -> {
+                return text;
+            }
+            case "int", "i4" -> {
+                return Integer.parseInt(text);
+            }
+            case "i8" -> {
+                return Long.parseLong(text);
+            }
+            case "double" -> {
+                return Double.parseDouble(text);
+            }
+            case "boolean" -> {
+                return ("1".equals(text)) ? Boolean.TRUE : Boolean.FALSE;
+            }
+            case "base64" -> {
+                return Base64.getDecoder().decode(text);
+            }
+            case "dateTime.iso8601" -> {
+                var f = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
+                f.setTimeZone(tz);
+                return f.parse(text);
+            }
+            default -> {
+                var decoder = codecs.tagDecoder(tag);
+                return decoder == null ? null : decoder.apply(text);
+            }
+        }
+    }
+
+    static XMLRPCException fault(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            int faultCode = (Integer) map.get("faultCode");
+            var faultString = (String) map.get("faultString");
+            return new XMLRPCException(faultCode, faultString);
+        } else {
+            return new XMLRPCException("Undefined fault response");
+        }
     }
 
     Map<String, Object> parseStruct(Node valueNode) throws ParseException {
@@ -316,6 +391,20 @@ public class XMLRPCResult {
         }
     }
 
+    /**
+     * Returns result value converted to the specified type.
+     * Conversion is performed by {@link XMLRPCCodecs} of the service, records are created from structs.
+     *
+     * @param index index of requested value
+     * @param type  type of requested value
+     * @param <T>   type of requested value
+     * @return value of the specified type
+     * @throws IllegalStateException in case of requested value cannot be converted
+     */
+    public <T> T getValue(int index, Class<T> type) {
+        return codecs.decode(values.get(index), type, tz);
+    }
+
     /**
      * Returns all result values.
      *
@@ -325,6 +414,45 @@ public class XMLRPCResult {
         return values;
     }
 
+    /**
+     * Returns structural hash of result values. Values are hashed as array, so hash of each value is the
+     * corresponding element. Hash is computed on the first call unless service computes it before returning
+     * the result, see {@link XMLRPCService.Builder#structuralHashing(boolean)}.
+     *
+     * @return structural hash
+     */
+    public StructuralHash getHash() {
+        var h = hash;
+        if (h == null) {
+            h = StructuralHash.of(values);
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Checks if values of this result are the same as values of the previous result by comparing their
+     * structural hashes.
+     *
+     * @param previous previous result
+     * @return {@code true} if values are the same
+     */
+    public boolean isSameAs(XMLRPCResult previous) {
+        return getHash().getValue() == previous.getHash().getValue();
+    }
+
+    /**
+     * Returns paths of values that changed since the previous result. Paths start with index of the result
+     * value, for example {@code [0].items[3].status}, see {@link StructuralHash#diff(StructuralHash,
+     * StructuralHash)}.
+     *
+     * @param previous previous result
+     * @return paths of changed values, empty list if values are the same
+     */
+    public List<String> diff(XMLRPCResult previous) {
+        return StructuralHash.diff(previous.getHash(), getHash());
+    }
+
     private static List<Element> getChildElementsByName(Node node, String name) {
         var nodes = node.getChildNodes();
         var result = new ArrayList<Element>(nodes.getLength());
@@ -0,0 +1,649 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * XMLRPC server. Connections are served by a single event loop thread using non-blocking sockets, handlers
+ * are called by worker threads. Many idle or slow connections do not occupy worker threads, connections that
+ * stop sending requests or reading responses are closed after idle timeout.
+ * <p>Requests are parsed while they are received and decoded by {@link XMLRPCReader}, parameters have the
+ * same types as results of {@link XMLRPCService} calls. Calls of {@code system.multicall} are executed by
+ * workers in parallel, results are returned in order of calls.</p>
+ * <pre>
+ * try (var server = XMLRPCServer.builder(8080)
+ *         .handler("examples.getStateName", params -&gt; states.get(params.getIntegerValue(0)))
+ *         .build()
+ *         .start()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class XMLRPCServer implements AutoCloseable {
+    /**
+     * Fault code of request that cannot be parsed.
+     */
+    public static final int PARSE_ERROR = -32700;
+    /**
+     * Fault code of request that does not conform to XMLRPC.
+     */
+    public static final int INVALID_REQUEST = -32600;
+    /**
+     * Fault code of call of unknown method.
+     */
+    public static final int METHOD_NOT_FOUND = -32601;
+    /**
+     * Fault code of call with invalid parameters.
+     */
+    public static final int INVALID_PARAMS = -32602;
+    /**
+     * Fault code of unexpected handler failure.
+     */
+    public static final int INTERNAL_ERROR = -32603;
+
+    private static final String MULTICALL = "system.multicall";
+    private static final byte[] RESPONSE_HEADER =
+            "<?xml version=\"1.0\"?><methodResponse><params>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE_FOOTER = "</params></methodResponse>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FAULT_HEADER =
+            "<?xml version=\"1.0\"?><methodResponse><fault><value>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FAULT_FOOTER = "</value></fault></methodResponse>".getBytes(StandardCharsets.US_ASCII);
+
+    private final InetSocketAddress address;
+    private final Map<String, XMLRPCHandler> handlers;
+    private final TimeZone tzIn;
+    private final TimeZone tzOut;
+    private final XMLRPCCodecs codecs;
+    private final ResponseLimits limits;
+    private final Executor workers;
+    private final ExecutorService ownWorkers;
+    private final long idleTimeout;
+
+    private final Queue<ServerConnection> completed = new ConcurrentLinkedQueue<>();
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread loop;
+    private volatile boolean running;
+
+    private XMLRPCServer(Builder builder) {
+        this.address = builder.address;
+        this.handlers = Map.copyOf(builder.handlers);
+        this.tzIn = builder.tzIn;
+        this.tzOut = builder.tzOut;
+        this.codecs = builder.codecs;
+        this.limits = builder.limits;
+        this.idleTimeout = builder.idleTimeout.toNanos();
+        if (builder.workers == null) {
+            this.ownWorkers = Executors.newFixedThreadPool(builder.workerThreads, new WorkerFactory());
+            this.workers = ownWorkers;
+        } else {
+            this.ownWorkers = null;
+            this.workers = builder.workers;
+        }
+    }
+
+    /**
+     * Creates builder of server that listens on all interfaces.
+     *
+     * @param port port, 0 to use any free port
+     * @return builder
+     */
+    public static Builder builder(int port) {
+        return new Builder(new InetSocketAddress(port));
+    }
+
+    /**
+     * Creates builder of server that listens on the specified address.
+     *
+     * @param address address
+     * @return builder
+     */
+    public static Builder builder(InetSocketAddress address) {
+        return new Builder(address);
+    }
+
+    /**
+     * Binds server socket and starts event loop.
+     *
+     * @return this server
+     * @throws IOException if server socket cannot be bound
+     */
+    public synchronized XMLRPCServer start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server is already started");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        loop = new Thread(this::loop, "xmlrpc-server-" + getPort());
+        loop.start();
+        return this;
+    }
+
+    /**
+     * Returns port the server is listening on.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return serverChannel == null ? address.getPort() : serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops event loop and closes all connections. Calls in progress are not waited for.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = loop;
+        }
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (ownWorkers != null) {
+            ownWorkers.shutdownNow();
+        }
+    }
+
+    private void loop() {
+        // idle connections are checked a few times per timeout
+        var sweepInterval = Math.max(1, Math.min(idleTimeout / 4_000_000, 1000));
+        var nextSweep = System.nanoTime() + idleTimeout;
+        try {
+            while (running) {
+                selector.select(sweepInterval);
+                ServerConnection connection;
+                while ((connection = completed.poll()) != null) {
+                    try {
+                        write(connection);
+                    } catch (RuntimeException ex) {
+                        connection.close();
+                    }
+                }
+
+                var keys = selector.selectedKeys();
+                for (var key : keys) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.attachment() instanceof ServerConnection c) {
+                        // failure of one connection must not stop the loop
+                        try {
+                            if (key.isWritable()) {
+                                write(c);
+                            } else if (key.isReadable()) {
+                                read(c);
+                            }
+                        } catch (RuntimeException ex) {
+                            c.close();
+                        }
+                    }
+                }
+                keys.clear();
+
+                var now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    closeIdle(now);
+                    nextSweep = now + sweepInterval * 1_000_000;
+                }
+            }
+        } catch (IOException ex) {
+            // selector or server channel failed
+        } finally {
+            running = false;
+            for (var key : selector.keys()) {
+                if (key.attachment() instanceof ServerConnection c) {
+                    c.close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }
+    }
+
+    private void closeIdle(long now) {
+        for (var key : selector.keys()) {
+            if (key.attachment() instanceof ServerConnection c && c.isIdle(now, idleTimeout)) {
+                c.close();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            var connection = new ServerConnection(channel, Math.min(limits.maxBytes(), Integer.MAX_VALUE - 8));
+            connection.key(channel.register(selector, SelectionKey.OP_READ, connection));
+        }
+    }
+
+    private void read(ServerConnection connection) {
+        try {
+            if (!connection.read()) {
+                connection.close();
+                return;
+            }
+        } catch (IOException ex) {
+            connection.close();
+            return;
+        }
+        process(connection);
+    }
+
+    private void process(ServerConnection connection) {
+        if (connection.isBusy()) {
+            return;
+        }
+
+        ServerConnection.Request request;
+        try {
+            request = connection.parse();
+        } catch (ServerConnection.HttpException ex) {
+            send(connection, ex.status(), ex.getMessage(), true);
+            return;
+        } catch (IOException ex) {
+            connection.close();
+            return;
+        }
+        if (request == null) {
+            return;
+        }
+
+        // next request of the connection is read after response is written
+        connection.busy(true);
+        connection.key().interestOps(0);
+        if (!"POST".equals(request.method())) {
+            send(connection, 405, "Only POST requests are supported", !request.keepAlive());
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                CompletableFuture<byte[]> response;
+                try {
+                    response = handle(request);
+                } catch (RuntimeException ex) {
+                    // connection must get a response whatever happens
+                    response = CompletableFuture.failedFuture(ex);
+                }
+                response.whenComplete((body, error) -> {
+                    var close = !request.keepAlive();
+                    var xml = error == null ? body : fault(INTERNAL_ERROR, "Internal error");
+                    complete(connection, http(200, "text/xml", xml, close), close);
+                });
+            });
+        } catch (RejectedExecutionException ex) {
+            send(connection, 503, "Server is overloaded", true);
+        }
+    }
+
+    private void send(ServerConnection connection, int status, String message, boolean close) {
+        var body = message.getBytes(StandardCharsets.UTF_8);
+        connection.busy(true);
+        connection.respond(http(status, "text/plain", body, close), close);
+        write(connection);
+    }
+
+    /**
+     * Passes response from worker thread to the event loop.
+     */
+    private void complete(ServerConnection connection, byte[] response, boolean close) {
+        connection.respond(response, close);
+        completed.add(connection);
+        selector.wakeup();
+    }
+
+    private void write(ServerConnection connection) {
+        if (!connection.key().isValid()) {
+            // connection was closed while call was in progress
+            return;
+        }
+        try {
+            if (!connection.flush()) {
+                connection.key().interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        } catch (IOException ex) {
+            connection.close();
+            return;
+        }
+
+        if (connection.closeAfterWrite()) {
+            connection.close();
+            return;
+        }
+        connection.busy(false);
+        connection.key().interestOps(SelectionKey.OP_READ);
+        // pipelined request may be already received
+        process(connection);
+    }
+
+    private CompletableFuture<byte[]> handle(ServerConnection.Request request) {
+        String method;
+        List<Object> parameters;
+        try {
+            var reader = new XMLRPCReader(new ByteArrayInputStream(request.body(), 0, request.length()),
+                    tzIn, codecs, limits);
+            method = reader.methodName();
+            parameters = reader.readValues();
+        } catch (XMLRPCLimitException ex) {
+            return CompletableFuture.completedFuture(fault(INVALID_REQUEST, ex.getMessage()));
+        } catch (IOException | XMLRPCException | RuntimeException ex) {
+            return CompletableFuture.completedFuture(fault(PARSE_ERROR, "Cannot parse request"));
+        }
+        if (method == null || method.isEmpty()) {
+            return CompletableFuture.completedFuture(fault(INVALID_REQUEST, "Method name is missing"));
+        }
+
+        if (MULTICALL.equals(method)) {
+            return multicall(parameters);
+        }
+        try {
+            return CompletableFuture.completedFuture(response(invoke(method, parameters)));
+        } catch (XMLRPCException ex) {
+            return CompletableFuture.completedFuture(fault(ex.getFaultCode(), ex.getMessage()));
+        } catch (RuntimeException ex) {
+            // result cannot be encoded
+            return CompletableFuture.completedFuture(fault(INTERNAL_ERROR, "Internal error"));
+        }
+    }
+
+    private CompletableFuture<byte[]> multicall(List<Object> parameters) {
+        if (parameters.size() != 1 || !(parameters.get(0) instanceof List<?> calls)) {
+            return CompletableFuture.completedFuture(fault(INVALID_PARAMS, "Array of calls expected"));
+        }
+
+        // handlers run in parallel, worker threads are not blocked while calls complete
+        var futures = new ArrayList<CompletableFuture<Object>>(calls.size());
+        try {
+            for (var call : calls) {
+                futures.add(CompletableFuture.supplyAsync(() -> subcall(call), workers));
+            }
+        } catch (RejectedExecutionException ex) {
+            // calls that were already submitted complete on their own
+            return CompletableFuture.completedFuture(fault(INTERNAL_ERROR, "Server is overloaded"));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            var results = new ArrayList<>(futures.size());
+            for (var future : futures) {
+                results.add(future.join());
+            }
+            return response(results);
+        });
+    }
+
+    /**
+     * Executes one call of multicall, returns array with encoded result or fault struct.
+     */
+    private Object subcall(Object call) {
+        if (!(call instanceof Map<?, ?> struct)
+                || !(struct.get("methodName") instanceof String method)
+                || !(struct.get("params") instanceof List<?> parameters)) {
+            return faultStruct(INVALID_PARAMS, "Call must contain methodName and params");
+        }
+        if (MULTICALL.equals(method)) {
+            return faultStruct(INVALID_REQUEST, "Recursive system.multicall is not allowed");
+        }
+        try {
+            var result = invoke(method, new ArrayList<>(parameters));
+            return List.of(EncodedValue.of(result, tzOut, codecs));
+        } catch (XMLRPCException ex) {
+            return faultStruct(ex.getFaultCode(), ex.getMessage());
+        } catch (RuntimeException ex) {
+            return faultStruct(INTERNAL_ERROR, "Internal error");
+        }
+    }
+
+    private Object invoke(String method, List<Object> parameters) throws XMLRPCException {
+        var handler = handlers.get(method);
+        if (handler == null) {
+            throw new XMLRPCException(METHOD_NOT_FOUND, "Method not found: " + method);
+        }
+        try {
+            return handler.handle(new XMLRPCResult(tzIn, codecs, parameters));
+        } catch (XMLRPCException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            throw new XMLRPCException(INTERNAL_ERROR, "Internal error");
+        }
+    }
+
+    private byte[] response(Object value) {
+        var params = new XMLRPCParameters(tzOut, codecs).appendParameter(value);
+        return concat(RESPONSE_HEADER, params.getParametersBytes(), RESPONSE_FOOTER);
+    }
+
+    private byte[] fault(int code, String message) {
+        var params = new XMLRPCParameters(tzOut, codecs);
+        params.appendValue(faultStruct(code, message));
+        return concat(FAULT_HEADER, params.getParametersBytes(), FAULT_FOOTER);
+    }
+
+    private static Map<String, Object> faultStruct(int code, String message) {
+        var struct = new LinkedHashMap<String, Object>();
+        struct.put("faultCode", code);
+        struct.put("faultString", message == null ? "" : message);
+        return struct;
+    }
+
+    private static byte[] http(int status, String contentType, byte[] body, boolean close) {
+        var reason = switch (status) {
+            case 200 -> "OK";
+            case 400 -> "Bad Request";
+            case 405 -> "Method Not Allowed";
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 431 -> "Request Header Fields Too Large";
+            case 503 -> "Service Unavailable";
+            default -> "Error";
+        };
+        var header = ("HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + (close ? "Connection: close\r\n" : "")
+                + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        return concat(header, body);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        var length = 0;
+        for (var part : parts) {
+            length += part.length;
+        }
+        var result = Arrays.copyOf(parts[0], length);
+        var offset = parts[0].length;
+        for (int i = 1; i < parts.length; i++) {
+            System.arraycopy(parts[i], 0, result, offset, parts[i].length);
+            offset += parts[i].length;
+        }
+        return result;
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            var thread = new Thread(r, "xmlrpc-server-worker-" + COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * This class builds {@link XMLRPCServer} objects.
+     */
+    public static final class Builder {
+        private final InetSocketAddress address;
+        private final Map<String, XMLRPCHandler> handlers = new HashMap<>();
+        private TimeZone tzIn = TimeZone.getTimeZone("GMT");
+        private TimeZone tzOut = TimeZone.getTimeZone("GMT");
+        private XMLRPCCodecs codecs = XMLRPCCodecs.DEFAULT;
+        private ResponseLimits limits = ResponseLimits.builder().maxBytes(16 * 1024 * 1024).build();
+        private Executor workers;
+        private int workerThreads = Runtime.getRuntime().availableProcessors();
+        private Duration idleTimeout = Duration.ofSeconds(60);
+
+        private Builder(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Registers handler of the method. Method {@code system.multicall} is provided by the server.
+         *
+         * @param method  method name
+         * @param handler handler
+         * @return this builder
+         */
+        public Builder handler(String method, XMLRPCHandler handler) {
+            if (MULTICALL.equals(method)) {
+                throw new IllegalArgumentException(MULTICALL + " cannot be overridden");
+            }
+            handlers.put(method, handler);
+            return this;
+        }
+
+        /**
+         * Sets time zone from which Date parameter values must be parsed. Default is GMT.
+         *
+         * @param tzIn time zone
+         * @return this builder
+         */
+        public Builder timeZoneIn(TimeZone tzIn) {
+            this.tzIn = tzIn;
+            return this;
+        }
+
+        /**
+         * Sets time zone to which Date result values must be represented. Default is GMT.
+         *
+         * @param tzOut time zone
+         * @return this builder
+         */
+        public Builder timeZoneOut(TimeZone tzOut) {
+            this.tzOut = tzOut;
+            return this;
+        }
+
+        /**
+         * Sets conversion rules for custom types.
+         *
+         * @param codecs codecs
+         * @return this builder
+         */
+        public Builder codecs(XMLRPCCodecs codecs) {
+            this.codecs = codecs;
+            return this;
+        }
+
+        /**
+         * Sets limits of a single request. Larger requests are rejected with HTTP status 413 before their body
+         * is received, requests that exceed depth or element limits are answered with a fault. Default is
+         * 16 MB without depth and element limits.
+         *
+         * @param limits limits definition
+         * @return this builder
+         */
+        public Builder requestLimits(ResponseLimits limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * Sets executor that runs handlers. Executor is not shut down when server is closed. By default server
+         * creates fixed pool of daemon threads.
+         *
+         * @param workers executor
+         * @return this builder
+         */
+        public Builder workers(Executor workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Sets number of threads of the default worker pool. Default is the number of available processors.
+         *
+         * @param workerThreads number of threads
+         * @return this builder
+         */
+        public Builder workerThreads(int workerThreads) {
+            if (workerThreads < 1) {
+                throw new IllegalArgumentException("Number of threads must be positive");
+            }
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * Sets time after which connection that neither sends request bytes nor reads response is closed.
+         * Connections waiting for their handlers are not closed. Default is 60 seconds.
+         *
+         * @param idleTimeout idle timeout
+         * @return this builder
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+                throw new IllegalArgumentException("Idle timeout must be positive");
+            }
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Builds XMLRPCServer object. Server is started by {@link XMLRPCServer#start()}.
+         *
+         * @return XMLRPCServer object
+         */
+        public XMLRPCServer build() {
+            return new XMLRPCServer(this);
+        }
+    }
+}
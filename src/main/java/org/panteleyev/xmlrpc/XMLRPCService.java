@@ -4,12 +4,34 @@
  */
 package org.panteleyev.xmlrpc;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * This class provide an entry point for XMLRPC service calls.
@@ -19,9 +41,32 @@ import java.util.TimeZone;
 public class XMLRPCService {
     private static final String GMT = "GMT";
 
-    private final String url;
+    private final List<Endpoint> endpoints;
+    private final LoadBalancing loadBalancing;
+    private final int ejectionThreshold;
+    private final Duration ejectionTime;
     private final TimeZone tzIn;
     private final TimeZone tzOut;
+    private final XMLRPCCodecs codecs;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final Duration callTimeout;
+    private final Executor executor;
+    private final Map<String, CallPolicy> policies;
+    private final Map<String, ResultCache> caches;
+    private final ResponseLimits limits;
+    private final MemoryBudget budget;
+    private final long parallelThreshold;
+    private final ForkJoinPool parallelPool;
+    private final TrafficRecorder recorder;
+    private final boolean binaryEncoding;
+    private final SSLSocketFactory sslSocketFactory;
+    private final ResponseParser<XMLRPCResult> resultParser;
+    // results of cached methods are hashed on demand
+    private final ResponseParser<XMLRPCResult> cachedResultParser = new ResultParser(false);
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final RetryBudget retryBudget;
+    private final AutoBatcher batcher;
 
     /**
      * Creates XMLRPCService object with default time zone settings.
@@ -50,9 +95,75 @@ public class XMLRPCService {
      * @param tzOut time zone to which Date parameter values must be represented
      */
     public XMLRPCService(String url, TimeZone tzIn, TimeZone tzOut) {
-        this.url = url;
-        this.tzIn = tzIn;
-        this.tzOut = tzOut;
+        this(url, tzIn, tzOut, XMLRPCCodecs.DEFAULT);
+    }
+
+    /**
+     * Creates XMLRPCService object.
+     *
+     * @param url    an absolute URL of the target service
+     * @param tzIn   time zone from which Date result values must be parsed
+     * @param tzOut  time zone to which Date parameter values must be represented
+     * @param codecs conversion rules for custom types
+     */
+    public XMLRPCService(String url, TimeZone tzIn, TimeZone tzOut, XMLRPCCodecs codecs) {
+        this(builder(url).timeZoneIn(tzIn).timeZoneOut(tzOut).codecs(codecs));
+    }
+
+    private XMLRPCService(Builder builder) {
+        this.endpoints = builder.urls.stream()
+                .map(u -> new Endpoint(u, builder.concurrencyLimit))
+                .toList();
+        this.loadBalancing = builder.loadBalancing;
+        this.ejectionThreshold = builder.ejectionThreshold;
+        this.ejectionTime = builder.ejectionTime;
+        this.tzIn = builder.tzIn;
+        this.tzOut = builder.tzOut;
+        this.codecs = builder.codecs;
+        this.connectTimeout = toMillis(builder.connectTimeout);
+        this.readTimeout = toMillis(builder.readTimeout);
+        this.callTimeout = builder.callTimeout;
+        this.executor = builder.executor == null ? DefaultExecutor.INSTANCE : builder.executor;
+        this.policies = Map.copyOf(builder.policies);
+        this.caches = Map.copyOf(builder.caches);
+        this.limits = builder.limits;
+        this.budget = builder.budget;
+        this.parallelThreshold = builder.parallelThreshold;
+        this.parallelPool = builder.parallelPool;
+        this.recorder = builder.recorder;
+        this.binaryEncoding = builder.binaryEncoding;
+        // connections and TLS sessions are reused only with the same factory
+        this.sslSocketFactory = builder.sslContext == null ? null : builder.sslContext.getSocketFactory();
+        this.resultParser = new ResultParser(builder.structuralHashing);
+        this.retryBudget = new RetryBudget(builder.retryRatio, builder.retryTokens);
+        this.batcher = builder.batchWindow == null ? null :
+                new AutoBatcher(this, builder.batchWindow, builder.maxBatchSize, tzIn, tzOut, codecs);
+        if (builder.keepAliveInterval != null) {
+            KeepAliveTask.schedule(this, builder.keepAliveInterval, builder.keepAliveConnections);
+        }
+    }
+
+    /**
+     * Creates builder of XMLRPCService object.
+     *
+     * @param url an absolute URL of the target service
+     * @return builder
+     */
+    public static Builder builder(String url) {
+        return new Builder(List.of(url));
+    }
+
+    /**
+     * Creates builder of XMLRPCService object that balances calls between several endpoints.
+     *
+     * @param urls absolute URLs of the target service replicas
+     * @return builder
+     */
+    public static Builder builder(List<String> urls) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one URL must be specified");
+        }
+        return new Builder(List.copyOf(urls));
     }
 
     /**
@@ -66,44 +177,1175 @@ public class XMLRPCService {
      * @throws XMLRPCException in case of XMLRPC related error
      */
     public XMLRPCResult call(String method, Object... parameters) throws IOException, XMLRPCException {
-        HttpURLConnection conn = null;
-        var m = new XMLRPCMethod(method);
-        var server = new URL(url);
+        return call(defaultDeadline(), method, parameters);
+    }
+
+    /**
+     * Calls XMLRPC method with specified parameters. Call is aborted with {@link XMLRPCTimeoutException}
+     * if it is not completed by the specified deadline.
+     * This is a synchronous call.
+     *
+     * @param deadline   deadline of the call
+     * @param method     method name
+     * @param parameters method parameters
+     * @return result of the call
+     * @throws XMLRPCTimeoutException if deadline expires or timeout occurs
+     * @throws IOException            in case of network issue
+     * @throws XMLRPCException        in case of XMLRPC related error
+     */
+    public XMLRPCResult call(Deadline deadline, String method, Object... parameters)
+            throws IOException, XMLRPCException {
+        var cache = caches.get(method);
+        var streaming = XMLRPCParameters.isStreaming(parameters);
+        if (cache == null || streaming) {
+            return invoke(deadline, method, parameters, streaming);
+        }
+
+        var key = ResultCache.key(method, encode(parameters));
+        var cached = cache.get(key, tzIn, codecs);
+        if (cached != null) {
+            return cached;
+        }
+        var result = invoke(deadline, method, parameters, false);
+        cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Sends previously encoded request, for example {@link TrafficRecorder.Entry#request()} of captured traffic.
+     * Request is sent as is, bypassing call policies, caches and batching.
+     * This is a synchronous call.
+     *
+     * @param request encoded XMLRPC request
+     * @return result of the call
+     * @throws IOException     in case of network issue
+     * @throws XMLRPCException in case of XMLRPC related error
+     */
+    public XMLRPCResult replay(byte[] request) throws IOException, XMLRPCException {
+        return execute(new Exchange(defaultDeadline()), resultParser, new FixedBody(request));
+    }
+
+    private XMLRPCResult invoke(Deadline deadline, String method, Object[] parameters, boolean streaming)
+            throws IOException, XMLRPCException {
+        var policy = policies.get(method);
+        if (streaming) {
+            // one-shot sources cannot be replayed by policies or merged into batches
+            return execute(new Exchange(deadline), method, parameters, resultParser(method), true);
+        } else if (policy != null) {
+            return await(policyCall(policy, deadline, method, parameters));
+        } else if (batcher != null && batcher.accepts(method)) {
+            return await(batcher.submit(deadline, method, parameters));
+        } else {
+            return execute(new Exchange(deadline), method, parameters, resultParser(method), false);
+        }
+    }
+
+    /**
+     * Calls XMLRPC method and decodes only parts of the result selected by projection.
+     * Call policies and auto-batching are not applied to projected calls.
+     * This is a synchronous call.
+     *
+     * @param projection projection of the result
+     * @param method     method name
+     * @param parameters method parameters
+     * @return projected result of the call
+     * @throws IOException     in case of network issue
+     * @throws XMLRPCException in case of XMLRPC related error
+     */
+    public XMLRPCResult call(Projection projection, String method, Object... parameters)
+            throws IOException, XMLRPCException {
+        return call(defaultDeadline(), projection, method, parameters);
+    }
+
+    /**
+     * Calls XMLRPC method and decodes only parts of the result selected by projection.
+     * Call policies and auto-batching are not applied to projected calls.
+     * This is a synchronous call.
+     *
+     * @param deadline   deadline of the call
+     * @param projection projection of the result
+     * @param method     method name
+     * @param parameters method parameters
+     * @return projected result of the call
+     * @throws XMLRPCTimeoutException if deadline expires or timeout occurs
+     * @throws IOException            in case of network issue
+     * @throws XMLRPCException        in case of XMLRPC related error
+     */
+    public XMLRPCResult call(Deadline deadline, Projection projection, String method, Object... parameters)
+            throws IOException, XMLRPCException {
+        return execute(new Exchange(deadline), method, parameters, projectionParser(projection));
+    }
+
+    /**
+     * Calls XMLRPC method asynchronously and decodes only parts of the result selected by projection.
+     * Call policies and auto-batching are not applied to projected calls.
+     *
+     * @param deadline   deadline of the call
+     * @param projection projection of the result
+     * @param method     method name
+     * @param parameters method parameters
+     * @return future projected result of the call
+     */
+    public CompletableFuture<XMLRPCResult> callAsync(Deadline deadline, Projection projection, String method,
+                                                     Object... parameters) {
+        var parser = projectionParser(projection);
+        return submit(new Exchange(deadline), exchange -> execute(exchange, method, parameters, parser));
+    }
+
+    /**
+     * Calls XMLRPC method and passes response to the handler as a stream of tokens. Handler is called
+     * while the response is received, values not read by the handler are not created at all.
+     * Call policies and auto-batching are not applied to these calls.
+     * This is a synchronous call.
+     *
+     * @param handler    response handler
+     * @param method     method name
+     * @param parameters method parameters
+     * @param <T>        type of the handler result
+     * @return result of the handler
+     * @throws IOException     in case of network issue
+     * @throws XMLRPCException in case of XMLRPC related error
+     */
+    public <T> T call(ResponseHandler<T> handler, String method, Object... parameters)
+            throws IOException, XMLRPCException {
+        return call(defaultDeadline(), handler, method, parameters);
+    }
+
+    /**
+     * Calls XMLRPC method and passes response to the handler as a stream of tokens. Handler is called
+     * while the response is received, values not read by the handler are not created at all.
+     * Call policies and auto-batching are not applied to these calls.
+     * This is a synchronous call.
+     *
+     * @param deadline   deadline of the call
+     * @param handler    response handler
+     * @param method     method name
+     * @param parameters method parameters
+     * @param <T>        type of the handler result
+     * @return result of the handler
+     * @throws XMLRPCTimeoutException if deadline expires or timeout occurs
+     * @throws IOException            in case of network issue
+     * @throws XMLRPCException        in case of XMLRPC related error
+     */
+    public <T> T call(Deadline deadline, ResponseHandler<T> handler, String method, Object... parameters)
+            throws IOException, XMLRPCException {
+        return execute(new Exchange(deadline), method, parameters, handlerParser(handler));
+    }
+
+    /**
+     * Calls XMLRPC method asynchronously and passes response to the handler as a stream of tokens.
+     * Call policies and auto-batching are not applied to these calls.
+     *
+     * @param deadline   deadline of the call
+     * @param handler    response handler
+     * @param method     method name
+     * @param parameters method parameters
+     * @param <T>        type of the handler result
+     * @return future result of the handler
+     */
+    public <T> CompletableFuture<T> callAsync(Deadline deadline, ResponseHandler<T> handler, String method,
+                                              Object... parameters) {
+        var parser = handlerParser(handler);
+        return submit(new Exchange(deadline), exchange -> execute(exchange, method, parameters, parser));
+    }
+
+    /**
+     * Calls XMLRPC method with specified parameters asynchronously. Cancelling returned future closes
+     * connection of the call and frees its thread.
+     *
+     * @param deadline   deadline of the call
+     * @param method     method name
+     * @param parameters method parameters
+     * @return future result of the call
+     */
+    public CompletableFuture<XMLRPCResult> callAsync(Deadline deadline, String method, Object... parameters) {
+        var cache = caches.get(method);
+        var streaming = XMLRPCParameters.isStreaming(parameters);
+        if (cache == null || streaming) {
+            return invokeAsync(deadline, method, parameters, streaming);
+        }
+
+        var key = ResultCache.key(method, encode(parameters));
+        var cached = cache.get(key, tzIn, codecs);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        var future = invokeAsync(deadline, method, parameters, false);
+        future.thenAccept(result -> cache.put(key, result));
+        return future;
+    }
+
+    private CompletableFuture<XMLRPCResult> invokeAsync(Deadline deadline, String method, Object[] parameters,
+                                                        boolean streaming) {
+        var policy = policies.get(method);
+        if (streaming) {
+            // one-shot sources cannot be replayed by policies or merged into batches
+            return submit(new Exchange(deadline),
+                    exchange -> execute(exchange, method, parameters, resultParser(method), true));
+        } else if (policy != null) {
+            return policyCall(policy, deadline, method, parameters);
+        } else if (batcher != null && batcher.accepts(method)) {
+            return batcher.submit(deadline, method, parameters);
+        } else {
+            return submit(deadline, method, parameters);
+        }
+    }
 
+    /**
+     * Submits call without streaming parameters, used by call policies and auto-batching.
+     */
+    CompletableFuture<XMLRPCResult> submit(Deadline deadline, String method, Object[] parameters) {
+        return submit(new Exchange(deadline),
+                exchange -> execute(exchange, method, parameters, resultParser(method), false));
+    }
+
+    CompletableFuture<XMLRPCResult> submit(Deadline deadline, String method, XMLRPCParameters parameters) {
+        return submit(new Exchange(deadline),
+                exchange -> execute(exchange, method, parameters, resultParser(method)));
+    }
+
+    private <T> CompletableFuture<T> submit(Exchange exchange, ExchangeTask<T> task) {
+        var future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                var result = super.cancel(mayInterruptIfRunning);
+                exchange.cancel();
+                return result;
+            }
+        };
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.execute(exchange));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Calls XMLRPC method with specified parameters asynchronously using default deadline of the service.
+     *
+     * @param method     method name
+     * @param parameters method parameters
+     * @return future result of the call
+     */
+    public CompletableFuture<XMLRPCResult> callAsync(String method, Object... parameters) {
+        return callAsync(defaultDeadline(), method, parameters);
+    }
+
+    private PolicyCall policyCall(CallPolicy policy, Deadline deadline, String method, Object[] parameters) {
+        var tracker = latencies.computeIfAbsent(method, m -> new LatencyTracker());
+        return new PolicyCall(this, policy, tracker, retryBudget, deadline, method, parameters).start();
+    }
+
+    private static <T> T await(CompletableFuture<T> future)
+            throws IOException, XMLRPCException {
         try {
-            conn = (HttpURLConnection) server.openConnection();
-            conn.setRequestMethod("POST");
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Call interrupted");
+        } catch (ExecutionException ex) {
+            var cause = ex.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof XMLRPCException xmlrpcException) {
+                throw xmlrpcException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private Deadline defaultDeadline() {
+        return callTimeout == null ? Deadline.none() : Deadline.after(callTimeout);
+    }
+
+    private ResponseParser<XMLRPCResult> resultParser(String method) {
+        return caches.containsKey(method) ? cachedResultParser : resultParser;
+    }
+
+    private <T> T execute(Exchange exchange, String method, Object[] parameters, ResponseParser<T> parser)
+            throws IOException, XMLRPCException {
+        return execute(exchange, method, parameters, parser, XMLRPCParameters.isStreaming(parameters));
+    }
+
+    private <T> T execute(Exchange exchange, String method, Object[] parameters, ResponseParser<T> parser,
+                          boolean streaming) throws IOException, XMLRPCException {
+        if (streaming) {
+            return execute(exchange, parser, conn -> {
+                conn.setChunkedStreamingMode(Utf8Sink.FLUSH_THRESHOLD);
+                try (var out = conn.getOutputStream()) {
+                    XMLRPCParameters.writeMethodCall(out, method, parameters, tzOut, codecs);
+                }
+            });
+        }
+        if (binaryEncoding && parser instanceof BinaryResponseParser<T> && BinaryCodec.supports(parameters, codecs)) {
+            return execute(exchange, parser, new NegotiatedBody(method, parameters));
+        }
+
+        return execute(exchange, method, encode(parameters), parser);
+    }
+
+    private XMLRPCParameters encode(Object[] parameters) {
+        var params = new XMLRPCParameters(tzOut, codecs);
+        for (var p : parameters) {
+            params.appendParameter(p);
+        }
+        return params;
+    }
+
+    private <T> T execute(Exchange exchange, String method, XMLRPCParameters parameters, ResponseParser<T> parser)
+            throws IOException, XMLRPCException {
+        return execute(exchange, parser, new FixedBody(new XMLRPCMethod(method).getMethodBytes(parameters)));
+    }
+
+    private <T> T execute(Exchange exchange, ResponseParser<T> parser, RequestBody body)
+            throws IOException, XMLRPCException {
+        exchange.start();
+        try {
+            var endpoint = loadBalancing.choose(endpoints);
+            var limiter = endpoint.limiter();
+            if (limiter != null) {
+                limiter.acquire(exchange.deadline());
+            }
+
+            endpoint.start();
+            var start = System.nanoTime();
+            var failed = true;
+            var rejected = false;
+            try {
+                var result = exchange(exchange, endpoint, parser, body);
+                failed = false;
+                return result;
+            } catch (XMLRPCException ex) {
+                // fault response means that server is healthy
+                failed = false;
+                throw ex;
+            } catch (XMLRPCLimitException ex) {
+                // response rejected by client side limits says nothing about the server
+                rejected = true;
+                throw ex;
+            } finally {
+                if (rejected) {
+                    endpoint.abandon();
+                    if (limiter != null) {
+                        limiter.abandon();
+                    }
+                } else {
+                    var latency = System.nanoTime() - start;
+                    endpoint.complete(latency, failed, ejectionThreshold, ejectionTime);
+                    if (limiter != null) {
+                        limiter.release(latency, failed);
+                    }
+                }
+            }
+        } finally {
+            exchange.finish();
+        }
+    }
 
-            var params = new XMLRPCParameters(tzOut);
-            for (var p : parameters) {
-                params.appendParameter(p);
+    private <T> T exchange(Exchange exchange, Endpoint endpoint, ResponseParser<T> parser, RequestBody body)
+            throws IOException, XMLRPCException {
+        try {
+            var result = send(exchange, endpoint, parser, body);
+            exchange.checkDeadline();
+            return result;
+        } catch (IOException ex) {
+            throw exchange.translate(ex);
+        } catch (XMLRPCException ex) {
+            // parser fails when connection is aborted in the middle of response
+            exchange.checkDeadline();
+            throw ex;
+        }
+    }
+
+    private <T> T send(Exchange exchange, Endpoint endpoint, ResponseParser<T> parser, RequestBody body)
+            throws IOException, XMLRPCException {
+        HttpURLConnection conn = null;
+        var server = endpoint.url();
+
+        var negotiated = body instanceof NegotiatedBody n ? n : null;
+        var binary = negotiated != null && endpoint.isBinary();
+        byte[] recorded = null;
+        if (recorder != null && !binary) {
+            if (body instanceof FixedBody fixed) {
+                recorded = fixed.bytes();
+            } else if (negotiated != null) {
+                recorded = negotiated.xml();
             }
+        }
+        var startMillis = System.currentTimeMillis();
+        var start = System.nanoTime();
+        var code = -1;
+        TrafficRecorder.Capture captured = null;
+        var reusable = false;
 
-            var cmd = m.getMethodString(params);
-            var bytes = cmd.getBytes(StandardCharsets.UTF_8);
+        try {
+            conn = open(server);
+            exchange.connection(conn);
+            conn.setConnectTimeout(exchange.timeout(connectTimeout));
+            conn.setReadTimeout(exchange.timeout(readTimeout));
+            conn.setRequestMethod("POST");
 
-            conn.setRequestProperty("Content-Length", Integer.toString(bytes.length));
             conn.setRequestProperty("Content-Type", "text/xml");
 
             conn.setUseCaches(false);
             conn.setDoOutput(true);
             conn.setDoInput(true);
 
-            try (var out = new DataOutputStream(conn.getOutputStream())) {
-                out.write(bytes, 0, bytes.length);
-                out.flush();
+            // body is streamed, connection does not keep its own copy of the request
+            if (binary) {
+                conn.setRequestProperty("Content-Type", BinaryCodec.CONTENT_TYPE);
+                negotiated.writeBinary(conn);
+            } else {
+                if (negotiated != null) {
+                    conn.setRequestProperty("Accept", BinaryCodec.CONTENT_TYPE + ", text/xml");
+                }
+                body.write(conn);
             }
 
-            int code = conn.getResponseCode();
+            code = conn.getResponseCode();
+            if (binary && code == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+                // server no longer accepts binary requests
+                endpoint.binary(false);
+                return send(exchange, endpoint, parser, body);
+            }
             if (code != 200) {
                 throw new IOException("HTTP server returned error code - " + Integer.toString(code));
             }
 
-            return new XMLRPCResult(conn.getInputStream(), tzIn);
+            var length = conn.getContentLengthLong();
+            var input = conn.getInputStream();
+            var contentType = conn.getContentType();
+            var binaryResponse = negotiated != null && contentType != null
+                    && contentType.startsWith(BinaryCodec.CONTENT_TYPE);
+            T result;
+            if (limits.maxBytes() == Long.MAX_VALUE && budget == null) {
+                if (recorded != null) {
+                    input = captured = recorder.capture(input, length, null);
+                }
+                result = binaryResponse ? parseBinary(endpoint, parser, input, length) : parser.parse(input, length);
+                input.close();
+            } else {
+                try (var in = new ResponseStream(input, length, limits.maxBytes(), budget, exchange.deadline())) {
+                    // captured copy is reserved after the response, so it never fails the call
+                    InputStream source = in;
+                    if (recorded != null) {
+                        source = captured = recorder.capture(in, length, budget);
+                    }
+                    result = binaryResponse ? parseBinary(endpoint, parser, source, length) :
+                            parser.parse(source, length);
+                }
+            }
+            // closed response stream returns connection to the keep-alive cache
+            reusable = true;
+            return result;
         } finally {
-            if (conn != null) {
+            if (recorded != null && code > 0) {
+                recorder.record(startMillis, System.nanoTime() - start, code, recorded, captured);
+            }
+            if (captured != null) {
+                captured.release();
+            }
+            if (conn != null && !reusable) {
                 conn.disconnect();
             }
         }
     }
+
+    private HttpURLConnection open(URL server) throws IOException {
+        var conn = (HttpURLConnection) server.openConnection();
+        if (sslSocketFactory != null && conn instanceof HttpsURLConnection https) {
+            https.setSSLSocketFactory(sslSocketFactory);
+        }
+        return conn;
+    }
+
+    /**
+     * Opens connections to each endpoint that is not ejected and completes TLS handshakes for https endpoints,
+     * so first calls do not wait for them. Connections are kept in the keep-alive cache of
+     * {@link HttpURLConnection} which holds at most {@code http.maxConnections} idle connections per
+     * endpoint, 5 by default. Each connection sends {@code HEAD} request, any response status is accepted.
+     * This is a synchronous call.
+     *
+     * @param connections number of connections per endpoint
+     * @throws IOException if connection to any endpoint fails
+     */
+    public void warmUp(int connections) throws IOException {
+        if (connections < 1) {
+            throw new IllegalArgumentException("Number of connections must be positive");
+        }
+
+        IOException failure = null;
+        for (var endpoint : endpoints) {
+            if (endpoint.isEjected()) {
+                continue;
+            }
+            try {
+                warmUp(endpoint.url(), connections);
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void warmUp(URL server, int connections) throws IOException {
+        // all connections are taken before any request is sent, otherwise requests share the first one
+        var connecting = new ArrayList<CompletableFuture<HttpURLConnection>>(connections);
+        for (int i = 0; i < connections; i++) {
+            connecting.add(CompletableFuture.supplyAsync(() -> connect(server), DefaultExecutor.INSTANCE));
+        }
+
+        var connected = new ArrayList<HttpURLConnection>(connections);
+        IOException failure = null;
+        for (var future : connecting) {
+            try {
+                connected.add(future.join());
+            } catch (CompletionException ex) {
+                var cause = ex.getCause() instanceof UncheckedIOException unchecked ?
+                        unchecked.getCause() : new IOException(ex.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+
+        for (var conn : connected) {
+            if (failure != null) {
+                conn.disconnect();
+                continue;
+            }
+            try {
+                // response without body returns connection to the keep-alive cache
+                conn.getResponseCode();
+            } catch (IOException ex) {
+                conn.disconnect();
+                failure = ex;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private HttpURLConnection connect(URL server) {
+        try {
+            var conn = open(server);
+            conn.setConnectTimeout(connectTimeout);
+            conn.setReadTimeout(readTimeout);
+            conn.setRequestMethod("HEAD");
+            conn.setUseCaches(false);
+            conn.connect();
+            return conn;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns endpoints of the service.
+     *
+     * @return endpoints
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Encodes value with codecs and output time zone of this service for reuse in subsequent calls.
+     *
+     * @param value value
+     * @return encoded value
+     * @throws RuntimeException if value cannot be encoded
+     */
+    public EncodedValue encode(Object value) {
+        return EncodedValue.of(value, tzOut, codecs);
+    }
+
+    /**
+     * Returns implementation of the interface annotated with {@link XMLRPCInterface}. If implementation
+     * was generated at compile time it is used, otherwise dynamic proxy is created.
+     * <p>In a named module the package of the interface must be exported or opened to
+     * {@code org.panteleyev.xmlrpc}, so this module can create the generated implementation.</p>
+     *
+     * @param iface interface
+     * @param <T>   interface type
+     * @return implementation backed by this service
+     * @throws IllegalArgumentException if interface is not annotated with {@link XMLRPCInterface} or its methods
+     *                                  do not declare {@link IOException} and {@link XMLRPCException}
+     * @throws IllegalStateException    if generated implementation exists but cannot be created, for example when
+     *                                  its package is not exported to {@code org.panteleyev.xmlrpc}
+     */
+    public <T> T client(Class<T> iface) {
+        if (!iface.isInterface() || !iface.isAnnotationPresent(XMLRPCInterface.class)) {
+            throw new IllegalArgumentException(iface.getName() + " is not annotated with @XMLRPCInterface");
+        }
+
+        var packageName = iface.getPackageName();
+        var className = packageName.isEmpty() ?
+                iface.getName().replace('$', '_') + "XMLRPCClient" :
+                packageName + "." + iface.getName().substring(packageName.length() + 1).replace('$', '_')
+                        + "XMLRPCClient";
+        try {
+            var cls = Class.forName(className, true, iface.getClassLoader());
+            return iface.cast(cls.getConstructor(XMLRPCService.class).newInstance(this));
+        } catch (ClassNotFoundException ex) {
+            return ClientProxy.create(this, iface);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Cannot access " + className + ", package " + packageName
+                    + " must be exported to org.panteleyev.xmlrpc", ex);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create " + className, ex);
+        }
+    }
+
+    private XMLRPCResult parseResult(InputStream in, long length) throws IOException, XMLRPCException {
+        // document parser cannot check structure limits before the whole tree is built
+        if (limits.isStructural()) {
+            return new XMLRPCResult(tzIn, codecs, reader(in).readValues());
+        }
+        if (parallelPool != null && length >= parallelThreshold) {
+            var bytes = in.readAllBytes();
+            var values = ParallelDecoder.decode(bytes, tzIn, codecs, parallelPool);
+            return values == null ?
+                    new XMLRPCResult(new ByteArrayInputStream(bytes), tzIn, codecs) :
+                    new XMLRPCResult(tzIn, codecs, values);
+        }
+        return new XMLRPCResult(in, tzIn, codecs);
+    }
+
+    private <T> T parseBinary(Endpoint endpoint, ResponseParser<T> parser, InputStream in, long length)
+            throws IOException, XMLRPCException {
+        endpoint.binary(true);
+        // whole message is decoded from a single receive buffer
+        var bytes = length >= 0 && length <= Integer.MAX_VALUE ? in.readNBytes((int) length) : in.readAllBytes();
+        if (!(parser instanceof BinaryResponseParser<T> binaryParser)) {
+            throw new XMLRPCException("Unexpected binary response");
+        }
+        return binaryParser.parseBinary(ByteBuffer.wrap(bytes));
+    }
+
+    private ResponseParser<XMLRPCResult> projectionParser(Projection projection) {
+        return (in, length) -> new XMLRPCResult(tzIn, codecs,
+                new ProjectionParser(reader(in), projection).parse());
+    }
+
+    private <T> ResponseParser<T> handlerParser(ResponseHandler<T> handler) {
+        return (in, length) -> handler.handle(reader(in));
+    }
+
+    private XMLRPCReader reader(InputStream in) throws IOException, XMLRPCException {
+        return new XMLRPCReader(in, tzIn, codecs, limits);
+    }
+
+    @FunctionalInterface
+    private interface ExchangeTask<T> {
+        T execute(Exchange exchange) throws IOException, XMLRPCException;
+    }
+
+    @FunctionalInterface
+    private interface ResponseParser<T> {
+        /**
+         * Parses response, length is declared content length or -1 if unknown.
+         */
+        T parse(InputStream in, long length) throws IOException, XMLRPCException;
+    }
+
+    /**
+     * Parser that can also decode response in {@link BinaryCodec} encoding.
+     */
+    private interface BinaryResponseParser<T> extends ResponseParser<T> {
+        T parseBinary(ByteBuffer buffer) throws IOException, XMLRPCException;
+    }
+
+    private final class ResultParser implements BinaryResponseParser<XMLRPCResult> {
+        private final boolean structuralHashing;
+
+        ResultParser(boolean structuralHashing) {
+            this.structuralHashing = structuralHashing;
+        }
+
+        @Override
+        public XMLRPCResult parse(InputStream in, long length) throws IOException, XMLRPCException {
+            return hashed(parseResult(in, length));
+        }
+
+        @Override
+        public XMLRPCResult parseBinary(ByteBuffer buffer) throws IOException, XMLRPCException {
+            return hashed(new XMLRPCResult(tzIn, codecs, BinaryCodec.decodeResponse(buffer, limits, tzIn)));
+        }
+
+        private XMLRPCResult hashed(XMLRPCResult result) {
+            if (structuralHashing) {
+                result.getHash();
+            }
+            return result;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RequestBody {
+        void write(HttpURLConnection conn) throws IOException;
+    }
+
+    /**
+     * Request that is sent in binary encoding to endpoints that support it and as XML otherwise.
+     * Both encodings are created on first use and reused by retries.
+     */
+    private final class NegotiatedBody implements RequestBody {
+        private final String method;
+        private final Object[] parameters;
+        private byte[] xml;
+        private ByteBuffer binary;
+
+        NegotiatedBody(String method, Object[] parameters) {
+            this.method = method;
+            this.parameters = parameters;
+        }
+
+        synchronized byte[] xml() {
+            if (xml == null) {
+                xml = new XMLRPCMethod(method).getMethodBytes(encode(parameters));
+            }
+            return xml;
+        }
+
+        synchronized ByteBuffer binary() {
+            if (binary == null) {
+                binary = BinaryCodec.encodeRequest(method, parameters, tzOut);
+            }
+            return binary;
+        }
+
+        @Override
+        public void write(HttpURLConnection conn) throws IOException {
+            new FixedBody(xml()).write(conn);
+        }
+
+        void writeBinary(HttpURLConnection conn) throws IOException {
+            var buffer = binary();
+            conn.setFixedLengthStreamingMode(buffer.remaining());
+            try (var out = conn.getOutputStream()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+        }
+    }
+
+    private record FixedBody(byte[] bytes) implements RequestBody {
+        @Override
+        public void write(HttpURLConnection conn) throws IOException {
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (var out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Periodically sends requests over idle connections, so they are not closed by keep-alive timeouts.
+     * Task is cancelled when service is no longer used.
+     */
+    private static final class KeepAliveTask implements Runnable {
+        private final WeakReference<XMLRPCService> service;
+        private final int connections;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile ScheduledFuture<?> future;
+
+        private KeepAliveTask(XMLRPCService service, int connections) {
+            this.service = new WeakReference<>(service);
+            this.connections = connections;
+        }
+
+        static void schedule(XMLRPCService service, Duration interval, int connections) {
+            var task = new KeepAliveTask(service, connections);
+            var nanos = interval.toNanos();
+            task.future = Exchange.TIMER.scheduleWithFixedDelay(task, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            var s = service.get();
+            if (s == null) {
+                future.cancel(false);
+                return;
+            }
+            // timer thread must not be blocked by network calls
+            if (running.compareAndSet(false, true)) {
+                DefaultExecutor.INSTANCE.execute(() -> {
+                    try {
+                        s.warmUp(connections);
+                    } catch (IOException ex) {
+                        // unavailable endpoints are reported by calls
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            }
+        }
+    }
+
+    private static int toMillis(Duration duration) {
+        return duration == null ? 0 : (int) Math.min(Integer.MAX_VALUE, Math.max(1, duration.toMillis()));
+    }
+
+    private static final class DefaultExecutor {
+        static final ExecutorService INSTANCE = Platform.newBlockingExecutor("xmlrpc-call");
+    }
+
+    /**
+     * This class builds {@link XMLRPCService} objects.
+     */
+    public static final class Builder {
+        private final List<String> urls;
+        private TimeZone tzIn = TimeZone.getTimeZone(GMT);
+        private TimeZone tzOut = TimeZone.getTimeZone(GMT);
+        private XMLRPCCodecs codecs = XMLRPCCodecs.DEFAULT;
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private Duration callTimeout;
+        private Executor executor;
+        private final Map<String, CallPolicy> policies = new HashMap<>();
+        private final Map<String, ResultCache> caches = new HashMap<>();
+        private double retryRatio = 0.1;
+        private int retryTokens = 10;
+        private ConcurrencyLimit concurrencyLimit;
+        private ResponseLimits limits = ResponseLimits.NONE;
+        private MemoryBudget budget;
+        private long parallelThreshold;
+        private ForkJoinPool parallelPool;
+        private TrafficRecorder recorder;
+        private boolean binaryEncoding;
+        private Duration batchWindow;
+        private int maxBatchSize;
+        private SSLContext sslContext;
+        private Duration keepAliveInterval;
+        private int keepAliveConnections;
+        private boolean structuralHashing;
+
+        private LoadBalancing loadBalancing = LoadBalancing.POWER_OF_TWO_CHOICES;
+        private int ejectionThreshold = 5;
+        private Duration ejectionTime = Duration.ofSeconds(30);
+
+        private Builder(List<String> urls) {
+            this.urls = urls;
+        }
+
+        /**
+         * Sets time zone from which Date result values must be parsed. Default is GMT.
+         *
+         * @param tzIn time zone
+         * @return this builder
+         */
+        public Builder timeZoneIn(TimeZone tzIn) {
+            this.tzIn = tzIn;
+            return this;
+        }
+
+        /**
+         * Sets time zone to which Date parameter values must be represented. Default is GMT.
+         *
+         * @param tzOut time zone
+         * @return this builder
+         */
+        public Builder timeZoneOut(TimeZone tzOut) {
+            this.tzOut = tzOut;
+            return this;
+        }
+
+        /**
+         * Sets conversion rules for custom types.
+         *
+         * @param codecs codecs
+         * @return this builder
+         */
+        public Builder codecs(XMLRPCCodecs codecs) {
+            this.codecs = codecs;
+            return this;
+        }
+
+        /**
+         * Sets connection timeout. By default connection timeout is not limited.
+         *
+         * @param connectTimeout timeout
+         * @return this builder
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets maximum time of waiting for response data. By default read timeout is not limited.
+         *
+         * @param readTimeout timeout
+         * @return this builder
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Sets default timeout of the whole call applied when deadline is not specified explicitly.
+         * By default calls are not limited.
+         *
+         * @param callTimeout timeout
+         * @return this builder
+         */
+        public Builder callTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * Sets executor for asynchronous calls. By default cached pool of daemon threads is used.
+         *
+         * @param executor executor
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Marks methods as idempotent and applies retry and hedging policy to them. Methods that are not
+         * registered are never retried or hedged.
+         *
+         * @param policy  policy
+         * @param methods idempotent method names
+         * @return this builder
+         */
+        public Builder callPolicy(CallPolicy policy, String... methods) {
+            for (var method : methods) {
+                policies.put(method, policy);
+            }
+            return this;
+        }
+
+        /**
+         * Stores results of the methods in persistent cache. Cached result is returned without calling
+         * the service until it expires or is evicted. Only methods without side effects must be cached.
+         *
+         * @param cache   result cache
+         * @param methods method names
+         * @return this builder
+         */
+        public Builder resultCache(ResultCache cache, String... methods) {
+            for (var method : methods) {
+                caches.put(method, cache);
+            }
+            return this;
+        }
+
+        /**
+         * Sets retry budget shared by all methods of the service. Each call adds {@code ratio} tokens up
+         * to {@code maxTokens}, each retry or hedged request takes one token. Default is 0.1 and 10, i.e.
+         * retries and hedged requests add at most 10% of load in the long run.
+         *
+         * @param ratio     number of tokens added by each call
+         * @param maxTokens maximum number of tokens
+         * @return this builder
+         */
+        public Builder retryBudget(double ratio, int maxTokens) {
+            this.retryRatio = ratio;
+            this.retryTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * Sets load balancing between endpoints. Default is {@link LoadBalancing#POWER_OF_TWO_CHOICES}.
+         *
+         * @param loadBalancing load balancing
+         * @return this builder
+         */
+        public Builder loadBalancing(LoadBalancing loadBalancing) {
+            this.loadBalancing = loadBalancing;
+            return this;
+        }
+
+        /**
+         * Sets number of consecutive failures after which endpoint is excluded from load balancing for the
+         * specified time. Default is 5 failures and 30 seconds. Zero threshold disables ejection.
+         *
+         * @param threshold number of consecutive failures
+         * @param time      ejection time
+         * @return this builder
+         */
+        public Builder ejection(int threshold, Duration time) {
+            this.ejectionThreshold = threshold;
+            this.ejectionTime = time;
+            return this;
+        }
+
+        /**
+         * Enables adaptive limit of concurrent calls per endpoint. By default number of concurrent calls
+         * is not limited.
+         *
+         * @param concurrencyLimit limit definition
+         * @return this builder
+         */
+        public Builder concurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+            return this;
+        }
+
+        /**
+         * Sets limits of a single response. By default responses are not limited.
+         *
+         * @param limits limits definition
+         * @return this builder
+         */
+        public Builder responseLimits(ResponseLimits limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * Sets memory budget shared by responses of concurrent calls. By default responses are not
+         * accounted.
+         *
+         * @param budget memory budget
+         * @return this builder
+         */
+        public Builder memoryBudget(MemoryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Enables parallel decoding of large responses that consist of a single array. Response with declared
+         * Content-Length above the threshold is buffered, its array elements are decoded in parallel by the
+         * pool. Values are decoded as by {@link XMLRPCReader}. Parallel decoding is not used when depth or
+         * element limits are set.
+         *
+         * @param threshold minimum response size in bytes
+         * @param pool      fork-join pool
+         * @return this builder
+         */
+        public Builder parallelDecoding(long threshold, ForkJoinPool pool) {
+            this.parallelThreshold = threshold;
+            this.parallelPool = pool;
+            return this;
+        }
+
+        /**
+         * Records request and response bodies of all calls except calls with streaming parameters.
+         *
+         * @param recorder traffic recorder
+         * @return this builder
+         */
+        public Builder trafficRecorder(TrafficRecorder recorder) {
+            this.recorder = recorder;
+            return this;
+        }
+
+        /**
+         * Enables negotiation of {@link BinaryCodec} encoding. Calls are sent as XML until the server answers
+         * with binary response. Only calls that return {@link XMLRPCResult} and have parameters of built-in
+         * types without custom encoders are sent in binary encoding. Default is {@code false}.
+         *
+         * @param binaryEncoding {@code true} to enable binary encoding
+         * @return this builder
+         */
+        public Builder binaryEncoding(boolean binaryEncoding) {
+            this.binaryEncoding = binaryEncoding;
+            return this;
+        }
+
+        /**
+         * Enables automatic batching of calls. Calls made within the specified window are sent as a single
+         * {@code system.multicall} request, results and faults are delivered to each caller separately.
+         * Batch is sent earlier when it reaches maximum size. Methods with {@link CallPolicy} and
+         * {@code system.*} methods are not batched. Target server must support {@code system.multicall}.
+         *
+         * @param window       maximum time a call waits for other calls
+         * @param maxBatchSize maximum number of calls in a batch
+         * @return this builder
+         */
+        public Builder autoBatching(Duration window, int maxBatchSize) {
+            if (maxBatchSize < 2) {
+                throw new IllegalArgumentException("Batch size must be at least 2");
+            }
+            this.batchWindow = window;
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets SSL context of https connections. Context caches TLS sessions, so connections opened after
+         * the first one resume session with abbreviated handshake. Session cache size and timeout are set
+         * by {@link SSLContext#getClientSessionContext()}. By default {@link HttpsURLConnection} default
+         * socket factory is used.
+         *
+         * @param sslContext SSL context
+         * @return this builder
+         */
+        public Builder sslContext(SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Keeps idle connections open by periodic {@link XMLRPCService#warmUp(int)}. Interval must be less than
+         * keep-alive timeout of the server and of {@link HttpURLConnection}, which is 5 seconds unless server
+         * specifies it. By default idle connections are not kept open.
+         *
+         * @param interval    interval between requests
+         * @param connections number of connections per endpoint
+         * @return this builder
+         */
+        public Builder keepAlive(Duration interval, int connections) {
+            if (connections < 1) {
+                throw new IllegalArgumentException("Number of connections must be positive");
+            }
+            this.keepAliveInterval = interval;
+            this.keepAliveConnections = connections;
+            return this;
+        }
+
+        /**
+         * Enables computation of {@link StructuralHash} of results before they are returned, so
+         * {@link XMLRPCResult#isSameAs(XMLRPCResult)} and {@link XMLRPCResult#diff(XMLRPCResult)} find it
+         * ready. Hash is a separate pass over decoded values on the thread that decodes the response, which is
+         * the calling thread for synchronous calls. Results of methods with {@link #resultCache(ResultCache,
+         * String...)} are hashed on first use, as hashing would decode cached snapshot in full. Default is
+         * {@code false}, hash is computed on first use.
+         *
+         * @param structuralHashing {@code true} to compute hashes of results
+         * @return this builder
+         */
+        public Builder structuralHashing(boolean structuralHashing) {
+            this.structuralHashing = structuralHashing;
+            return this;
+        }
+
+        /**
+         * Builds XMLRPCService object.
+         *
+         * @return XMLRPCService object
+         */
+        public XMLRPCService build() {
+            return new XMLRPCService(this);
+        }
+    }
 }
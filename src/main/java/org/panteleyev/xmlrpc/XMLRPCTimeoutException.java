@@ -0,0 +1,21 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown when XMLRPC call does not complete within its {@link Deadline} or configured
+ * connect and read timeouts.
+ */
+public class XMLRPCTimeoutException extends IOException {
+    XMLRPCTimeoutException(String msg) {
+        super(msg);
+    }
+
+    XMLRPCTimeoutException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -34,6 +34,7 @@
  <caption></caption>
  <tr><th>XMLRPC</th><th>Java</th></tr>
  <tr><td>&lt;int&gt;, &lt;i4&gt;</td><td>Integer</td></tr>
+ <tr><td>&lt;i8&gt;</td><td>Long</td></tr>
  <tr><td>&lt;boolean&gt;</td><td>Boolean</td></tr>
  <tr><td>&lt;string&gt;</td><td>String</td></tr>
  <tr><td>&lt;double&gt;</td><td>Double</td></tr>
@@ -42,6 +43,8 @@
  <tr><td>array</td><td>java.util.ArrayList</td></tr>
  <tr><td>struct</td><td>java.util.HashMap</td></tr>
  </table>
+ <p>Other Java types can be used as parameters and results by means of
+ {@link org.panteleyev.xmlrpc.XMLRPCCodecs XMLRPCCodecs}.</p>
 
  <h2>Date Representation</h2>
 
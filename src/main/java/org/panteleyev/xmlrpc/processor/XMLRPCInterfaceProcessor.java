@@ -0,0 +1,221 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Annotation processor that generates implementations of interfaces annotated with
+ * {@code org.panteleyev.xmlrpc.XMLRPCInterface}.
+ * <p>Generated class is placed into the same package, named {@code <Interface>XMLRPCClient} and has public
+ * constructor that accepts {@code XMLRPCService}. Nested interfaces are named after all enclosing types joined
+ * with underscore, for example {@code Outer_InnerXMLRPCClient}.</p>
+ * <p>GraalVM native-image reflection metadata for generated classes is written to
+ * {@code META-INF/native-image/<package>/xmlrpc-clients/reflect-config.json}, so that
+ * {@code XMLRPCService.client(Class)} finds them in native executables.</p>
+ */
+@SupportedAnnotationTypes(XMLRPCInterfaceProcessor.INTERFACE_ANNOTATION)
+public class XMLRPCInterfaceProcessor extends AbstractProcessor {
+    static final String INTERFACE_ANNOTATION = "org.panteleyev.xmlrpc.XMLRPCInterface";
+    private static final String NAME_ANNOTATION = "org.panteleyev.xmlrpc.XMLRPCName";
+    private static final String CLIENT_SUFFIX = "XMLRPCClient";
+
+    private final List<String> generated = new ArrayList<>();
+
+    /**
+     * Creates processor instance.
+     */
+    public XMLRPCInterfaceProcessor() {
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (var annotation : annotations) {
+            for (var element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.INTERFACE) {
+                    error(element, "@XMLRPCInterface is applicable to interfaces only");
+                    continue;
+                }
+                try {
+                    generate((TypeElement) element);
+                } catch (IOException ex) {
+                    error(element, "Cannot generate client: " + ex.getMessage());
+                }
+            }
+        }
+
+        if (roundEnv.processingOver() && !generated.isEmpty()) {
+            try {
+                writeNativeImageConfig();
+            } catch (IOException ex) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Cannot write native-image configuration: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void writeNativeImageConfig() throws IOException {
+        var first = generated.get(0);
+        var packageName = first.contains(".") ? first.substring(0, first.lastIndexOf('.')) : "default";
+        var file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                "META-INF/native-image/" + packageName + "/xmlrpc-clients/reflect-config.json");
+        try (var out = new PrintWriter(file.openWriter())) {
+            out.println("[");
+            out.println(generated.stream()
+                    .map(name -> "  {\"name\": \"" + name + "\", \"methods\": [{\"name\": \"<init>\", "
+                            + "\"parameterTypes\": [\"org.panteleyev.xmlrpc.XMLRPCService\"]}]}")
+                    .collect(Collectors.joining(",\n")));
+            out.println("]");
+        }
+    }
+
+    private void generate(TypeElement iface) throws IOException {
+        var elements = processingEnv.getElementUtils();
+        var packageName = elements.getPackageOf(iface).getQualifiedName().toString();
+        var className = clientSimpleName(iface);
+        var prefix = annotationValue(iface, INTERFACE_ANNOTATION, "prefix");
+
+        var methods = ElementFilter.methodsIn(elements.getAllMembers(iface)).stream()
+                .filter(m -> m.getModifiers().contains(Modifier.ABSTRACT))
+                .filter(m -> m.getEnclosingElement().getKind() == ElementKind.INTERFACE)
+                .toList();
+        for (var method : methods) {
+            if (!method.getTypeParameters().isEmpty()) {
+                error(method, "Generic methods are not supported");
+                return;
+            }
+            if (!declares(method, "java.io.IOException") || !declares(method, "org.panteleyev.xmlrpc.XMLRPCException")) {
+                error(method, "Method must declare IOException and XMLRPCException");
+                return;
+            }
+        }
+
+        var qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        var file = processingEnv.getFiler().createSourceFile(qualifiedName, iface);
+        generated.add(qualifiedName);
+        try (var out = new PrintWriter(file.openWriter())) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Implementation of {@link " + iface.getQualifiedName() + "} generated by "
+                    + getClass().getSimpleName() + ".");
+            out.println(" */");
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.println("public final class " + className + " implements " + iface.getQualifiedName() + " {");
+            out.println("    private final org.panteleyev.xmlrpc.XMLRPCService service;");
+            out.println();
+            out.println("    /**");
+            out.println("     * Creates client for the specified service.");
+            out.println("     *");
+            out.println("     * @param service XMLRPC service");
+            out.println("     */");
+            out.println("    public " + className + "(org.panteleyev.xmlrpc.XMLRPCService service) {");
+            out.println("        this.service = service;");
+            out.println("    }");
+
+            for (var method : methods) {
+                out.println();
+                generateMethod(out, method, prefix);
+            }
+            out.println("}");
+        }
+    }
+
+    private void generateMethod(PrintWriter out, ExecutableElement method, String prefix) {
+        var returnType = method.getReturnType();
+        var parameters = method.getParameters();
+
+        var signature = parameters.stream()
+                .map(p -> p.asType() + " " + p.getSimpleName())
+                .collect(Collectors.joining(", "));
+        var arguments = parameters.stream()
+                .map(p -> p.getSimpleName().toString())
+                .collect(Collectors.joining(", "));
+        var exceptions = method.getThrownTypes().stream()
+                .map(TypeMirror::toString)
+                .collect(Collectors.joining(", "));
+
+        var name = annotationValue(method, NAME_ANNOTATION, "value");
+        if (name.isEmpty()) {
+            name = prefix.isEmpty() ? method.getSimpleName().toString() : prefix + "." + method.getSimpleName();
+        }
+        var call = "this.service.call(\"" + escape(name) + "\", new Object[]{" + arguments + "})";
+
+        out.println("    @Override");
+        out.println("    public " + returnType + " " + method.getSimpleName() + "(" + signature + ") throws "
+                + exceptions + " {");
+        if (returnType.getKind() == TypeKind.VOID) {
+            out.println("        " + call + ";");
+        } else if (returnType.toString().equals("org.panteleyev.xmlrpc.XMLRPCResult")) {
+            out.println("        return " + call + ";");
+        } else {
+            var erasure = processingEnv.getTypeUtils().erasure(returnType);
+            out.println("        return (" + returnType + ") " + call + ".getValue(0, " + erasure + ".class);");
+        }
+        out.println("    }");
+    }
+
+    private boolean declares(ExecutableElement method, String exception) {
+        var types = processingEnv.getTypeUtils();
+        var exceptionType = processingEnv.getElementUtils().getTypeElement(exception).asType();
+        return method.getThrownTypes().stream().anyMatch(t -> types.isAssignable(exceptionType, t));
+    }
+
+    private static String annotationValue(Element element, String annotation, String attribute) {
+        for (var mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(annotation)) {
+                for (var entry : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                        return entry.getValue().getValue().toString();
+                    }
+                }
+            }
+        }
+        return "";
+    }
+
+    private static String clientSimpleName(TypeElement iface) {
+        var name = new StringBuilder(iface.getSimpleName());
+        for (var e = iface.getEnclosingElement(); e instanceof TypeElement t; e = t.getEnclosingElement()) {
+            name.insert(0, t.getSimpleName() + "_");
+        }
+        return name.append(CLIENT_SUFFIX).toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
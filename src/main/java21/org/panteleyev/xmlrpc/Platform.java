@@ -0,0 +1,24 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Platform dependent facilities for JDK 21 and newer. Blocking calls are executed by virtual threads.
+ */
+final class Platform {
+    private Platform() {
+    }
+
+    static ExecutorService newBlockingExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    static boolean isVirtualThread() {
+        return Thread.currentThread().isVirtual();
+    }
+}
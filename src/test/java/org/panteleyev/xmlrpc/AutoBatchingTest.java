@@ -0,0 +1,130 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AutoBatchingTest {
+    private static final Pattern METHOD_NAME = Pattern.compile(
+            "<name>methodName</name><value><string>([^<]+)</string>");
+
+    /**
+     * Answers each call with its method name, calls named "fail" produce fault.
+     */
+    private static String handle(String request) {
+        if (!request.contains("<methodName>system.multicall</methodName>")) {
+            var name = request.substring(request.indexOf("<methodName>") + 12, request.indexOf("</methodName>"));
+            return StubServer.response("<string>" + name + "</string>");
+        }
+
+        var result = new StringBuilder("<array><data>");
+        var matcher = METHOD_NAME.matcher(request);
+        while (matcher.find()) {
+            var name = matcher.group(1);
+            if (name.equals("fail")) {
+                result.append("<value><struct><member><name>faultCode</name><value><int>7</int></value></member>")
+                        .append("<member><name>faultString</name><value><string>failed</string></value></member>")
+                        .append("</struct></value>");
+            } else {
+                result.append("<value><array><data><value><string>").append(name)
+                        .append("</string></value></data></array></value>");
+            }
+        }
+        return StubServer.response(result.append("</data></array>").toString());
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        try (var server = new StubServer(AutoBatchingTest::handle)) {
+            var service = XMLRPCService.builder(server.url())
+                    .autoBatching(Duration.ofMillis(100), 100)
+                    .build();
+
+            var futures = new ArrayList<CompletableFuture<XMLRPCResult>>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(service.callAsync("m" + i, i, "param"));
+            }
+            var failed = service.callAsync("fail");
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("m" + i, futures.get(i).get(5, TimeUnit.SECONDS).getStringValue(0));
+            }
+            var ex = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertEquals(7, ((XMLRPCException) ex.getCause()).getFaultCode());
+
+            assertEquals(1, server.requests().size());
+            assertTrue(server.requests().get(0).contains("<int>9</int>"));
+        }
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception {
+        try (var server = new StubServer(AutoBatchingTest::handle)) {
+            var service = XMLRPCService.builder(server.url())
+                    .autoBatching(Duration.ofMillis(100), 2)
+                    .build();
+
+            var futures = new ArrayList<CompletableFuture<XMLRPCResult>>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(service.callAsync("m" + i));
+            }
+            for (int i = 0; i < 5; i++) {
+                assertEquals("m" + i, futures.get(i).get(5, TimeUnit.SECONDS).getStringValue(0));
+            }
+            assertEquals(3, server.requests().size());
+            // the last call is sent alone without multicall
+            assertEquals(1, server.requests().stream().filter(r -> !r.contains("system.multicall")).count());
+        }
+    }
+
+    @Test
+    public void testDeadlines() throws Exception {
+        try (var server = new StubServer(request -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return handle(request);
+        })) {
+            var service = XMLRPCService.builder(server.url())
+                    .autoBatching(Duration.ofMillis(20), 10)
+                    .build();
+
+            // short deadline of one call does not time out the batch
+            var short1 = service.callAsync(Deadline.after(Duration.ofMillis(100)), "short");
+            var long1 = service.callAsync(Deadline.after(Duration.ofSeconds(5)), "long");
+            var unlimited = service.callAsync("unlimited");
+
+            var ex = assertThrows(ExecutionException.class, () -> short1.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof XMLRPCTimeoutException);
+            assertEquals("long", long1.get(5, TimeUnit.SECONDS).getStringValue(0));
+            assertEquals("unlimited", unlimited.get(5, TimeUnit.SECONDS).getStringValue(0));
+            assertEquals(1, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testSynchronousCall() throws Exception {
+        try (var server = new StubServer(AutoBatchingTest::handle)) {
+            var service = XMLRPCService.builder(server.url())
+                    .autoBatching(Duration.ofMillis(10), 10)
+                    .build();
+            assertEquals("single", service.call("single").getStringValue(0));
+            assertThrows(RuntimeException.class, () -> service.call("invalid", new Object()));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryCodecTest {
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private record Point(int x, int y) {
+    }
+
+    /**
+     * Server that answers with binary encoding when client accepts it.
+     */
+    private static final class BinaryServer implements AutoCloseable {
+        private final HttpServer server;
+        private final List<String> requests = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean rejectBinary = new AtomicBoolean();
+
+        BinaryServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                try (exchange) {
+                    var body = exchange.getRequestBody().readAllBytes();
+                    var contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                    var accept = exchange.getRequestHeaders().getFirst("Accept");
+                    byte[] response;
+                    if (BinaryCodec.CONTENT_TYPE.equals(contentType)) {
+                        if (rejectBinary.get()) {
+                            requests.add("rejected");
+                            exchange.sendResponseHeaders(415, -1);
+                            return;
+                        }
+                        requests.add("binary");
+                        try {
+                            var request = BinaryCodec.decodeRequest(ByteBuffer.wrap(body));
+                            response = "error".equals(request.method()) ?
+                                    BinaryCodec.encodeFault(42, "Failed") :
+                                    BinaryCodec.encodeResponse(List.of(Map.of("method", request.method(),
+                                            "parameters", request.parameters())));
+                        } catch (XMLRPCException ex) {
+                            throw new IOException(ex);
+                        }
+                    } else if (accept != null && accept.contains(BinaryCodec.CONTENT_TYPE) && !rejectBinary.get()) {
+                        requests.add("xml");
+                        response = BinaryCodec.encodeResponse(List.of(Map.of("method", "xml")));
+                    } else {
+                        requests.add("xml");
+                        exchange.getResponseHeaders().add("Content-Type", "text/xml");
+                        var xml = StubServer.response("<struct><member><name>method</name><value>"
+                                + "<string>xml</string></value></member></struct>").getBytes(StandardCharsets.UTF_8);
+                        exchange.sendResponseHeaders(200, xml.length);
+                        exchange.getResponseBody().write(xml);
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("Content-Type", BinaryCodec.CONTENT_TYPE);
+                    exchange.sendResponseHeaders(200, response.length);
+                    exchange.getResponseBody().write(response);
+                }
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        var date = new Date(1641092645000L);
+        var parameters = new Object[]{
+                "Привет", 1, -2L, Long.MIN_VALUE, (short) 3, (byte) 4, 2.5, 1.5f, true, false,
+                new byte[]{1, 2, 3}, date, List.of(1, List.of("a")), Map.of("x", 1, "y", Map.of("z", "w"))
+        };
+        var request = BinaryCodec.decodeRequest(BinaryCodec.encodeRequest("items.list", parameters, GMT));
+        assertEquals("items.list", request.method());
+        var values = request.parameters();
+        assertEquals(List.of("Привет", 1, -2L, Long.MIN_VALUE, 3, 4, 2.5, 1.5, true, false),
+                values.subList(0, 10));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) values.get(10));
+        assertEquals(date, values.get(11));
+        assertEquals(List.of(1, List.of("a")), values.get(12));
+        assertEquals(Map.of("x", 1, "y", Map.of("z", "w")), values.get(13));
+
+        var response = BinaryCodec.encodeResponse(List.of(Map.of("id", Integer.MIN_VALUE), "ok"));
+        assertEquals(List.of(Map.of("id", Integer.MIN_VALUE), "ok"),
+                BinaryCodec.decodeResponse(ByteBuffer.wrap(response), ResponseLimits.NONE, GMT));
+
+        // direct buffers are decoded too
+        var direct = ByteBuffer.allocateDirect(response.length).put(response).flip();
+        assertEquals(List.of(Map.of("id", Integer.MIN_VALUE), "ok"),
+                BinaryCodec.decodeResponse(direct, ResponseLimits.NONE, GMT));
+    }
+
+    @Test
+    public void testTimeZones() throws Exception {
+        var zone = TimeZone.getTimeZone("Asia/Tokyo");
+        var xml = StubServer.response("<dateTime.iso8601>20220102T03:04:05</dateTime.iso8601>")
+                .getBytes(StandardCharsets.UTF_8);
+        var date = new XMLRPCResult(new ByteArrayInputStream(xml), zone, XMLRPCCodecs.DEFAULT).getDateValue(0);
+
+        // binary value carries the same local time as XML one
+        var response = BinaryCodec.encodeResponse(List.of(date), zone);
+        assertEquals(List.of(date), BinaryCodec.decodeResponse(ByteBuffer.wrap(response), ResponseLimits.NONE, zone));
+        assertEquals(List.of(new XMLRPCResult(new ByteArrayInputStream(xml), GMT, XMLRPCCodecs.DEFAULT)
+                        .getDateValue(0)),
+                BinaryCodec.decodeResponse(ByteBuffer.wrap(response), ResponseLimits.NONE, GMT));
+
+        var request = BinaryCodec.decodeRequest(BinaryCodec.encodeRequest("dates.save", new Object[]{date}, zone),
+                zone);
+        assertEquals(List.of(date), request.parameters());
+    }
+
+    @Test
+    public void testFault() {
+        var ex = assertThrows(XMLRPCException.class, () -> BinaryCodec.decodeResponse(
+                ByteBuffer.wrap(BinaryCodec.encodeFault(42, "Failed")), ResponseLimits.NONE, GMT));
+        assertEquals(42, ex.getFaultCode());
+        assertEquals("Failed", ex.getMessage());
+    }
+
+    @Test
+    public void testMalformed() {
+        var response = BinaryCodec.encodeResponse(List.of(List.of("a", "b", "c")));
+        assertThrows(XMLRPCException.class, () -> BinaryCodec.decodeResponse(
+                ByteBuffer.wrap(Arrays.copyOf(response, response.length - 2)), ResponseLimits.NONE, GMT));
+        assertThrows(XMLRPCException.class, () -> BinaryCodec.decodeResponse(
+                ByteBuffer.wrap("<?xml".getBytes(StandardCharsets.UTF_8)), ResponseLimits.NONE, GMT));
+        assertThrows(XMLRPCException.class, () -> BinaryCodec.decodeRequest(ByteBuffer.wrap(response)));
+    }
+
+    @Test
+    public void testLimits() {
+        var response = ByteBuffer.wrap(BinaryCodec.encodeResponse(List.of(List.of(List.of(1, 2)))));
+        assertThrows(XMLRPCLimitException.class, () -> BinaryCodec.decodeResponse(response.duplicate(),
+                ResponseLimits.builder().maxDepth(2).build(), GMT));
+        assertThrows(XMLRPCLimitException.class, () -> BinaryCodec.decodeResponse(response.duplicate(),
+                ResponseLimits.builder().maxElements(3).build(), GMT));
+    }
+
+    @Test
+    public void testSupports() throws Exception {
+        assertTrue(BinaryCodec.supports(new Object[]{"a", 1, List.of(Map.of("a", new Date()))},
+                XMLRPCCodecs.DEFAULT));
+        assertFalse(BinaryCodec.supports(new Object[]{new Point(1, 2)}, XMLRPCCodecs.DEFAULT));
+        assertFalse(BinaryCodec.supports(new Object[]{List.of(new Point(1, 2))}, XMLRPCCodecs.DEFAULT));
+        var custom = XMLRPCCodecs.builder().encoder(String.class, String::toUpperCase).build();
+        assertFalse(BinaryCodec.supports(new Object[]{"a"}, custom));
+
+        // keys other than strings are skipped by XML encoding
+        var keys = new HashMap<Object, Object>();
+        keys.put("a", 1);
+        keys.put(2, "b");
+        keys.put(null, "c");
+        assertFalse(BinaryCodec.supports(new Object[]{keys}, XMLRPCCodecs.DEFAULT));
+        assertEquals(List.of(Map.of("a", 1)), BinaryCodec.decodeResponse(
+                ByteBuffer.wrap(BinaryCodec.encodeResponse(List.of(keys))), ResponseLimits.NONE, GMT));
+    }
+
+    @Test
+    public void testNegotiation() throws Exception {
+        try (var server = new BinaryServer()) {
+            var service = XMLRPCService.builder(server.url()).binaryEncoding(true).build();
+            assertEquals(Map.of("method", "xml"), service.call("first").getStructValue(0));
+            assertTrue(service.getEndpoints().get(0).isBinary());
+
+            var result = service.call("second", 1, "two", List.of(3L));
+            assertEquals(Map.of("method", "second", "parameters", List.of(1, "two", List.of(3L))),
+                    result.getStructValue(0));
+
+            var fault = assertThrows(XMLRPCException.class, () -> service.call("error"));
+            assertEquals(42, fault.getFaultCode());
+
+            // custom types and reader based calls are sent as XML
+            service.call("third", new Point(1, 2));
+            service.call(Projection.of("method"), "fourth");
+            assertEquals(List.of("xml", "binary", "binary", "xml", "xml"), server.requests);
+        }
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        try (var server = new BinaryServer()) {
+            var service = XMLRPCService.builder(server.url()).binaryEncoding(true).build();
+            service.call("first");
+            server.rejectBinary.set(true);
+            assertEquals(Map.of("method", "xml"), service.call("second").getStructValue(0));
+            assertFalse(service.getEndpoints().get(0).isBinary());
+            assertEquals(List.of("xml", "rejected", "xml"), server.requests);
+        }
+    }
+
+    @Test
+    public void testStandardServer() throws Exception {
+        try (var server = new StubServer(request -> StubServer.response("<int>1</int>"))) {
+            var service = XMLRPCService.builder(server.url()).binaryEncoding(true).build();
+            assertEquals(1, service.call("first").getIntegerValue(0));
+            assertEquals(1, service.call("second").getIntegerValue(0));
+            assertFalse(service.getEndpoints().get(0).isBinary());
+            assertTrue(server.headers().get(1).getFirst("Accept").contains(BinaryCodec.CONTENT_TYPE));
+        }
+    }
+}
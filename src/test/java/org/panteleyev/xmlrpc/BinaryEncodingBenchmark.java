@@ -0,0 +1,94 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Compares size and speed of XML and binary encoding of the same values.
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes org.panteleyev.xmlrpc.BinaryEncodingBenchmark [iterations]
+ * </pre>
+ */
+public final class BinaryEncodingBenchmark {
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private BinaryEncodingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        var items = items(2000);
+        var parameters = new Object[]{"catalog", items};
+
+        var xmlRequest = new XMLRPCMethod("items.save").getMethodBytes(xml(parameters));
+        var binaryRequest = BinaryCodec.encodeRequest("items.save", parameters, GMT).remaining();
+        System.out.printf("request:  xml %d KB, binary %d KB%n", xmlRequest.length / 1024, binaryRequest / 1024);
+        run("  encode xml   ", iterations, () -> new XMLRPCMethod("items.save").getMethodBytes(xml(parameters)));
+        run("  encode binary", iterations, () -> BinaryCodec.encodeRequest("items.save", parameters, GMT));
+
+        var xmlResponse = ("<?xml version=\"1.0\"?><methodResponse><params><param>"
+                + EncodedValue.of(items)
+                + "</param></params></methodResponse>").getBytes();
+        var binaryResponse = BinaryCodec.encodeResponse(List.of(items));
+        System.out.printf("response: xml %d KB, binary %d KB%n", xmlResponse.length / 1024,
+                binaryResponse.length / 1024);
+        run("  decode xml   ", iterations,
+                () -> new XMLRPCResult(new ByteArrayInputStream(xmlResponse), GMT, XMLRPCCodecs.DEFAULT));
+        run("  decode reader", iterations,
+                () -> new XMLRPCReader(new ByteArrayInputStream(xmlResponse), GMT, XMLRPCCodecs.DEFAULT)
+                        .readValues());
+        run("  decode binary", iterations,
+                () -> BinaryCodec.decodeResponse(ByteBuffer.wrap(binaryResponse), ResponseLimits.NONE, GMT));
+    }
+
+    private static XMLRPCParameters xml(Object[] parameters) {
+        var params = new XMLRPCParameters(GMT, XMLRPCCodecs.DEFAULT);
+        for (var p : parameters) {
+            params.appendParameter(p);
+        }
+        return params;
+    }
+
+    private static void run(String name, int iterations, Action action) throws Exception {
+        // warm up
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        var start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        System.out.printf("%s %8.3f ms/op%n", name, (System.nanoTime() - start) / 1e6 / iterations);
+    }
+
+    private static List<Object> items(int count) {
+        var items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", i);
+            item.put("name", "item " + i);
+            item.put("price", i * 0.25);
+            item.put("active", i % 2 == 0);
+            item.put("updated", new Date(1641092645000L + i));
+            item.put("tags", List.of("a", "b", "c"));
+            items.add(item);
+        }
+        return items;
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CallPolicyTest {
+    private static Function<String, String> firstSlow() {
+        var counter = new AtomicInteger();
+        return request -> {
+            if (counter.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return StubServer.response("<string>slow</string>");
+            }
+            return StubServer.response("<string>fast</string>");
+        };
+    }
+
+    @Test
+    public void testHedging() throws Exception {
+        try (var server = new StubServer(firstSlow())) {
+            var service = XMLRPCService.builder(server.url())
+                    .callPolicy(CallPolicy.builder().hedgeDelay(Duration.ofMillis(100)).build(), "get")
+                    .build();
+
+            var start = System.nanoTime();
+            assertEquals("fast", service.call("get").getStringValue(0));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testNonIdempotentMethodIsNotHedged() throws Exception {
+        try (var server = new StubServer(firstSlow())) {
+            var service = XMLRPCService.builder(server.url())
+                    .callPolicy(CallPolicy.builder().hedgeDelay(Duration.ofMillis(100)).build(), "get")
+                    .build();
+
+            assertEquals("slow", service.call("set").getStringValue(0));
+            assertEquals(1, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testHedgingWithinBudget() throws Exception {
+        try (var server = new StubServer(firstSlow())) {
+            var service = XMLRPCService.builder(server.url())
+                    .callPolicy(CallPolicy.builder().hedgeDelay(Duration.ofMillis(100)).build(), "get")
+                    .retryBudget(0.1, 0)
+                    .build();
+
+            assertEquals("slow", service.call("get").getStringValue(0));
+            assertEquals(1, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        var port = StubServer.freePort();
+        var url = "http://127.0.0.1:" + port + "/";
+        var policy = CallPolicy.builder()
+                .maxAttempts(5)
+                .backoff(Duration.ofMillis(400), Duration.ofSeconds(1))
+                .build();
+
+        var noRetry = XMLRPCService.builder(url).build();
+        assertThrows(ConnectException.class, () -> noRetry.call("get"));
+
+        var service = XMLRPCService.builder(url).callPolicy(policy, "get").build();
+        var serverStarted = CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(100);
+                return new StubServer(port, request -> StubServer.response("<string>ok</string>"));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        try {
+            assertEquals("ok", service.call("get").getStringValue(0));
+        } finally {
+            serverStarted.get().close();
+        }
+    }
+
+    @Test
+    public void testLatencyPercentile() {
+        var tracker = new LatencyTracker();
+        assertEquals(-1, tracker.percentile(95));
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+        assertEquals(95, tracker.percentile(95));
+        assertEquals(50, tracker.percentile(50));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClientInterfaceTest {
+    @XMLRPCInterface(prefix = "examples")
+    public interface States {
+        String getStateName(int index) throws IOException, XMLRPCException;
+
+        @XMLRPCName("system.listMethods")
+        List<String> listMethods() throws IOException, XMLRPCException;
+
+        default String firstState() throws IOException, XMLRPCException {
+            return getStateName(1);
+        }
+    }
+
+    @XMLRPCInterface(prefix = "examples")
+    public interface Shadowing {
+        // parameter has the same name as the field of generated client
+        String getStateName(int service) throws IOException, XMLRPCException;
+    }
+
+    public interface NotAnnotated {
+        String getStateName(int index) throws IOException, XMLRPCException;
+    }
+
+    public interface NoExceptions {
+        String getStateName(int index);
+    }
+
+    private static String handle(String request) {
+        if (request.contains("<methodName>examples.getStateName</methodName>")) {
+            return StubServer.response("<string>Alabama</string>");
+        } else {
+            return StubServer.response("<array><data><value><string>examples.getStateName</string></value>"
+                    + "</data></array>");
+        }
+    }
+
+    @Test
+    public void testGeneratedClient() throws Exception {
+        try (var server = new StubServer(ClientInterfaceTest::handle)) {
+            var states = new XMLRPCService(server.url()).client(States.class);
+            assertTrue(states instanceof ClientInterfaceTest_StatesXMLRPCClient);
+            check(states, server);
+        }
+    }
+
+    @Test
+    public void testShadowedField() throws Exception {
+        try (var server = new StubServer(ClientInterfaceTest::handle)) {
+            var states = new XMLRPCService(server.url()).client(Shadowing.class);
+            assertTrue(states instanceof ClientInterfaceTest_ShadowingXMLRPCClient);
+            assertEquals("Alabama", states.getStateName(1));
+        }
+    }
+
+    @Test
+    public void testProxyClient() throws Exception {
+        try (var server = new StubServer(ClientInterfaceTest::handle)) {
+            var states = ClientProxy.create(new XMLRPCService(server.url()), States.class);
+            assertTrue(Proxy.isProxyClass(states.getClass()));
+            check(states, server);
+        }
+    }
+
+    @Test
+    public void testInvalidInterfaces() {
+        var service = new XMLRPCService("http://localhost/");
+        assertThrows(IllegalArgumentException.class, () -> service.client(NotAnnotated.class));
+        assertThrows(IllegalArgumentException.class, () -> ClientProxy.create(service, NoExceptions.class));
+    }
+
+    private static void check(States states, StubServer server) throws Exception {
+        assertEquals("Alabama", states.getStateName(1));
+        assertEquals("Alabama", states.firstState());
+        assertEquals(List.of("examples.getStateName"), states.listMethods());
+        assertTrue(server.requests().get(0).contains("<param><value><int>1</int></value></param>"));
+        assertFalse(server.requests().get(2).contains("<param>"));
+    }
+}
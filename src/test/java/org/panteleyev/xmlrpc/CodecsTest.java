@@ -0,0 +1,108 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CodecsTest {
+    private static final String RESPONSE = """
+            <?xml version="1.0"?>
+            <methodResponse>
+                <params>
+                    <param><value><struct>
+                        <member><name>id</name><value><string>0f8fad5b-d9cb-469f-a165-70867728950e</string></value></member>
+                        <member><name>color</name><value><string>GREEN</string></value></member>
+                        <member><name>size</name><value><i8>9000000000</i8></value></member>
+                        <member><name>price</name><value><double>12.50</double></value></member>
+                    </struct></value></param>
+                    <param><value><ex:i8 xmlns:ex="urn:ex">42</ex:i8></value></param>
+                </params>
+            </methodResponse>
+            """;
+
+    enum Color {
+        RED, GREEN
+    }
+
+    public record Item(UUID id, Color color, long size, BigDecimal price) {
+    }
+
+    public record Money(String amount) {
+    }
+
+    private static List<Arguments> testData() {
+        var id = UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e");
+        return List.of(
+                Arguments.of(9000000000L, "<i8>9000000000</i8>"),
+                Arguments.of((short) 12, "<int>12</int>"),
+                Arguments.of(new BigDecimal("12.50"), "<double>12.50</double>"),
+                Arguments.of(id, "<string>0f8fad5b-d9cb-469f-a165-70867728950e</string>"),
+                Arguments.of(Color.RED, "<string>RED</string>"),
+                Arguments.of(new Item(id, Color.GREEN, 1, BigDecimal.ONE),
+                        "<struct><member><name>id</name><value><string>0f8fad5b-d9cb-469f-a165-70867728950e"
+                                + "</string></value></member><member><name>color</name><value><string>GREEN"
+                                + "</string></value></member><member><name>size</name><value><i8>1</i8></value>"
+                                + "</member><member><name>price</name><value><double>1</double></value>"
+                                + "</member></struct>")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testData")
+    public void testDefaultEncoders(Object value, String expected) {
+        var p = new XMLRPCParameters(TimeZone.getDefault()).appendParameter(value);
+        assertEquals("<param><value>" + expected + "</value></param>", p.getParametersString());
+    }
+
+    @Test
+    public void testCustomEncoder() {
+        var codecs = XMLRPCCodecs.builder()
+                .encoder(Money.class, m -> m.amount() + " EUR")
+                .build();
+        var p = new XMLRPCParameters(TimeZone.getDefault(), codecs).appendParameter(new Money("10"));
+        assertEquals("<param><value><string>10 EUR</string></value></param>", p.getParametersString());
+    }
+
+    @Test
+    public void testUnsupportedType() {
+        var p = new XMLRPCParameters(TimeZone.getDefault());
+        assertThrows(RuntimeException.class, () -> p.appendParameter(new Object()));
+    }
+
+    @Test
+    public void testDecoders() throws Exception {
+        var codecs = XMLRPCCodecs.builder()
+                .tagDecoder("ex:i8", Long::valueOf)
+                .build();
+        var res = TestUtil.parseResult(RESPONSE, TimeZone.getDefault(), codecs);
+
+        var item = res.getValue(0, Item.class);
+        assertEquals(new Item(UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e"), Color.GREEN,
+                9000000000L, new BigDecimal("12.5")), item);
+        assertEquals(42L, res.getValue(1, long.class));
+        assertThrows(IllegalStateException.class, () -> res.getValue(1, String.class));
+    }
+
+    @Test
+    public void testUnknownEnumConstant() {
+        var codecs = XMLRPCCodecs.DEFAULT;
+        assertEquals(Color.RED, codecs.decode("RED", Color.class, TimeZone.getDefault()));
+        var ex = assertThrows(IllegalArgumentException.class,
+                () -> codecs.decode("PURPLE", Color.class, TimeZone.getDefault()));
+        assertTrue(ex.getMessage().contains("PURPLE"));
+    }
+}
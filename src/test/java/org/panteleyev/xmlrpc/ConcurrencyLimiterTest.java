@@ -0,0 +1,110 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyLimiterTest {
+    private static final int CLIENTS = 32;
+
+    /**
+     * Server latency is 5ms up to 4 concurrent requests and grows linearly above that.
+     */
+    private static Function<String, String> degradingServer(AtomicInteger inFlight, AtomicInteger maxInFlight) {
+        return request -> {
+            var current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(5 + 5L * Math.max(0, current - 4));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return StubServer.response("<int>1</int>");
+        };
+    }
+
+    @ParameterizedTest
+    @EnumSource(ConcurrencyLimit.Algorithm.class)
+    public void testSimulation(ConcurrencyLimit.Algorithm algorithm) throws Exception {
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        var pool = Executors.newFixedThreadPool(CLIENTS);
+        try (var server = new StubServer(degradingServer(inFlight, maxInFlight))) {
+            var service = XMLRPCService.builder(server.url())
+                    .concurrencyLimit(ConcurrencyLimit.builder(algorithm)
+                            .limits(CLIENTS, 1, 100)
+                            .latencyThreshold(Duration.ofMillis(30))
+                            .maxWait(Duration.ofSeconds(1))
+                            .build())
+                    .build();
+            var limiter = service.getEndpoints().get(0).getConcurrencyLimiter().orElseThrow();
+
+            var stop = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            var tasks = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < CLIENTS; i++) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    while (System.nanoTime() < stop) {
+                        try {
+                            service.call("work");
+                        } catch (XMLRPCLimitException ex) {
+                            // expected under overload
+                        } catch (Exception ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                }, pool));
+            }
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+            assertTrue(limiter.getLimit() < CLIENTS / 2, "Limit " + limiter.getLimit());
+            assertEquals(0, limiter.getInFlight());
+            assertEquals(0, limiter.getQueueDepth());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFastReject() throws Exception {
+        var release = new CompletableFuture<Void>();
+        try (var server = new StubServer(request -> {
+            release.join();
+            return StubServer.response("<int>1</int>");
+        })) {
+            var service = XMLRPCService.builder(server.url())
+                    .concurrencyLimit(ConcurrencyLimit.builder(ConcurrencyLimit.Algorithm.AIMD)
+                            .limits(1, 1, 1)
+                            .build())
+                    .build();
+            var limiter = service.getEndpoints().get(0).getConcurrencyLimiter().orElseThrow();
+
+            var first = service.callAsync("first");
+            while (limiter.getInFlight() == 0) {
+                Thread.sleep(10);
+            }
+            assertThrows(XMLRPCLimitException.class, () -> service.call("second"));
+            assertEquals(1, limiter.getRejectedCount());
+
+            release.complete(null);
+            assertEquals(1, first.get(5, TimeUnit.SECONDS).getIntegerValue(0));
+        }
+    }
+}
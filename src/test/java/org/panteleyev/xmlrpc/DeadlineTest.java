@@ -0,0 +1,78 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeadlineTest {
+    private static String slow(String request) {
+        try {
+            Thread.sleep(request.contains("slow") ? 5000 : 0);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return StubServer.response("<string>done</string>");
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        try (var server = new StubServer(DeadlineTest::slow)) {
+            var service = new XMLRPCService(server.url());
+            assertEquals("done", service.call(Deadline.after(Duration.ofSeconds(5)), "fast").getStringValue(0));
+
+            var start = System.nanoTime();
+            assertThrows(XMLRPCTimeoutException.class,
+                    () -> service.call(Deadline.after(Duration.ofMillis(200)), "slow"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+            assertThrows(XMLRPCTimeoutException.class,
+                    () -> service.call(Deadline.after(Duration.ZERO), "fast"));
+        }
+    }
+
+    @Test
+    public void testServiceTimeouts() throws Exception {
+        try (var server = new StubServer(DeadlineTest::slow)) {
+            var readTimeout = XMLRPCService.builder(server.url())
+                    .readTimeout(Duration.ofMillis(200))
+                    .build();
+            assertThrows(XMLRPCTimeoutException.class, () -> readTimeout.call("slow"));
+
+            var callTimeout = XMLRPCService.builder(server.url())
+                    .callTimeout(Duration.ofMillis(200))
+                    .build();
+            assertThrows(XMLRPCTimeoutException.class, () -> callTimeout.call("slow"));
+            assertEquals("done", callTimeout.call("fast").getStringValue(0));
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        var executor = Executors.newSingleThreadExecutor();
+        try (var server = new StubServer(DeadlineTest::slow)) {
+            var service = XMLRPCService.builder(server.url())
+                    .executor(executor)
+                    .build();
+            var future = service.callAsync(Deadline.none(), "slow");
+            Thread.sleep(200);
+            future.cancel(true);
+            assertTrue(future.isCancelled());
+
+            // single thread of the executor must be freed
+            var next = service.callAsync("fast");
+            assertEquals("done", next.get(2, TimeUnit.SECONDS).getStringValue(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
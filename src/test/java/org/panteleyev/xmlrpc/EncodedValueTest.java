@@ -0,0 +1,72 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EncodedValueTest {
+    private static final String AUTH = "<struct><member><name>user</name><value><string>a&amp;b</string></value>"
+            + "</member></struct>";
+
+    @Test
+    public void testEncodedParameter() {
+        var auth = EncodedValue.of(Map.of("user", "a&b"));
+        assertEquals(AUTH, auth.toString());
+        assertEquals(AUTH.length(), auth.size());
+
+        var p = new XMLRPCParameters(TimeZone.getDefault()).appendParameter(auth).appendParameter(1);
+        assertEquals("<param><value>" + AUTH + "</value></param><param><value><int>1</int></value></param>",
+                p.getParametersString());
+    }
+
+    @Test
+    public void testNestedEncodedValue() {
+        var auth = EncodedValue.of(Map.of("user", "a&b"));
+        var request = new LinkedHashMap<String, Object>();
+        request.put("auth", auth);
+        request.put("ids", List.of(auth, 2));
+
+        var p = new XMLRPCParameters(TimeZone.getDefault()).appendParameter(request);
+        assertEquals("<param><value><struct>"
+                        + "<member><name>auth</name><value>" + AUTH + "</value></member>"
+                        + "<member><name>ids</name><value><array><data><value>" + AUTH + "</value>"
+                        + "<value><int>2</int></value></data></array></value></member>"
+                        + "</struct></value></param>",
+                p.getParametersString());
+    }
+
+    @Test
+    public void testEquality() {
+        assertEquals(EncodedValue.of(List.of(1, "ф")), EncodedValue.of(List.of(1, "ф")));
+        assertEquals(EncodedValue.of(List.of(1, "ф")).hashCode(), EncodedValue.of(List.of(1, "ф")).hashCode());
+    }
+
+    @Test
+    public void testServiceEncoding() throws Exception {
+        try (var server = new StubServer(request -> StubServer.response("<int>1</int>"))) {
+            var service = new XMLRPCService(server.url());
+            var auth = service.encode(Map.of("user", "a&b"));
+            service.call("test", auth);
+            service.call("test", auth);
+            for (var request : server.requests()) {
+                assertEquals("<?xml version=\"1.0\"?><methodCall><methodName>test</methodName><params>"
+                        + "<param><value>" + AUTH + "</value></param></params></methodCall>", request);
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedValue() {
+        assertThrows(RuntimeException.class, () -> EncodedValue.of(new Object()));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonTranscoderTest {
+    private static final String RESPONSE = """
+            <?xml version="1.0"?>
+            <methodResponse>
+                <params>
+                    <param><value><struct>
+                        <member><name>id</name><value><i4>42</i4></value></member>
+                        <member><name>size</name><value><i8>9000000000</i8></value></member>
+                        <member><name>price</name><value><double>12.5</double></value></member>
+                        <member><name>active</name><value><boolean>0</boolean></value></member>
+                        <member><name>title</name><value><string>"Quote" \\ &lt;tag&gt;
+            ф</string></value></member>
+                        <member><name>plain</name><value>untyped</value></member>
+                        <member><name>data</name><value><base64>
+                            AQID
+                            BA==
+                        </base64></value></member>
+                        <member><name>created</name><value><dateTime.iso8601>20220102T03:04:05</dateTime.iso8601></value></member>
+                        <member><name>tags</name><value><array><data>
+                            <value><string>a</string></value>
+                            <value><array><data></data></array></value>
+                            <value><struct></struct></value>
+                        </data></array></value></member>
+                    </struct></value></param>
+                </params>
+            </methodResponse>
+            """;
+
+    private static final String JSON = "{\"result\":{\"id\":42,\"size\":9000000000,\"price\":12.5,"
+            + "\"active\":false,\"title\":\"\\\"Quote\\\" \\\\ <tag>\\nф\",\"plain\":\"untyped\","
+            + "\"data\":\"AQIDBA==\",\"created\":\"2022-01-02T03:04:05Z\","
+            + "\"tags\":[\"a\",[],{}]}}";
+
+    @Test
+    public void testTranscoding() throws Exception {
+        try (var server = new StubServer(request -> RESPONSE)) {
+            var service = new XMLRPCService(server.url());
+
+            var writer = new StringWriter();
+            service.call(JsonTranscoder.to(writer), "items.get");
+            assertEquals(JSON, writer.toString());
+
+            var stream = new ByteArrayOutputStream();
+            service.call(JsonTranscoder.to(stream), "items.get");
+            assertEquals(JSON, stream.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testFault() throws Exception {
+        var fault = """
+                <?xml version="1.0"?>
+                <methodResponse><fault><value><struct>
+                    <member><name>faultCode</name><value><int>4</int></value></member>
+                    <member><name>faultString</name><value><string>Too "many" parameters.</string></value></member>
+                </struct></value></fault></methodResponse>
+                """;
+        try (var server = new StubServer(request -> fault)) {
+            var writer = new StringWriter();
+            new XMLRPCService(server.url()).call(JsonTranscoder.to(writer), "items.get");
+            assertEquals("{\"error\":{\"code\":4,\"message\":\"Too \\\"many\\\" parameters.\"}}",
+                    writer.toString());
+        }
+    }
+
+    @Test
+    public void testEmptyResponse() throws Exception {
+        try (var server = new StubServer(request -> "<methodResponse><params></params></methodResponse>")) {
+            var writer = new StringWriter();
+            new XMLRPCService(server.url()).call(JsonTranscoder.to(writer), "items.get");
+            assertEquals("{\"result\":null}", writer.toString());
+        }
+    }
+
+    @Test
+    public void testMalformedResponse() throws Exception {
+        try (var server = new StubServer(request -> "<methodResponse><params>")) {
+            var service = new XMLRPCService(server.url());
+            assertThrows(XMLRPCException.class, () -> service.call(JsonTranscoder.to(new StringWriter()), "x"));
+        }
+    }
+}
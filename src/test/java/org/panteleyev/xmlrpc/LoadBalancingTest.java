@@ -0,0 +1,116 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadBalancingTest {
+    private static final int CLIENTS = 8;
+
+    private static Function<String, String> delay(long millis) {
+        return request -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return StubServer.response("<int>" + millis + "</int>");
+        };
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadBalancing.class)
+    public void testDistribution(LoadBalancing loadBalancing) throws Exception {
+        var pool = Executors.newFixedThreadPool(CLIENTS);
+        try (var fast = new StubServer(delay(2));
+             var medium = new StubServer(delay(20));
+             var slow = new StubServer(delay(80))) {
+            var service = XMLRPCService.builder(List.of(fast.url(), medium.url(), slow.url()))
+                    .loadBalancing(loadBalancing)
+                    .build();
+
+            var stop = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+            var tasks = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < CLIENTS; i++) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    while (System.nanoTime() < stop) {
+                        try {
+                            service.call("work");
+                        } catch (Exception ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                }, pool));
+            }
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+            var fastCount = fast.requests().size();
+            var mediumCount = medium.requests().size();
+            var slowCount = slow.requests().size();
+            assertTrue(fastCount > mediumCount && mediumCount > slowCount,
+                    "Distribution: " + fastCount + ", " + mediumCount + ", " + slowCount);
+            assertTrue(slowCount > 0);
+            service.getEndpoints().forEach(e -> assertEquals(0, e.getOutstanding()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailurePenalty() {
+        var healthy = new Endpoint("http://127.0.0.1:1/", null);
+        healthy.start();
+        healthy.complete(Duration.ofMillis(5).toNanos(), false, 0, null);
+
+        // refused connections fail fast, but the endpoint must not look cheaper than a working one
+        var refusing = new Endpoint("http://127.0.0.1:2/", null);
+        for (int i = 0; i < 3; i++) {
+            refusing.start();
+            refusing.complete(Duration.ofNanos(10_000).toNanos(), true, 0, null);
+        }
+        assertEquals(Duration.ZERO, refusing.getLatency());
+        assertTrue(refusing.cost() > healthy.cost());
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        var deadUrl = "http://127.0.0.1:" + StubServer.freePort() + "/";
+        try (var alive = new StubServer(delay(0))) {
+            var service = XMLRPCService.builder(List.of(deadUrl, alive.url()))
+                    .loadBalancing(LoadBalancing.LEAST_OUTSTANDING)
+                    .ejection(2, Duration.ofMinutes(1))
+                    .build();
+
+            var failures = 0;
+            for (int i = 0; i < 50; i++) {
+                try {
+                    service.call("work");
+                } catch (java.net.ConnectException ex) {
+                    failures++;
+                }
+            }
+            assertTrue(failures <= 2, "Failures: " + failures);
+            assertTrue(alive.requests().size() >= 48);
+
+            var dead = service.getEndpoints().get(0);
+            assertTrue(dead.isEjected());
+            assertFalse(service.getEndpoints().get(1).isEjected());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelDecoderTest {
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterAll
+    public static void shutdown() {
+        POOL.shutdown();
+    }
+
+    private static String items(int count) {
+        var b = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<methodResponse>\n<params><param>"
+                + "<value><array><data>\n");
+        for (int i = 0; i < count; i++) {
+            b.append("<value><struct>")
+                    .append("<member><name>id</name><value><int>").append(i).append("</int></value></member>")
+                    .append("<member><name>name</name><value><string>item &lt;").append(i)
+                    .append("&gt; <![CDATA[</value></data>]]></string></value></member>")
+                    .append("<member><name>price</name><value><double>").append(i / 4.0)
+                    .append("</double></value></member>")
+                    .append("<member><name>tags</name><value><array><data><value>a</value><value/>")
+                    .append("</data></array></value></member>")
+                    .append("<member><name>updated</name><value><dateTime.iso8601>20220102T03:04:05")
+                    .append("</dateTime.iso8601></value></member>")
+                    .append("</struct></value><!-- <value> -->\n");
+        }
+        return b.append("</data></array></value></param></params>\n</methodResponse>\n").toString();
+    }
+
+    private static List<Object> decode(String response) throws Exception {
+        return ParallelDecoder.decode(response.getBytes(StandardCharsets.UTF_8), GMT, XMLRPCCodecs.DEFAULT, POOL);
+    }
+
+    private static List<Object> sequential(String response) throws Exception {
+        var in = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+        return new XMLRPCReader(in, GMT, XMLRPCCodecs.DEFAULT).readValues();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 100, 10_000})
+    public void testSameAsSequential(int count) throws Exception {
+        var response = items(count);
+        var values = decode(response);
+        assertNotNull(values);
+        assertEquals(sequential(response), values);
+        assertEquals(count, ((List<?>) values.get(0)).size());
+    }
+
+    @Test
+    public void testBase64() throws Exception {
+        var response = StubServer.response("<array><data><value><base64>AQID</base64></value>"
+                + "<value><base64>BAUG</base64></value></data></array>");
+        var values = (List<?>) decode(response).get(0);
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) values.get(0));
+        assertArrayEquals(new byte[]{4, 5, 6}, (byte[]) values.get(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // fault
+            "<?xml version=\"1.0\"?><methodResponse><fault><value><struct></struct></value></fault></methodResponse>",
+            // not an array
+            "<?xml version=\"1.0\"?><methodResponse><params><param><value><int>1</int></value></param></params>"
+                    + "</methodResponse>",
+            // several values
+            "<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data></data></array></value>"
+                    + "</param><param><value><array><data></data></array></value></param></params>"
+                    + "</methodResponse>",
+            // namespace declaration
+            "<?xml version=\"1.0\"?><methodResponse xmlns:x=\"urn:x\"><params><param><value><array><data>"
+                    + "</data></array></value></param></params></methodResponse>",
+            // encoding
+            "<?xml version=\"1.0\" encoding=\"windows-1251\"?><methodResponse><params><param><value><array>"
+                    + "<data></data></array></value></param></params></methodResponse>",
+            // document type
+            "<?xml version=\"1.0\"?><!DOCTYPE methodResponse><methodResponse><params><param><value><array>"
+                    + "<data></data></array></value></param></params></methodResponse>",
+            // unbalanced
+            "<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data><value><int>1</int>"
+                    + "</value></data></array></value></param></params>",
+    })
+    public void testUnsupportedLayout(String response) throws Exception {
+        assertNull(decode(response));
+    }
+
+    @Test
+    public void testError() {
+        var response = items(2000).replace("<int>1500</int>", "<int>x</int>");
+        assertThrows(NumberFormatException.class, () -> decode(response));
+        var broken = items(2000).replace("<int>1500</int>", "<int>1500</i>");
+        assertThrows(XMLRPCException.class, () -> decode(broken));
+    }
+
+    @Test
+    public void testService() throws Exception {
+        var response = items(5000);
+        try (var server = new StubServer(request -> response)) {
+            var expected = XMLRPCService.builder(server.url()).build().call("items.list");
+            var parallel = XMLRPCService.builder(server.url())
+                    .parallelDecoding(1024, POOL)
+                    .build()
+                    .call("items.list");
+            assertEquals(expected.getArrayValue(0).size(), parallel.getArrayValue(0).size());
+            assertEquals(expected.getArrayValue(0).get(4321), parallel.getArrayValue(0).get(4321));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares sequential decoding of a large array response with parallel decoding on pools of different size.
+ * <pre>
+ * mvn test-compile
+ * java -Xmx4g -cp target/classes:target/test-classes org.panteleyev.xmlrpc.ParallelDecodingBenchmark [items]
+ * </pre>
+ */
+public final class ParallelDecodingBenchmark {
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final int ITERATIONS = 5;
+
+    private ParallelDecodingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        var payload = payload(items).getBytes(StandardCharsets.UTF_8);
+        System.out.printf("%d items, %d MB%n", items, payload.length / (1024 * 1024));
+
+        run("document   ", () -> new XMLRPCResult(new ByteArrayInputStream(payload), GMT, XMLRPCCodecs.DEFAULT));
+        run("reader     ", () -> new XMLRPCReader(new ByteArrayInputStream(payload), GMT, XMLRPCCodecs.DEFAULT)
+                .readValues());
+        var cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            var pool = new ForkJoinPool(threads);
+            run(String.format("parallel %2d", threads),
+                    () -> ParallelDecoder.decode(payload, GMT, XMLRPCCodecs.DEFAULT, pool));
+            pool.shutdown();
+        }
+    }
+
+    private static void run(String name, Decode decode) throws Exception {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode.run();
+        }
+
+        var start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode.run();
+        }
+        var time = (System.nanoTime() - start) / ITERATIONS;
+        System.out.printf("%s %8.1f ms/op%n", name, time / 1e6);
+    }
+
+    private static String payload(int count) {
+        var b = new StringBuilder("<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data>");
+        for (int i = 0; i < count; i++) {
+            b.append("<value><struct>")
+                    .append(member("id", "<int>" + i + "</int>"))
+                    .append(member("status", "<string>open</string>"))
+                    .append(member("price", "<double>" + i * 0.25 + "</double>"))
+                    .append(member("updated", "<dateTime.iso8601>20220102T03:04:05</dateTime.iso8601>"));
+            for (int m = 0; m < 10; m++) {
+                b.append(member("field" + m, "<string>value of field " + m + "</string>"));
+            }
+            b.append("</struct></value>");
+        }
+        return b.append("</data></array></value></param></params></methodResponse>").toString();
+    }
+
+    private static String member(String name, String value) {
+        return "<member><name>" + name + "</name><value>" + value + "</value></member>";
+    }
+
+    @FunctionalInterface
+    private interface Decode {
+        Object run() throws Exception;
+    }
+}
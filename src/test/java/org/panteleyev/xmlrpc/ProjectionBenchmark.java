@@ -0,0 +1,108 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
+/**
+ * Compares full decoding of wide and deep responses with decoding of a projection.
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes org.panteleyev.xmlrpc.ProjectionBenchmark [iterations]
+ * </pre>
+ */
+public final class ProjectionBenchmark {
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private ProjectionBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        var wide = wide(2000, 30).getBytes(StandardCharsets.UTF_8);
+        var deep = deep(2000, 6).getBytes(StandardCharsets.UTF_8);
+        var projection = Projection.of("[*].id", "[*].status");
+
+        for (var payload : new byte[][]{wide, deep}) {
+            var name = payload == wide ? "wide" : "deep";
+            System.out.printf("%s payload, %d KB%n", name, payload.length / 1024);
+            run("  full      ", payload, null, iterations);
+            run("  projection", payload, projection, iterations);
+        }
+    }
+
+    private static void run(String name, byte[] payload, Projection projection, int iterations) throws Exception {
+        // warm up
+        for (int i = 0; i < iterations / 2; i++) {
+            parse(payload, projection);
+        }
+
+        var thread = Thread.currentThread().getId();
+        var bytes = THREADS.getThreadAllocatedBytes(thread);
+        var start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parse(payload, projection);
+        }
+        var time = (System.nanoTime() - start) / iterations;
+        bytes = (THREADS.getThreadAllocatedBytes(thread) - bytes) / iterations;
+        System.out.printf("%s %8.2f ms/op %10d KB/op%n", name, time / 1e6, bytes / 1024);
+    }
+
+    private static XMLRPCResult parse(byte[] payload, Projection projection) throws Exception {
+        var in = new ByteArrayInputStream(payload);
+        return projection == null ?
+                new XMLRPCResult(in, GMT, XMLRPCCodecs.DEFAULT) :
+                new XMLRPCResult(in, GMT, XMLRPCCodecs.DEFAULT, projection);
+    }
+
+    /**
+     * Array of structs with many scalar members.
+     */
+    private static String wide(int count, int members) {
+        var b = new StringBuilder("<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data>");
+        for (int i = 0; i < count; i++) {
+            b.append("<value><struct>")
+                    .append(member("id", "<int>" + i + "</int>"))
+                    .append(member("status", "<string>open</string>"));
+            for (int m = 0; m < members; m++) {
+                b.append(member("field" + m, "<string>value of field " + m + "</string>"));
+            }
+            b.append("</struct></value>");
+        }
+        return b.append("</data></array></value></param></params></methodResponse>").toString();
+    }
+
+    /**
+     * Array of structs with nested subtree.
+     */
+    private static String deep(int count, int depth) {
+        var b = new StringBuilder("<?xml version=\"1.0\"?><methodResponse><params><param><value><array><data>");
+        for (int i = 0; i < count; i++) {
+            var nested = "<string>leaf</string>";
+            for (int d = 0; d < depth; d++) {
+                nested = "<struct>" + member("level", "<int>" + d + "</int>")
+                        + member("children", "<array><data><value>" + nested + "</value><value>" + nested
+                        + "</value></data></array>") + "</struct>";
+            }
+            b.append("<value><struct>")
+                    .append(member("id", "<int>" + i + "</int>"))
+                    .append(member("status", "<string>open</string>"))
+                    .append(member("tree", nested))
+                    .append("</struct></value>");
+        }
+        return b.append("</data></array></value></param></params></methodResponse>").toString();
+    }
+
+    private static String member(String name, String value) {
+        return "<member><name>" + name + "</name><value>" + value + "</value></member>";
+    }
+}
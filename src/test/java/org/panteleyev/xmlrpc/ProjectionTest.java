@@ -0,0 +1,113 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ProjectionTest {
+    private static final String RESPONSE = """
+            <?xml version="1.0"?>
+            <methodResponse>
+                <params>
+                    <param><value><array><data>
+                        <value><struct>
+                            <member><name>id</name><value><int>1</int></value></member>
+                            <member><name>status</name><value><string>open</string></value></member>
+                            <member><name>owner</name><value><struct>
+                                <member><name>name</name><value><string>John</string></value></member>
+                                <member><name>tags</name><value><array><data>
+                                    <value><string>a</string></value>
+                                </data></array></value></member>
+                            </struct></value></member>
+                        </struct></value>
+                        <value><struct>
+                            <member><name>id</name><value><int>2</int></value></member>
+                            <member><name>status</name><value><string>closed</string></value></member>
+                            <member><name>history</name><value><array><data>
+                                <value><struct><member><name>id</name><value><int>7</int></value></member></struct></value>
+                            </data></array></value></member>
+                        </struct></value>
+                    </data></array></value></param>
+                </params>
+            </methodResponse>
+            """;
+
+    private static XMLRPCResult parse(String response, Projection projection) throws Exception {
+        var in = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+        return new XMLRPCResult(in, TimeZone.getTimeZone("GMT"), XMLRPCCodecs.DEFAULT, projection);
+    }
+
+    @Test
+    public void testArrayMembers() throws Exception {
+        var result = parse(RESPONSE, Projection.of("[*].id", "[*].status"));
+        assertEquals(List.of(
+                Map.of("id", 1, "status", "open"),
+                Map.of("id", 2, "status", "closed")
+        ), result.getArrayValue(0));
+    }
+
+    @Test
+    public void testNestedMembers() throws Exception {
+        var result = parse(RESPONSE, Projection.of("[*].owner.name", "[*].history[*]"));
+        assertEquals(List.of(
+                Map.of("owner", Map.of("name", "John")),
+                Map.of("history", List.of(Map.of("id", 7)))
+        ), result.getArrayValue(0));
+    }
+
+    @Test
+    public void testSubtree() throws Exception {
+        var result = parse(RESPONSE, Projection.of("[*].owner"));
+        assertEquals(List.of(
+                Map.of("owner", Map.of("name", "John", "tags", List.of("a"))),
+                Map.of()
+        ), result.getArrayValue(0));
+    }
+
+    @Test
+    public void testWholeValueMatchesFullParser() throws Exception {
+        var projected = parse(RESPONSE, Projection.of("[*]"));
+        assertEquals(TestUtil.parseResult(RESPONSE).getValues(), projected.getValues());
+    }
+
+    @Test
+    public void testFault() {
+        var response = """
+                <?xml version="1.0"?>
+                <methodResponse><fault><value><struct>
+                    <member><name>faultCode</name><value><int>4</int></value></member>
+                    <member><name>faultString</name><value><string>Too many parameters.</string></value></member>
+                </struct></value></fault></methodResponse>
+                """;
+        var ex = assertThrows(XMLRPCException.class, () -> parse(response, Projection.of("id")));
+        assertEquals(4, ex.getFaultCode());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "a.", ".a", "a..b", "[*]a", "a[1]"})
+    public void testMalformedPath(String path) {
+        assertThrows(IllegalArgumentException.class, () -> Projection.of(path));
+    }
+
+    @Test
+    public void testProjectedCall() throws Exception {
+        try (var server = new StubServer(request -> RESPONSE)) {
+            var service = new XMLRPCService(server.url());
+            var result = service.call(Projection.of("[*].id"), "items.list");
+            assertEquals(List.of(Map.of("id", 1), Map.of("id", 2)), result.getArrayValue(0));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseLimitsTest {
+    // depth 3, 7 values
+    private static final String NESTED = StubServer.response("""
+            <struct>
+                <member><name>items</name><value><array><data>
+                    <value><int>1</int></value>
+                    <value><int>2</int></value>
+                    <value><int>3</int></value>
+                    <value><int>4</int></value>
+                </data></array></value></member>
+                <member><name>total</name><value><int>4</int></value></member>
+            </struct>
+            """);
+
+    private static XMLRPCService service(StubServer server, ResponseLimits limits) {
+        return XMLRPCService.builder(server.url()).responseLimits(limits).build();
+    }
+
+    @Test
+    public void testWithinLimits() throws Exception {
+        try (var server = new StubServer(request -> NESTED)) {
+            var limits = ResponseLimits.builder()
+                    .maxBytes(NESTED.length())
+                    .maxDepth(3)
+                    .maxElements(7)
+                    .build();
+            var result = service(server, limits).call("items.list");
+            assertEquals(List.of(1, 2, 3, 4), result.getStructValue(0).get("items"));
+            assertEquals(4, result.getStructValue(0).get("total"));
+        }
+    }
+
+    @Test
+    public void testMaxBytes() throws Exception {
+        try (var server = new StubServer(request -> NESTED)) {
+            var service = service(server, ResponseLimits.builder().maxBytes(NESTED.length() - 1).build());
+            var ex = assertThrows(XMLRPCLimitException.class, () -> service.call("items.list"));
+            assertTrue(ex.getMessage().contains("exceeds limit"));
+        }
+    }
+
+    @Test
+    public void testLimitIsNotEndpointFailure() throws Exception {
+        try (var server = new StubServer(request -> NESTED)) {
+            var service = XMLRPCService.builder(server.url())
+                    .responseLimits(ResponseLimits.builder().maxElements(6).build())
+                    .ejection(1, Duration.ofMinutes(1))
+                    .concurrencyLimit(ConcurrencyLimit.builder(ConcurrencyLimit.Algorithm.AIMD)
+                            .limits(10, 1, 10)
+                            .build())
+                    .build();
+            for (int i = 0; i < 3; i++) {
+                assertThrows(XMLRPCLimitException.class, () -> service.call("items.list"));
+            }
+            var endpoint = service.getEndpoints().get(0);
+            var limiter = endpoint.getConcurrencyLimiter().orElseThrow();
+            assertFalse(endpoint.isEjected());
+            assertEquals(Duration.ZERO, endpoint.getLatency());
+            assertEquals(0, endpoint.getOutstanding());
+            assertEquals(10, limiter.getLimit());
+            assertEquals(0, limiter.getInFlight());
+        }
+    }
+
+    @Test
+    public void testMaxBytesOfUnknownLength() {
+        var bytes = NESTED.getBytes();
+        assertThrows(XMLRPCLimitException.class, () -> {
+            try (var in = new ResponseStream(new ByteArrayInputStream(bytes), -1, 100, null, Deadline.none())) {
+                in.readAllBytes();
+            }
+        });
+    }
+
+    @Test
+    public void testMaxDepth() throws Exception {
+        try (var server = new StubServer(request -> NESTED)) {
+            var service = service(server, ResponseLimits.builder().maxDepth(2).build());
+            assertThrows(XMLRPCLimitException.class, () -> service.call("items.list"));
+            assertThrows(XMLRPCLimitException.class, () -> service.call(Projection.of("total"), "items.list"));
+        }
+    }
+
+    @Test
+    public void testMaxElements() throws Exception {
+        try (var server = new StubServer(request -> NESTED)) {
+            var service = service(server, ResponseLimits.builder().maxElements(6).build());
+            assertThrows(XMLRPCLimitException.class, () -> service.call("items.list"));
+            assertThrows(XMLRPCLimitException.class,
+                    () -> service.call(JsonTranscoder.to(new StringWriter()), "items.list"));
+        }
+    }
+
+    @Test
+    public void testDeepNestingIsRejectedEarly() throws Exception {
+        var response = StubServer.response("<array><data><value>".repeat(100_000)
+                + "<int>1</int>" + "</value></data></array>".repeat(100_000));
+        try (var server = new StubServer(request -> response)) {
+            var service = service(server, ResponseLimits.builder().maxDepth(64).build());
+            var ex = assertThrows(XMLRPCLimitException.class, () -> service.call("items.list"));
+            assertTrue(ex.getMessage().contains("depth"));
+        }
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        try (var server = new StubServer(request -> NESTED)) {
+            var budget = MemoryBudget.of(NESTED.length(), Duration.ZERO);
+            var service = XMLRPCService.builder(server.url()).memoryBudget(budget).build();
+            service.call("items.list");
+            service.call("items.list");
+            assertEquals(0, budget.getUsed());
+
+            var small = MemoryBudget.of(NESTED.length() - 1, Duration.ZERO);
+            var rejected = XMLRPCService.builder(server.url()).memoryBudget(small).build();
+            assertThrows(XMLRPCLimitException.class, () -> rejected.call("items.list"));
+            assertEquals(1, small.getRejectedCount());
+            assertEquals(0, small.getUsed());
+        }
+    }
+
+    @Test
+    public void testMemoryBudgetDelaysResponses() throws Exception {
+        var budget = MemoryBudget.of(100, Duration.ofSeconds(10));
+        budget.acquire(60, Deadline.none());
+
+        var waiting = CompletableFuture.runAsync(() -> {
+            try {
+                budget.acquire(60, Deadline.none());
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        while (budget.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        assertFalse(waiting.isDone());
+
+        budget.release(60);
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(60, budget.getUsed());
+    }
+
+    @Test
+    public void testMemoryBudgetOfUnknownLength() throws Exception {
+        var budget = MemoryBudget.of(1024 * 1024, Duration.ZERO);
+        var bytes = new byte[200_000];
+        try (var in = new ResponseStream(new ByteArrayInputStream(bytes), -1, Long.MAX_VALUE, budget,
+                Deadline.none())) {
+            in.readAllBytes();
+            assertTrue(budget.getUsed() >= bytes.length);
+        }
+        assertEquals(0, budget.getUsed());
+
+        var small = MemoryBudget.of(100_000, Duration.ZERO);
+        assertThrows(XMLRPCLimitException.class, () -> {
+            try (var in = new ResponseStream(new ByteArrayInputStream(bytes), -1, Long.MAX_VALUE, small,
+                    Deadline.none())) {
+                in.readAllBytes();
+            }
+        });
+        assertEquals(0, small.getUsed());
+    }
+}
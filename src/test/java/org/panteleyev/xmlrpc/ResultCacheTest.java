@@ -0,0 +1,172 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResultCacheTest {
+    private static final String CATALOG = StubServer.response("""
+            <array><data>
+                <value><struct>
+                    <member><name>id</name><value><int>1</int></value></member>
+                    <member><name>name</name><value><string>Чай</string></value></member>
+                    <member><name>size</name><value><i8>9000000000</i8></value></member>
+                    <member><name>price</name><value><double>2.5</double></value></member>
+                    <member><name>active</name><value><boolean>1</boolean></value></member>
+                    <member><name>image</name><value><base64>AQID</base64></value></member>
+                    <member><name>updated</name><value><dateTime.iso8601>20220102T03:04:05</dateTime.iso8601></value></member>
+                    <member><name>tags</name><value><array><data><value><string>a</string></value></data></array></value></member>
+                </struct></value>
+            </data></array>
+            """);
+
+    @TempDir
+    Path directory;
+
+    private static XMLRPCService service(StubServer server, ResultCache cache) {
+        return XMLRPCService.builder(server.url()).resultCache(cache, "catalog.list").build();
+    }
+
+    @Test
+    public void testResultSurvivesRestart() throws Exception {
+        try (var server = new StubServer(request -> CATALOG)) {
+            var expected = service(server, ResultCache.builder(directory).build()).call("catalog.list", 1);
+
+            // new cache instance over the same directory
+            var cache = ResultCache.builder(directory).build();
+            assertTrue(cache.getSize() > 0);
+            Path file;
+            try (var files = Files.list(directory)) {
+                file = files.findFirst().orElseThrow();
+            }
+            var modified = Files.getLastModifiedTime(file);
+            var cached = service(server, cache).call("catalog.list", 1);
+            assertEquals(1, server.requests().size());
+            // access order of recent hits is kept in memory
+            assertEquals(modified, Files.getLastModifiedTime(file));
+
+            var item = (Map<?, ?>) cached.getArrayValue(0).get(0);
+            var expectedItem = (Map<?, ?>) expected.getArrayValue(0).get(0);
+            assertEquals(expectedItem.keySet(), item.keySet());
+            for (var key : List.of("id", "name", "size", "price", "active", "updated", "tags")) {
+                assertEquals(expectedItem.get(key), item.get(key), key);
+            }
+            assertArrayEquals((byte[]) expectedItem.get("image"), (byte[]) item.get("image"));
+            assertEquals(new Date(1641092645000L), item.get("updated"));
+            assertThrows(UnsupportedOperationException.class, () -> cached.getArrayValue(0).remove(0));
+
+            // different parameters are not cached
+            service(server, cache).call("catalog.list", 2);
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testOnlyRegisteredMethods() throws Exception {
+        try (var server = new StubServer(request -> CATALOG)) {
+            var cache = ResultCache.builder(directory).build();
+            var service = service(server, cache);
+            service.call("catalog.other");
+            service.call("catalog.other");
+            assertEquals(2, server.requests().size());
+
+            service.callAsync("catalog.list").get();
+            // result is stored after the future completes
+            for (int i = 0; i < 100 && cache.getSize() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, service.callAsync("catalog.list").get().getArrayValue(0).size());
+            assertEquals(3, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        try (var server = new StubServer(request -> CATALOG)) {
+            var service = service(server, ResultCache.builder(directory).ttl(Duration.ofMillis(50)).build());
+            service.call("catalog.list");
+            service.call("catalog.list");
+            assertEquals(1, server.requests().size());
+
+            Thread.sleep(100);
+            service.call("catalog.list");
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testVersion() throws Exception {
+        var version = new AtomicReference<>("v1");
+        try (var server = new StubServer(request -> CATALOG)) {
+            var service = service(server, ResultCache.builder(directory).version(version::get).build());
+            service.call("catalog.list");
+            service.call("catalog.list");
+            assertEquals(1, server.requests().size());
+
+            version.set("v2");
+            service.call("catalog.list");
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        try (var server = new StubServer(request -> CATALOG)) {
+            var probe = ResultCache.builder(directory.resolve("probe")).build();
+            service(server, probe).call("catalog.list", 0);
+            var oneResult = probe.getSize();
+
+            var cache = ResultCache.builder(directory.resolve("cache")).maxSize(oneResult * 2).build();
+            var service = service(server, cache);
+            service.call("catalog.list", 1);
+            service.call("catalog.list", 2);
+            service.call("catalog.list", 1);
+            service.call("catalog.list", 3);
+            assertEquals(oneResult * 2, cache.getSize());
+            try (var files = Files.list(directory.resolve("cache"))) {
+                assertEquals(2, files.count());
+            }
+
+            var requests = server.requests().size();
+            service.call("catalog.list", 1);
+            assertEquals(requests, server.requests().size());
+            service.call("catalog.list", 2);
+            assertEquals(requests + 1, server.requests().size());
+        }
+    }
+
+    @Test
+    public void testFaultIsNotCached() throws Exception {
+        var fault = """
+                <?xml version="1.0"?>
+                <methodResponse><fault><value><struct>
+                    <member><name>faultCode</name><value><int>4</int></value></member>
+                    <member><name>faultString</name><value><string>Not now</string></value></member>
+                </struct></value></fault></methodResponse>
+                """;
+        try (var server = new StubServer(request -> fault)) {
+            var cache = ResultCache.builder(directory).build();
+            var service = service(server, cache);
+            assertThrows(XMLRPCException.class, () -> service.call("catalog.list"));
+            assertThrows(XMLRPCException.class, () -> service.call("catalog.list"));
+            assertEquals(2, server.requests().size());
+            assertEquals(0, cache.getSize());
+        }
+    }
+}
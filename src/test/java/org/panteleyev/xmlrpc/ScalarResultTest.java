@@ -6,9 +6,12 @@ package org.panteleyev.xmlrpc;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -111,6 +114,23 @@ public class ScalarResultTest {
             </methodResponse>
             """;
 
+    private static final String UNTYPED_RESPONSE = """
+            <?xml version="1.0"?>
+            <methodResponse>
+                <params>
+                    <param>
+                        <value>South Dakota</value>
+                    </param>
+                    <param>
+                        <value/>
+                    </param>
+                    <param>
+                        <value><array><data><value>a</value></data></array></value>
+                    </param>
+                </params>
+            </methodResponse>
+            """;
+
     @Test
     public void stringValue() throws Exception {
         var res = TestUtil.parseResult(STRING_RESPONSE);
@@ -119,6 +139,21 @@ public class ScalarResultTest {
         assertEquals("South Dakota", res.getStringValue(0));
     }
 
+    @Test
+    public void untypedValue() throws Exception {
+        var res = TestUtil.parseResult(UNTYPED_RESPONSE);
+
+        assertEquals(3, res.getValueCount());
+        assertEquals("South Dakota", res.getStringValue(0));
+        assertEquals("", res.getStringValue(1));
+        assertEquals(List.of("a"), res.getArrayValue(2));
+
+        // streaming reader decodes the same values
+        var in = new ByteArrayInputStream(UNTYPED_RESPONSE.strip().getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of("South Dakota", "", List.of("a")),
+                new XMLRPCReader(in, TimeZone.getDefault(), XMLRPCCodecs.DEFAULT).readValues());
+    }
+
     @Test
     public void integerValue() throws Exception {
         var res = TestUtil.parseResult(INTEGER_RESPONSE);
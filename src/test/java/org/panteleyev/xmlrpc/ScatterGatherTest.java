@@ -0,0 +1,117 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScatterGatherTest {
+    private static final String FAULT = """
+            <?xml version="1.0"?><methodResponse><fault><value><struct>
+            <member><name>faultCode</name><value><int>3</int></value></member>
+            <member><name>faultString</name><value><string>broken</string></value></member>
+            </struct></value></fault></methodResponse>""";
+
+    private final List<StubServer> servers = new ArrayList<>();
+    private final Map<String, XMLRPCService> targets = new LinkedHashMap<>();
+
+    private void target(String name, Function<String, String> handler) throws Exception {
+        var server = new StubServer(handler);
+        servers.add(server);
+        targets.put(name, new XMLRPCService(server.url()));
+    }
+
+    @BeforeEach
+    public void setup() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            var name = "fast" + i;
+            target(name, r -> StubServer.response("<string>" + name + "</string>"));
+        }
+        target("slow", r -> {
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return StubServer.response("<string>slow</string>");
+        });
+        target("fault", r -> FAULT);
+        targets.put("dead", new XMLRPCService("http://127.0.0.1:" + StubServer.freePort() + "/"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        servers.forEach(StubServer::close);
+    }
+
+    @Test
+    public void testAwaitAll() throws Exception {
+        var start = System.nanoTime();
+        try (var calls = ScatterGather.start(targets, Deadline.after(Duration.ofMillis(500)), "status")) {
+            var responses = calls.awaitAll().stream()
+                    .collect(Collectors.toMap(ScatterGather.Response::key, r -> r));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+            assertEquals(6, responses.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals("fast" + i, responses.get("fast" + i).result().getStringValue(0));
+            }
+            assertInstanceOf(XMLRPCTimeoutException.class, responses.get("slow").error());
+            assertEquals(3, ((XMLRPCException) responses.get("fault").error()).getFaultCode());
+            assertInstanceOf(ConnectException.class, responses.get("dead").error());
+        }
+    }
+
+    @Test
+    public void testQuorum() throws Exception {
+        var start = System.nanoTime();
+        try (var calls = ScatterGather.start(targets, Deadline.after(Duration.ofSeconds(10)), "status")) {
+            var responses = calls.awaitQuorum(3);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            assertEquals(3, responses.stream().filter(ScatterGather.Response::isSuccess).count());
+        }
+    }
+
+    @Test
+    public void testQuorumNotReachable() {
+        var start = System.nanoTime();
+        var calls = ScatterGather.start(targets, Deadline.after(Duration.ofSeconds(10)), "status");
+        assertThrows(XMLRPCException.class, () -> calls.awaitQuorum(5));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        try (var calls = ScatterGather.start(targets, Deadline.after(Duration.ofMillis(500)), "status")) {
+            var successes = 0;
+            for (var response = calls.next(); response != null; response = calls.next()) {
+                if (response.isSuccess()) {
+                    successes++;
+                } else if (response.key().equals("slow")) {
+                    // slow target is aborted by deadline
+                    assertInstanceOf(XMLRPCTimeoutException.class, response.error());
+                }
+            }
+            assertEquals(3, successes);
+            assertTrue(calls.getReceived().size() >= 5);
+        }
+    }
+}
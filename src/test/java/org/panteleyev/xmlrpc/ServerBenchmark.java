@@ -0,0 +1,125 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures throughput and latency of {@link XMLRPCServer} with increasing number of client connections.
+ * Each connection is served by a client thread that sends calls one after another for the specified time.
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes org.panteleyev.xmlrpc.ServerBenchmark [seconds] [connections...]
+ * </pre>
+ */
+public final class ServerBenchmark {
+    private ServerBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        var connections = args.length > 1 ?
+                Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray() :
+                new int[]{1, 16, 64, 256, 1024};
+
+        // keep-alive cache must hold connection of each client thread
+        var max = Arrays.stream(connections).max().orElse(1);
+        System.setProperty("http.maxConnections", Integer.toString(max));
+
+        var item = Map.of("id", 1, "name", "item", "tags", List.of("a", "b", "c"));
+        try (var server = XMLRPCServer.builder(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .handler("echo", params -> params.getValues())
+                .build()
+                .start()) {
+            var service = new XMLRPCService("http://127.0.0.1:" + server.getPort() + "/");
+            // warm up
+            run(service, item, 4, 2);
+
+            System.out.println("connections   calls/s    p50 ms    p90 ms    p99 ms  p99.9 ms  errors");
+            for (var count : connections) {
+                run(service, item, count, seconds).print(count);
+            }
+        }
+    }
+
+    private static Report run(XMLRPCService service, Object item, int count, int seconds) throws Exception {
+        var start = new CountDownLatch(1);
+        var end = System.nanoTime() + seconds * 1_000_000_000L;
+        var threads = new ArrayList<Thread>(count);
+        var latencies = new ArrayList<long[]>(count);
+        var calls = new int[count];
+        var errors = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            var index = i;
+            var samples = new long[1024];
+            latencies.add(samples);
+            var thread = new Thread(() -> {
+                var local = samples;
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    try {
+                        service.call("echo", item);
+                    } catch (Exception ex) {
+                        errors[index]++;
+                    }
+                    if (calls[index] == local.length) {
+                        local = Arrays.copyOf(local, local.length * 2);
+                        latencies.set(index, local);
+                    }
+                    local[calls[index]++] = System.nanoTime() - now;
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        var begin = System.nanoTime();
+        start.countDown();
+        for (var thread : threads) {
+            thread.join();
+        }
+        var elapsed = System.nanoTime() - begin;
+
+        var total = Arrays.stream(calls).sum();
+        var all = new long[total];
+        var offset = 0;
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(latencies.get(i), 0, all, offset, calls[i]);
+            offset += calls[i];
+        }
+        Arrays.sort(all);
+        return new Report(total, Arrays.stream(errors).sum(), elapsed, all);
+    }
+
+    private record Report(int calls, int errors, long elapsedNanos, long[] latencies) {
+        long percentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            var index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+        }
+
+        void print(int connections) {
+            System.out.printf("%11d %9.0f %9.2f %9.2f %9.2f %9.2f %7d%n", connections,
+                    calls * 1e9 / elapsedNanos,
+                    percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(99.9) / 1e6,
+                    errors);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Measures time to the first XMLRPC call of a fresh JVM against a local stub server, with and without
+ * AppCDS archive.
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes org.panteleyev.xmlrpc.StartupBenchmark [runs]
+ * </pre>
+ */
+public final class StartupBenchmark {
+    private static final String CLIENT = "client";
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && CLIENT.equals(args[0])) {
+            runClient(args[1]);
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        var tmp = Files.createTempDirectory("xmlrpc");
+        // AppCDS supports only JAR files in class path
+        var classPath = jarClassPath(tmp);
+        try (var server = new StubServer(request -> StubServer.response("<string>Alabama</string>"))) {
+            var archive = tmp.resolve("xmlrpc.jsa");
+            launch(server.url(), classPath, "-XX:ArchiveClassesAtExit=" + archive);
+
+            report("default", measure(server.url(), classPath, runs));
+            report("AppCDS", measure(server.url(), classPath, runs, "-XX:SharedArchiveFile=" + archive));
+        } finally {
+            try (var files = Files.walk(tmp)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static String jarClassPath(Path tmp) throws IOException {
+        var entries = new ArrayList<String>();
+        for (var entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            var path = Path.of(entry);
+            if (!Files.isDirectory(path)) {
+                entries.add(entry);
+                continue;
+            }
+            var jar = tmp.resolve(entries.size() + ".jar");
+            try (var out = new JarOutputStream(Files.newOutputStream(jar)); var files = Files.walk(path)) {
+                for (var file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    out.putNextEntry(new JarEntry(path.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                }
+            }
+            entries.add(jar.toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void runClient(String url) throws Exception {
+        var start = System.nanoTime();
+        var result = new XMLRPCService(url).call("examples.getStateName", 41);
+        var elapsed = System.nanoTime() - start;
+        if (!"Alabama".equals(result.getStringValue(0))) {
+            throw new IllegalStateException("Unexpected result");
+        }
+        System.out.println(elapsed);
+    }
+
+    private static long[][] measure(String url, String classPath, int runs, String... options) throws Exception {
+        var result = new long[2][runs];
+        for (int i = 0; i < runs; i++) {
+            var start = System.nanoTime();
+            result[1][i] = launch(url, classPath, options);
+            result[0][i] = System.nanoTime() - start;
+        }
+        return result;
+    }
+
+    private static long launch(String url, String classPath, String... options) throws IOException, InterruptedException {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(options));
+        command.addAll(List.of("-cp", classPath,
+                StartupBenchmark.class.getName(), CLIENT, url));
+
+        var process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Client process failed");
+        }
+        var lines = output.lines().toList();
+        return Long.parseLong(lines.get(lines.size() - 1));
+    }
+
+    private static void report(String name, long[][] result) {
+        Arrays.sort(result[0]);
+        Arrays.sort(result[1]);
+        System.out.printf("%-8s process: %6.1f ms  first call: %6.1f ms (median of %d)%n", name,
+                result[0][result[0].length / 2] / 1e6, result[1][result[1].length / 2] / 1e6, result[0].length);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingParametersTest {
+    private static final String OK = StubServer.response("<boolean>1</boolean>");
+
+    @Test
+    public void testEncoders() throws IOException {
+        var file = Files.createTempFile("xmlrpc", ".bin");
+        try {
+            Files.write(file, new byte[]{1, 2, 3});
+            var p = new XMLRPCParameters(TimeZone.getDefault())
+                    .appendParameter(IntStream.of(1, 2).boxed())
+                    .appendParameter(List.of("a").iterator())
+                    .appendParameter(new ByteArrayInputStream(new byte[]{1, 2, 3}))
+                    .appendParameter(file);
+            assertEquals("<param><value><array><data><value><int>1</int></value><value><int>2</int></value>"
+                    + "</data></array></value></param>"
+                    + "<param><value><array><data><value><string>a</string></value></data></array></value></param>"
+                    + "<param><value><base64>AQID</base64></value></param>"
+                    + "<param><value><base64>AQID</base64></value></param>", p.getParametersString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testChunkedUpload() throws Exception {
+        var data = new byte[1024 * 1024];
+        new Random(1).nextBytes(data);
+
+        try (var server = new StubServer(request -> OK)) {
+            var service = new XMLRPCService(server.url());
+            var result = service.call("upload", new ByteArrayInputStream(data),
+                    IntStream.range(0, 10_000).boxed());
+            assertTrue(result.getBooleanValue(0));
+
+            var headers = server.headers().get(0);
+            assertEquals("chunked", headers.getFirst("Transfer-Encoding"));
+            assertNull(headers.getFirst("Content-Length"));
+
+            var request = server.requests().get(0);
+            assertTrue(request.startsWith("<?xml version=\"1.0\"?><methodCall><methodName>upload</methodName>"));
+            assertTrue(request.endsWith("<value><int>9999</int></value></data></array></value></param>"
+                    + "</params></methodCall>"));
+            var start = request.indexOf("<base64>") + "<base64>".length();
+            var end = request.indexOf("</base64>");
+            assertEquals(Base64.getEncoder().encodeToString(data), request.substring(start, end));
+        }
+    }
+
+    @Test
+    public void testFixedLengthUpload() throws Exception {
+        try (var server = new StubServer(request -> OK)) {
+            var service = new XMLRPCService(server.url());
+            service.call("plain", "ф", 1);
+
+            var headers = server.headers().get(0);
+            assertNull(headers.getFirst("Transfer-Encoding"));
+            var length = server.requests().get(0).getBytes(StandardCharsets.UTF_8).length;
+            assertEquals(Integer.toString(length), headers.getFirst("Content-Length"));
+        }
+    }
+
+    @Test
+    public void testNestedSources() throws Exception {
+        record Upload(String name, InputStream data) {
+        }
+
+        assertTrue(XMLRPCParameters.isStreaming(new Object[]{Map.of("data", new ByteArrayInputStream(new byte[0]))}));
+        assertTrue(XMLRPCParameters.isStreaming(new Object[]{List.of(1, List.of(List.of(1).iterator()))}));
+        assertTrue(XMLRPCParameters.isStreaming(new Object[]{new Upload("a", InputStream.nullInputStream())}));
+        assertFalse(XMLRPCParameters.isStreaming(new Object[]{Map.of("a", List.of(1, "b")), new byte[0]}));
+
+        var cache = ResultCache.builder(Files.createTempDirectory("xmlrpc")).build();
+        try (var server = new StubServer(request -> OK)) {
+            // cache key must not consume the source sent by the call
+            var service = XMLRPCService.builder(server.url()).resultCache(cache, "upload").build();
+            service.call("upload", Map.of("data", new ByteArrayInputStream(new byte[]{1, 2, 3})));
+            assertTrue(server.requests().get(0).contains("<base64>AQID</base64>"));
+        }
+    }
+
+    @Test
+    public void testSourceFailure() throws Exception {
+        var failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("disk failure");
+            }
+        };
+
+        try (var server = new StubServer(request -> OK)) {
+            var service = new XMLRPCService(server.url());
+            var ex = assertThrows(IOException.class, () -> service.call("upload", failing));
+            assertEquals("disk failure", ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StructuralHashTest {
+    @TempDir
+    Path directory;
+
+    private static Map<String, Object> item(int id, String status) {
+        var item = new LinkedHashMap<String, Object>();
+        item.put("id", id);
+        item.put("status", status);
+        item.put("tags", List.of("a", "b"));
+        return item;
+    }
+
+    private static XMLRPCResult parse(String value) throws Exception {
+        var bytes = StubServer.response(value).getBytes(StandardCharsets.UTF_8);
+        return new XMLRPCResult(new ByteArrayInputStream(bytes), TimeZone.getTimeZone("GMT"), XMLRPCCodecs.DEFAULT);
+    }
+
+    @Test
+    public void testStableHash() {
+        var first = new LinkedHashMap<String, Object>();
+        first.put("a", 1);
+        first.put("b", "two");
+        var second = new LinkedHashMap<String, Object>();
+        second.put("b", "two");
+        second.put("a", 1);
+
+        // order of struct members does not matter
+        assertEquals(StructuralHash.of(first).getValue(), StructuralHash.of(second).getValue());
+        assertEquals(StructuralHash.of(List.of(first, new byte[]{1, 2})).getValue(),
+                StructuralHash.of(List.of(second, new byte[]{1, 2})).getValue());
+
+        // types and order of elements are hashed
+        assertNotEquals(StructuralHash.of(1).getValue(), StructuralHash.of(1L).getValue());
+        assertNotEquals(StructuralHash.of("1").getValue(), StructuralHash.of(1).getValue());
+        assertNotEquals(StructuralHash.of(List.of(1, 2)).getValue(), StructuralHash.of(List.of(2, 1)).getValue());
+        assertNotEquals(StructuralHash.of(List.of()).getValue(), StructuralHash.of(Map.of()).getValue());
+        assertNotEquals(StructuralHash.of(new Date(0)).getValue(), StructuralHash.of(new Date(1)).getValue());
+    }
+
+    @Test
+    public void testElementsAndMembers() {
+        var hash = StructuralHash.of(List.of(item(1, "new"), 5));
+        assertEquals(StructuralHash.of(item(1, "new")), hash.getElement(0));
+        assertEquals(StructuralHash.of(5), hash.getElement(1));
+        assertEquals(StructuralHash.of("new"), hash.getElement(0).getMember("status"));
+        assertEquals(StructuralHash.of(List.of("a", "b")), hash.getElement(0).getMember("tags"));
+        assertNull(hash.getElement(0).getMember("missing"));
+    }
+
+    @Test
+    public void testDiff() {
+        var previous = StructuralHash.of(List.of(item(1, "new"), item(2, "new"), item(3, "new")));
+        assertEquals(List.of(), StructuralHash.diff(previous,
+                StructuralHash.of(List.of(item(1, "new"), item(2, "new"), item(3, "new")))));
+
+        var changed = item(2, "done");
+        changed.remove("tags");
+        changed.put("owner", "me");
+        assertEquals(List.of("[1].owner", "[1].status", "[1].tags", "[3]"), StructuralHash.diff(previous,
+                StructuralHash.of(List.of(item(1, "new"), changed, item(3, "new"), item(4, "new")))));
+
+        assertEquals(List.of("[2]"), StructuralHash.diff(previous,
+                StructuralHash.of(List.of(item(1, "new"), item(2, "new")))));
+        assertEquals(List.of("[0]"), StructuralHash.diff(previous,
+                StructuralHash.of(List.of("text", item(2, "new"), item(3, "new")))));
+        assertEquals(List.of(""), StructuralHash.diff(previous, StructuralHash.of(1)));
+    }
+
+    @Test
+    public void testResultDiff() throws Exception {
+        var previous = parse("<array><data>"
+                + "<value><struct><member><name>id</name><value><int>1</int></value></member>"
+                + "<member><name>status</name><value><string>new</string></value></member></struct></value>"
+                + "<value><struct><member><name>id</name><value><int>2</int></value></member>"
+                + "<member><name>status</name><value><string>new</string></value></member></struct></value>"
+                + "</data></array>");
+        var same = parse("<array><data>"
+                + "<value><struct><member><name>status</name><value><string>new</string></value></member>"
+                + "<member><name>id</name><value><int>1</int></value></member></struct></value>"
+                + "<value><struct><member><name>id</name><value><int>2</int></value></member>"
+                + "<member><name>status</name><value><string>new</string></value></member></struct></value>"
+                + "</data></array>");
+        var changed = parse("<array><data>"
+                + "<value><struct><member><name>id</name><value><int>1</int></value></member>"
+                + "<member><name>status</name><value><string>new</string></value></member></struct></value>"
+                + "<value><struct><member><name>id</name><value><int>2</int></value></member>"
+                + "<member><name>status</name><value><string>done</string></value></member></struct></value>"
+                + "</data></array>");
+
+        assertTrue(same.isSameAs(previous));
+        assertEquals(List.of(), same.diff(previous));
+        assertFalse(changed.isSameAs(previous));
+        assertEquals(List.of("[0][1].status"), changed.diff(previous));
+    }
+
+    @Test
+    public void testServiceHashing() throws Exception {
+        try (var server = new StubServer(request -> StubServer.response("<string>value</string>"))) {
+            var service = XMLRPCService.builder(server.url())
+                    .structuralHashing(true)
+                    .build();
+            var first = service.call("test");
+            var second = service.call("test");
+            assertTrue(isHashed(first));
+            assertTrue(second.isSameAs(first));
+            assertEquals(StructuralHash.of(List.of("value")), first.getHash());
+        }
+    }
+
+    @Test
+    public void testCachedResultsHashedOnDemand() throws Exception {
+        try (var server = new StubServer(request -> StubServer.response("<string>value</string>"))) {
+            var service = XMLRPCService.builder(server.url())
+                    .structuralHashing(true)
+                    .resultCache(ResultCache.builder(directory).build(), "cached")
+                    .build();
+            var first = service.call("cached");
+            var second = service.call("cached");
+            assertEquals(1, server.requests().size());
+            assertFalse(isHashed(first));
+            assertFalse(isHashed(second));
+            assertTrue(second.isSameAs(first));
+        }
+    }
+
+    private static boolean isHashed(XMLRPCResult result) throws ReflectiveOperationException {
+        var field = XMLRPCResult.class.getDeclaredField("hash");
+        field.setAccessible(true);
+        return field.get(result) != null;
+    }
+}
@@ -38,4 +38,11 @@ final class TestUtil {
         var doc = BUILDER.parse(inputSource);
         return new XMLRPCResult(tz).parse(doc);
     }
+
+    static XMLRPCResult parseResult(String str, TimeZone tz, XMLRPCCodecs codecs) throws Exception {
+        var inputSource = new InputSource();
+        inputSource.setCharacterStream(new StringReader(str));
+        var doc = BUILDER.parse(inputSource);
+        return new XMLRPCResult(tz, codecs).parse(doc);
+    }
 }
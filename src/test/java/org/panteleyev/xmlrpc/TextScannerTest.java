@@ -0,0 +1,62 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TextScannerTest {
+    private static int naiveMarkup(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '&' || bytes[i] == '<' || bytes[i] == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testScan() {
+        var random = new Random(42);
+        var alphabet = "abc&<>\u0000\u007f\u0080ÿ".getBytes(StandardCharsets.ISO_8859_1);
+        for (int n = 0; n < 2000; n++) {
+            var bytes = new byte[random.nextInt(40)];
+            for (int i = 0; i < bytes.length; i++) {
+                // mostly plain text with rare markup and bytes adjacent to searched values
+                bytes[i] = random.nextInt(8) == 0 ?
+                        alphabet[random.nextInt(alphabet.length)] : (byte) random.nextInt(256);
+            }
+            var from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            assertEquals(naiveMarkup(bytes, from, bytes.length),
+                    TextScanner.indexOfMarkup(bytes, from, bytes.length));
+
+            var value = alphabet[random.nextInt(alphabet.length)];
+            var expected = -1;
+            for (int i = from; i < bytes.length; i++) {
+                if (bytes[i] == value) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, TextScanner.indexOf(bytes, value, from, bytes.length));
+        }
+    }
+
+    @Test
+    public void testEscape() {
+        var sink = new Utf8Sink();
+        sink.appendEscaped("plain text & <tag> é中 ]]> end");
+        assertEquals("plain text &amp; &lt;tag&gt; é中 ]]&gt; end", sink.toString());
+
+        var params = new XMLRPCParameters(TimeZone.getTimeZone("GMT"));
+        params.appendString("a&b<c");
+        assertEquals("<string>a&amp;b&lt;c</string>", params.getParametersString());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TlsConnectionTest {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private static Path keyStore;
+    private static SSLContext serverContext;
+
+    private HttpsServer server;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeAll
+    public static void createCertificate() throws Exception {
+        keyStore = Files.createTempDirectory("xmlrpc").resolve("stub.p12");
+        var keytool = Path.of(System.getProperty("java.home"), "bin", "keytool").toString();
+        var process = new ProcessBuilder(keytool, "-genkeypair", "-keyalg", "EC", "-alias", "stub",
+                "-dname", "CN=localhost", "-ext", "SAN=ip:127.0.0.1", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .redirectErrorStream(true)
+                .start();
+        process.getInputStream().readAllBytes();
+        assertEquals(0, process.waitFor());
+
+        var keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadKeyStore(), PASSWORD);
+        serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+    }
+
+    @AfterAll
+    public static void deleteCertificate() throws IOException {
+        Files.deleteIfExists(keyStore);
+        Files.deleteIfExists(keyStore.getParent());
+    }
+
+    private static KeyStore loadKeyStore() throws Exception {
+        var store = KeyStore.getInstance("PKCS12");
+        try (var in = Files.newInputStream(keyStore)) {
+            store.load(in, PASSWORD);
+        }
+        return store;
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        var trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(loadKeyStore());
+        var context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private String startServer() throws IOException {
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                // called once for each accepted connection
+                connections.incrementAndGet();
+                super.configure(params);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", this::handle);
+        server.start();
+        return "https://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            calls.incrementAndGet();
+            var bytes = StubServer.response("<string>secure</string>").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        var url = startServer();
+        try {
+            var context = clientContext();
+            var service = XMLRPCService.builder(url)
+                    .sslContext(context)
+                    .build();
+            for (int i = 0; i < 5; i++) {
+                assertEquals("secure", service.call("test").getStringValue(0));
+            }
+            assertEquals(5, calls.get());
+            assertEquals(1, connections.get());
+            assertTrue(Collections.list(context.getClientSessionContext().getIds()).size() > 0);
+        } finally {
+            stopServer();
+        }
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        var url = startServer();
+        try {
+            var context = clientContext();
+            var service = XMLRPCService.builder(url)
+                    .sslContext(context)
+                    .build();
+            service.warmUp(3);
+            assertEquals(3, connections.get());
+            assertEquals(0, calls.get());
+            assertFalse(Collections.list(context.getClientSessionContext().getIds()).isEmpty());
+
+            // calls use connections opened ahead of traffic
+            var futures = new ArrayList<CompletableFuture<XMLRPCResult>>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(service.callAsync("test"));
+            }
+            for (var future : futures) {
+                assertEquals("secure", future.get().getStringValue(0));
+            }
+            assertTrue(connections.get() <= 3);
+        } finally {
+            stopServer();
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+        var url = startServer();
+        try {
+            var service = XMLRPCService.builder(url)
+                    .sslContext(clientContext())
+                    .keepAlive(Duration.ofMillis(100), 2)
+                    .build();
+            Thread.sleep(1000);
+            assertFalse(service.getEndpoints().get(0).isEjected());
+            // idle connections are opened once and reused by subsequent keep-alive requests
+            assertEquals(2, connections.get());
+            assertEquals(0, calls.get());
+        } finally {
+            stopServer();
+        }
+    }
+}
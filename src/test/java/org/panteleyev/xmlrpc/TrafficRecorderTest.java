@@ -0,0 +1,107 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrafficRecorderTest {
+    @TempDir
+    Path directory;
+
+    private static String echo(String request) {
+        var id = request.replaceAll("(?s).*<int>(\\d+)</int>.*", "$1");
+        return StubServer.response("<struct><member><name>id</name><value><int>" + id
+                + "</int></value></member></struct>");
+    }
+
+    private Path record(StubServer server, int from, int to) throws Exception {
+        var file = directory.resolve("traffic.xrt");
+        try (var recorder = TrafficRecorder.open(file)) {
+            var service = XMLRPCService.builder(server.url()).trafficRecorder(recorder).build();
+            for (int i = from; i < to; i++) {
+                service.call("item.get", i);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        try (var server = new StubServer(TrafficRecorderTest::echo)) {
+            var file = record(server, 0, 3);
+            var entries = TrafficRecorder.read(file);
+            assertEquals(3, entries.size());
+            for (int i = 0; i < 3; i++) {
+                var entry = entries.get(i);
+                assertEquals(200, entry.status());
+                assertEquals(server.requests().get(i), new String(entry.request(), StandardCharsets.UTF_8));
+                assertEquals(echo(server.requests().get(i)), new String(entry.response(), StandardCharsets.UTF_8));
+                assertTrue(entry.latency().toNanos() > 0);
+                assertFalse(entry.truncated());
+            }
+
+            // capture is appended
+            record(server, 3, 5);
+            assertEquals(5, TrafficRecorder.read(file).size());
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        try (var server = new StubServer(TrafficRecorderTest::echo)) {
+            var file = directory.resolve("traffic.xrt");
+            try (var recorder = TrafficRecorder.open(file, 100)) {
+                XMLRPCService.builder(server.url()).trafficRecorder(recorder).build().call("item.get", 1);
+                // budget cannot hold captured response
+                var budget = MemoryBudget.of(250, Duration.ZERO);
+                var service = XMLRPCService.builder(server.url()).trafficRecorder(recorder)
+                        .memoryBudget(budget).build();
+                assertEquals(Map.of("id", 2), service.call("item.get", 2).getStructValue(0));
+                assertEquals(0, budget.getUsed());
+            }
+
+            var entries = TrafficRecorder.read(file);
+            assertEquals(2, entries.size());
+            var response = echo(server.requests().get(0)).getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(Arrays.copyOf(response, 100), entries.get(0).response());
+            assertTrue(entries.get(0).truncated());
+            assertEquals(0, entries.get(1).response().length);
+            assertTrue(entries.get(1).truncated());
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        try (var server = new StubServer(TrafficRecorderTest::echo)) {
+            var file = record(server, 0, 2);
+            Files.write(file, new byte[]{0, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+            assertEquals(2, TrafficRecorder.read(file).size());
+        }
+    }
+
+    @Test
+    public void testNotCaptureFile() throws Exception {
+        var file = directory.resolve("other");
+        Files.writeString(file, "not a capture");
+        assertThrows(IOException.class, () -> TrafficRecorder.open(file));
+        assertThrows(IOException.class, () -> TrafficRecorder.read(file));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+import org.panteleyev.xmlrpc.XMLRPCReader.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class XMLRPCReaderTest {
+    private static final String RESPONSE = """
+            <?xml version="1.0"?>
+            <methodResponse>
+                <params>
+                    <param><value><array><data>
+                        <value><struct>
+                            <member><name>id</name><value><int>-17</int></value></member>
+                            <member><name>size</name><value><i8>9000000000</i8></value></member>
+                            <member><name>name</name><value>untyped</value></member>
+                            <member><name>skip</name><value><struct>
+                                <member><name>x</name><value><array><data></data></array></value></member>
+                            </struct></value></member>
+                        </struct></value>
+                    </data></array></value></param>
+                    <param><value><double>2.5</double></value></param>
+                    <param><value><boolean>1</boolean></value></param>
+                    <param><value><base64>
+                        AQIDBAUG
+                        Bw==
+                    </base64></value></param>
+                </params>
+            </methodResponse>
+            """;
+
+    private static XMLRPCReader reader(String response) throws Exception {
+        var in = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+        return new XMLRPCReader(in, TimeZone.getTimeZone("GMT"), XMLRPCCodecs.DEFAULT);
+    }
+
+    @Test
+    public void testTokens() throws Exception {
+        var reader = reader(RESPONSE);
+
+        assertEquals(Token.BEGIN_ARRAY, reader.peek());
+        reader.beginArray();
+        reader.beginStruct();
+        assertEquals("id", reader.nextMemberName());
+        assertEquals(Token.INT, reader.peek());
+        assertEquals(-17, reader.readInt());
+        assertEquals("size", reader.nextMemberName());
+        assertEquals(Token.LONG, reader.peek());
+        assertEquals(9000000000L, reader.readLong());
+        assertEquals("name", reader.nextMemberName());
+        assertEquals("untyped", reader.readString());
+        assertEquals(Token.MEMBER_NAME, reader.peek());
+        reader.skipValue();
+        assertFalse(reader.hasNext());
+        reader.endStruct();
+        reader.endArray();
+
+        assertEquals(2.5, reader.readDouble());
+        assertEquals(true, reader.readBoolean());
+
+        var sink = new ByteArrayOutputStream();
+        assertEquals(7, reader.readBase64(sink));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7}, sink.toByteArray());
+
+        assertEquals(Token.END_RESPONSE, reader.peek());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testReadValue() throws Exception {
+        var reader = reader(RESPONSE);
+        var values = new ArrayList<>();
+        while (reader.hasNext()) {
+            values.add(reader.readValue());
+        }
+
+        assertEquals(4, values.size());
+        assertEquals(List.of(Map.of("id", -17, "size", 9000000000L, "name", "untyped",
+                "skip", Map.of("x", List.of()))), values.get(0));
+        assertEquals(2.5, values.get(1));
+        assertEquals(true, values.get(2));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7}, (byte[]) values.get(3));
+    }
+
+    @Test
+    public void testUnexpectedToken() throws Exception {
+        var reader = reader(RESPONSE);
+        var ex = assertThrows(IllegalStateException.class, reader::beginStruct);
+        assertEquals("Expected BEGIN_STRUCT but was BEGIN_ARRAY", ex.getMessage());
+    }
+
+    @Test
+    public void testIntegerRange() throws Exception {
+        var reader = reader(StubServer.response("<int>2147483648</int>"));
+        assertThrows(NumberFormatException.class, reader::readInt);
+    }
+
+    @Test
+    public void testFault() throws Exception {
+        var reader = reader("""
+                <?xml version="1.0"?>
+                <methodResponse><fault><value><struct>
+                    <member><name>faultCode</name><value><int>4</int></value></member>
+                    <member><name>faultString</name><value><string>Too many parameters.</string></value></member>
+                </struct></value></fault></methodResponse>
+                """);
+        var ex = assertThrows(XMLRPCException.class, reader::hasNext);
+        assertEquals(4, ex.getFaultCode());
+        assertEquals("Too many parameters.", ex.getMessage());
+    }
+
+    @Test
+    public void testServiceHandler() throws Exception {
+        try (var server = new StubServer(request -> RESPONSE)) {
+            var service = new XMLRPCService(server.url());
+            var sum = service.call(reader -> {
+                long total = 0;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginStruct();
+                    while (reader.hasNext()) {
+                        if ("size".equals(reader.nextMemberName())) {
+                            total += reader.readLong();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endStruct();
+                }
+                reader.endArray();
+                return total;
+            }, "items.list");
+            assertEquals(9000000000L, sum);
+
+            var async = service.callAsync(Deadline.none(), XMLRPCReader::readValue, "items.list");
+            assertTrue(async.get() instanceof List<?>);
+        }
+    }
+}
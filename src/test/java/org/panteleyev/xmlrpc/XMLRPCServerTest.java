@@ -0,0 +1,206 @@
+/*
+ Copyright © 2022 Petr Panteleyev <petr@panteleyev.org>
+ SPDX-License-Identifier: BSD-2-Clause
+ */
+package org.panteleyev.xmlrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class XMLRPCServerTest {
+    private static XMLRPCServer.Builder builder() {
+        return XMLRPCServer.builder(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .handler("echo", params -> params.getValues())
+                .handler("add", params -> params.getIntegerValue(0) + params.getIntegerValue(1))
+                .handler("fail", params -> {
+                    throw new XMLRPCException(42, "Failed");
+                })
+                .handler("crash", params -> {
+                    throw new IllegalStateException("crash");
+                });
+    }
+
+    private static String url(XMLRPCServer server) {
+        return "http://127.0.0.1:" + server.getPort() + "/";
+    }
+
+    @Test
+    public void testCalls() throws Exception {
+        try (var server = builder().build().start()) {
+            var service = new XMLRPCService(url(server));
+            assertEquals(5, service.call("add", 2, 3).getIntegerValue(0));
+
+            var struct = Map.of("name", "a & <b>", "values", List.of(1, 2L, 3.5, true));
+            var echo = service.call("echo", "text", struct, new byte[]{1, 2, 3}).getArrayValue(0);
+            assertEquals("text", echo.get(0));
+            assertEquals(struct, echo.get(1));
+            assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) echo.get(2));
+
+            var fault = assertThrows(XMLRPCException.class, () -> service.call("fail"));
+            assertEquals(42, fault.getFaultCode());
+            assertEquals("Failed", fault.getMessage());
+            assertEquals(XMLRPCServer.INTERNAL_ERROR,
+                    assertThrows(XMLRPCException.class, () -> service.call("crash")).getFaultCode());
+            assertEquals(XMLRPCServer.METHOD_NOT_FOUND,
+                    assertThrows(XMLRPCException.class, () -> service.call("missing")).getFaultCode());
+        }
+    }
+
+    @Test
+    public void testStreamingRequest() throws Exception {
+        try (var server = builder().build().start()) {
+            var service = new XMLRPCService(url(server));
+            var data = new byte[100_000];
+            var result = service.call("echo", IntStream.range(0, 10_000).boxed().iterator(),
+                    new ByteArrayInputStream(data)).getArrayValue(0);
+            assertEquals(10_000, ((List<?>) result.get(0)).size());
+            assertEquals(data.length, ((byte[]) result.get(1)).length);
+        }
+    }
+
+    @Test
+    public void testParallelMulticall() throws Exception {
+        var barrier = new CyclicBarrier(4);
+        try (var server = builder()
+                .workerThreads(4)
+                .handler("wait", params -> {
+                    // completes only if all calls of the batch run at the same time
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    } catch (Exception ex) {
+                        throw new XMLRPCException(1, "Calls are not parallel");
+                    }
+                    return params.getIntegerValue(0);
+                })
+                .build()
+                .start()) {
+            var service = XMLRPCService.builder(url(server))
+                    .autoBatching(Duration.ofMillis(100), 4)
+                    .build();
+            var futures = new ArrayList<CompletableFuture<XMLRPCResult>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(service.callAsync("wait", i));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS).getIntegerValue(0));
+            }
+
+            var failed = service.callAsync("fail");
+            var added = service.callAsync("add", 1, 1);
+            var ex = assertThrows(ExecutionException.class, failed::get);
+            assertEquals(42, ((XMLRPCException) ex.getCause()).getFaultCode());
+            assertEquals(2, added.get().getIntegerValue(0));
+        }
+    }
+
+    @Test
+    public void testRejectedMulticall() throws Exception {
+        // executor accepts request but rejects calls of the batch
+        var executed = new AtomicInteger();
+        Executor workers = task -> {
+            if (executed.getAndIncrement() % 2 == 1) {
+                throw new RejectedExecutionException();
+            }
+            new Thread(task).start();
+        };
+        try (var server = builder().workers(workers).build().start()) {
+            var service = XMLRPCService.builder(url(server))
+                    .autoBatching(Duration.ofMillis(100), 2)
+                    .build();
+            var first = service.callAsync("add", 1, 1);
+            var second = service.callAsync("add", 2, 2);
+            for (var future : List.of(first, second)) {
+                var ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertEquals(XMLRPCServer.INTERNAL_ERROR, ((XMLRPCException) ex.getCause()).getFaultCode());
+            }
+        }
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        try (var server = builder().build().start();
+             var socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            var body = "<?xml version=\"1.0\"?><methodCall><methodName>add</methodName><params>"
+                    + "<param><value><int>1</int></value></param><param><value><int>2</int></value></param>"
+                    + "</params></methodCall>";
+            var request = "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + body.length() + "\r\n\r\n"
+                    + body;
+            // pipelined requests are answered in order over the same connection
+            var out = socket.getOutputStream();
+            out.write((request + request + "GET / HTTP/1.1\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            var response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(2, response.split("<int>3</int>", -1).length - 1);
+            assertTrue(response.contains("HTTP/1.1 405"));
+        }
+    }
+
+    @Test
+    public void testMalformedChunks() throws Exception {
+        try (var server = builder().build().start()) {
+            var header = "POST / HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n";
+            for (var body : List.of("-1\r\nabc\r\n0\r\n\r\n", "7fffffffffffffff\r\nabc\r\n",
+                    "ffffffffffffffffff\r\n", "1".repeat(2000), "0\r\n" + "x".repeat(2000))) {
+                try (var socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                    socket.getOutputStream().write((header + body).getBytes(StandardCharsets.US_ASCII));
+                    var response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                    assertTrue(response.startsWith("HTTP/1.1 4"), response);
+                }
+            }
+            assertEquals(5, new XMLRPCService(url(server)).call("add", 2, 3).getIntegerValue(0));
+        }
+    }
+
+    @Test
+    public void testIdleConnections() throws Exception {
+        try (var server = builder().idleTimeout(Duration.ofMillis(200)).build().start()) {
+            // declared body is never sent
+            for (var request : List.of("", "POST / HTTP/1.1\r\nContent-Length: 10000000\r\n\r\n<?xml")) {
+                try (var socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                    socket.setSoTimeout(5000);
+                    socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+                    assertEquals(-1, socket.getInputStream().read());
+                }
+            }
+            assertEquals(5, new XMLRPCService(url(server)).call("add", 2, 3).getIntegerValue(0));
+        }
+    }
+
+    @Test
+    public void testRequestLimit() throws Exception {
+        try (var server = builder()
+                .requestLimits(ResponseLimits.builder().maxBytes(1000).build())
+                .build()
+                .start()) {
+            var service = new XMLRPCService(url(server));
+            var ex = assertThrows(IOException.class, () -> service.call("echo", "x".repeat(2000)));
+            assertTrue(ex.getMessage().contains("413"));
+            assertEquals(5, service.call("add", 2, 3).getIntegerValue(0));
+        }
+    }
+}